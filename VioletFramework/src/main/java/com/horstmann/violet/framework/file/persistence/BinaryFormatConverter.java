@@ -0,0 +1,150 @@
+package com.horstmann.violet.framework.file.persistence;
+
+import java.awt.geom.Point2D;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.horstmann.violet.framework.injection.bean.ManiocFramework.BeanInjector;
+import com.horstmann.violet.framework.injection.bean.ManiocFramework.InjectedBean;
+import com.horstmann.violet.framework.plugin.IDiagramPlugin;
+import com.horstmann.violet.framework.plugin.PluginRegistry;
+import com.horstmann.violet.product.diagram.abstracts.IGraph;
+import com.horstmann.violet.product.diagram.abstracts.edge.IEdge;
+import com.horstmann.violet.product.diagram.abstracts.node.INode;
+
+/**
+ * Converts diagram files between the XStream format (see XStreamBasedPersistenceService) and the binary format (see
+ * BinaryPersistenceService). Both formats save the same fields, so converting a file back and forth gives the same graph.
+ */
+public class BinaryFormatConverter
+{
+
+    public BinaryFormatConverter()
+    {
+        BeanInjector.getInjector().inject(this);
+    }
+
+    /**
+     * Converts a diagram from the XStream format to the binary format
+     * 
+     * @param xstreamIn XStream content
+     * @param binaryOut where binary content is written
+     * @throws IOException
+     */
+    public void toBinary(InputStream xstreamIn, OutputStream binaryOut) throws IOException
+    {
+        IGraph graph = this.xstreamService.read(xstreamIn);
+        this.binaryService.write(graph, binaryOut);
+    }
+
+    /**
+     * Converts a diagram from the binary format to the XStream format
+     * 
+     * @param binaryIn binary content
+     * @param xstreamOut where XStream content is written
+     * @throws IOException
+     */
+    public void toXStream(InputStream binaryIn, OutputStream xstreamOut) throws IOException
+    {
+        IGraph graph = this.binaryService.read(binaryIn);
+        this.xstreamService.write(graph, xstreamOut);
+    }
+
+    /**
+     * Checks that converting to the binary format and back doesn't lose anything. For each registered diagram plugin, a graph
+     * holding its node prototypes and its edge prototypes is written with XStream, converted to the binary format and back to
+     * XStream, and then both XStream contents are compared.
+     * 
+     * @throws IOException if a diagram can't be converted or gives a different content once converted
+     */
+    public void checkPluginPrototypes() throws IOException
+    {
+        for (IDiagramPlugin aPlugin : this.pluginRegistry.getDiagramPlugins())
+        {
+            IGraph graph = getPrototypesGraph(aPlugin.getGraphClass());
+            ByteArrayOutputStream xstreamOut = new ByteArrayOutputStream();
+            this.xstreamService.write(graph, xstreamOut);
+            ByteArrayOutputStream binaryOut = new ByteArrayOutputStream();
+            toBinary(new ByteArrayInputStream(xstreamOut.toByteArray()), binaryOut);
+            ByteArrayOutputStream convertedOut = new ByteArrayOutputStream();
+            toXStream(new ByteArrayInputStream(binaryOut.toByteArray()), convertedOut);
+            if (!Arrays.equals(xstreamOut.toByteArray(), convertedOut.toByteArray()))
+            {
+                throw new IOException("Binary conversion of " + aPlugin.getGraphClass().getName() + " loses data");
+            }
+        }
+    }
+
+    /**
+     * @param graphClass
+     * @return a graph with a copy of each node prototype and, when they accept to connect some of these nodes, of each edge
+     *         prototype
+     * @throws IOException
+     */
+    private static IGraph getPrototypesGraph(Class<? extends IGraph> graphClass) throws IOException
+    {
+        IGraph graph;
+        try
+        {
+            graph = graphClass.newInstance();
+        }
+        catch (Exception e)
+        {
+            throw new IOException("Unable to create " + graphClass.getName());
+        }
+        List<INode> nodes = new ArrayList<INode>();
+        for (INode aNodePrototype : graph.getNodePrototypes())
+        {
+            INode aNode = aNodePrototype.clone();
+            if (graph.addNode(aNode, new Point2D.Double(nodes.size() * PROTOTYPE_SPACING, 0)))
+            {
+                nodes.add(aNode);
+            }
+        }
+        for (IEdge anEdgePrototype : graph.getEdgePrototypes())
+        {
+            connectSomewhere(graph, anEdgePrototype, nodes);
+        }
+        return graph;
+    }
+
+    /**
+     * Connects a copy of an edge prototype to the first pair of nodes which accepts it
+     * 
+     * @param graph
+     * @param edgePrototype
+     * @param nodes
+     */
+    private static void connectSomewhere(IGraph graph, IEdge edgePrototype, List<INode> nodes)
+    {
+        for (INode aStartNode : nodes)
+        {
+            for (INode anEndNode : nodes)
+            {
+                Point2D startLocation = new Point2D.Double(0, 0);
+                Point2D endLocation = new Point2D.Double(0, 0);
+                if (graph.connect(edgePrototype.clone(), aStartNode, startLocation, anEndNode, endLocation, new Point2D[0]))
+                {
+                    return;
+                }
+            }
+        }
+    }
+
+    private XStreamBasedPersistenceService xstreamService = new XStreamBasedPersistenceService();
+
+    private BinaryPersistenceService binaryService = new BinaryPersistenceService();
+
+    @InjectedBean
+    private PluginRegistry pluginRegistry;
+
+    /** Horizontal distance between the nodes of the graphs built by checkPluginPrototypes() */
+    private static final double PROTOTYPE_SPACING = 200;
+
+}
@@ -0,0 +1,174 @@
+package com.horstmann.violet.framework.file.persistence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Set;
+import java.util.Vector;
+
+import javax.swing.ImageIcon;
+
+/**
+ * Constants of the binary diagram format written by BinaryGraphWriter and read by BinaryGraphReader.<br/>
+ * <br/>
+ * A file starts with MAGIC_NUMBER (4 bytes) and FORMAT_VERSION (2 bytes), followed by the graph written as a value. A value is a
+ * tag byte followed by :<br/>
+ * - nothing for NULL, TRUE and FALSE;<br/>
+ * - a handle for REFERENCE : the index of an object already read (objects, arrays, collections and maps are numbered in the
+ * order they appear);<br/>
+ * - a string for STRING;<br/>
+ * - the number for INTEGER, LONG, SHORT (zigzag varints), DOUBLE, FLOAT, CHARACTER and BYTE;<br/>
+ * - the ARGB int for COLOR;<br/>
+ * - a class and the constant name for ENUM;<br/>
+ * - an array class, a length and the elements for ARRAY (primitive elements have no tag);<br/>
+ * - a class, a size and the elements (or keys and values) for COLLECTION and MAP;<br/>
+ * - a length and the bytes written by an ObjectOutputStream for SERIALIZED (ImageIcon, the only class having its own
+ * writeObject() method found in diagrams);<br/>
+ * - a class descriptor and the value of each of its fields for OBJECT (primitive fields have no tag).<br/>
+ * <br/>
+ * Strings, classes and class descriptors are pooled : they are given by a varint which is their index in the pool plus one, or 0
+ * when they appear for the first time and their definition follows (UTF-8 length and bytes for strings, XStream class name for
+ * classes, class and fields for descriptors).
+ */
+final class BinaryGraphFormat
+{
+
+    private BinaryGraphFormat()
+    {
+        // Constants only
+    }
+
+    /**
+     * @param type
+     * @return true if instances of the given class are written as a COLLECTION
+     */
+    static boolean isCollectionClass(Class<?> type)
+    {
+        return type == ArrayList.class || type == LinkedList.class || type == Vector.class || type == HashSet.class
+                || type == LinkedHashSet.class;
+    }
+
+    /**
+     * @param type
+     * @return true if instances of the given class are written as a MAP
+     */
+    static boolean isMapClass(Class<?> type)
+    {
+        return type == HashMap.class || type == LinkedHashMap.class || type == Hashtable.class;
+    }
+
+    /**
+     * @param type a class customizing Java serialization
+     * @return true if instances of the given class are written as SERIALIZED
+     */
+    static boolean isSerializedClass(Class<?> type)
+    {
+        return type == ImageIcon.class;
+    }
+
+    /**
+     * Reading Java serialization can run code of any serializable class, so only the classes found in SERIALIZED values are
+     * accepted.
+     * 
+     * @param name a class name read from SERIALIZED bytes
+     * @return true if the class can be read
+     */
+    static boolean isSerializedClassName(String name)
+    {
+        return SERIALIZED_CLASS_NAMES.contains(name);
+    }
+
+    /**
+     * @param type a field type
+     * @return the code of a primitive type or NOT_PRIMITIVE
+     */
+    static byte getPrimitiveCode(Class<?> type)
+    {
+        if (!type.isPrimitive())
+        {
+            return NOT_PRIMITIVE;
+        }
+        if (type == int.class)
+        {
+            return PRIMITIVE_INT;
+        }
+        if (type == double.class)
+        {
+            return PRIMITIVE_DOUBLE;
+        }
+        if (type == boolean.class)
+        {
+            return PRIMITIVE_BOOLEAN;
+        }
+        if (type == long.class)
+        {
+            return PRIMITIVE_LONG;
+        }
+        if (type == float.class)
+        {
+            return PRIMITIVE_FLOAT;
+        }
+        if (type == char.class)
+        {
+            return PRIMITIVE_CHAR;
+        }
+        if (type == byte.class)
+        {
+            return PRIMITIVE_BYTE;
+        }
+        return PRIMITIVE_SHORT;
+    }
+
+    /** "VLTB" */
+    static final int MAGIC_NUMBER = 0x564C5442;
+
+    /** Incremented each time the format changes. Readers refuse files with a higher version. */
+    static final int FORMAT_VERSION = 1;
+
+    /** Encoding of strings */
+    static final String CHARSET = "UTF-8";
+
+    static final byte NULL = 0;
+    static final byte REFERENCE = 1;
+    static final byte STRING = 2;
+    static final byte TRUE = 3;
+    static final byte FALSE = 4;
+    static final byte INTEGER = 5;
+    static final byte LONG = 6;
+    static final byte DOUBLE = 7;
+    static final byte FLOAT = 8;
+    static final byte SHORT = 9;
+    static final byte BYTE = 10;
+    static final byte CHARACTER = 11;
+    static final byte COLOR = 12;
+    static final byte ENUM = 13;
+    static final byte ARRAY = 14;
+    static final byte COLLECTION = 15;
+    static final byte MAP = 16;
+    static final byte SERIALIZED = 17;
+    static final byte OBJECT = 18;
+
+    static final byte NOT_PRIMITIVE = 0;
+    static final byte PRIMITIVE_BOOLEAN = 1;
+    static final byte PRIMITIVE_BYTE = 2;
+    static final byte PRIMITIVE_CHAR = 3;
+    static final byte PRIMITIVE_SHORT = 4;
+    static final byte PRIMITIVE_INT = 5;
+    static final byte PRIMITIVE_LONG = 6;
+    static final byte PRIMITIVE_FLOAT = 7;
+    static final byte PRIMITIVE_DOUBLE = 8;
+
+    /** Classes an ImageIcon is serialized with (the image is written as an int array of pixels) */
+    private static final Set<String> SERIALIZED_CLASS_NAMES = new HashSet<String>(Arrays.asList(new String[]
+    {
+            "javax.swing.ImageIcon",
+            "javax.swing.ImageIcon$AccessibleImageIcon",
+            "[I"
+    }));
+
+}
@@ -0,0 +1,449 @@
+package com.horstmann.violet.framework.file.persistence;
+
+import java.awt.Color;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import com.thoughtworks.xstream.converters.reflection.ReflectionProvider;
+import com.thoughtworks.xstream.converters.reflection.SerializationMethodInvoker;
+import com.thoughtworks.xstream.mapper.Mapper;
+
+/**
+ * Reads objects written by BinaryGraphWriter (see BinaryGraphFormat). Objects are created and filled the same way XStream does,
+ * with its reflection provider (constructors aren't called) and readResolve() methods are invoked.
+ */
+class BinaryGraphReader
+{
+
+    /**
+     * Default constructor
+     *
+     * @param in where to read
+     * @param mapper the XStream mapper giving classes from their names
+     * @param reflectionProvider the XStream reflection provider creating objects and setting their fields
+     * @param classLoader the class loader used by XStream
+     */
+    BinaryGraphReader(DataInputStream in, Mapper mapper, ReflectionProvider reflectionProvider, ClassLoader classLoader)
+    {
+        this.in = in;
+        this.mapper = mapper;
+        this.reflectionProvider = reflectionProvider;
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * Reads a value and everything it refers to
+     *
+     * @return the value
+     * @throws IOException
+     */
+    Object readValue() throws IOException
+    {
+        byte tag = this.in.readByte();
+        switch (tag)
+        {
+        case BinaryGraphFormat.NULL:
+            return null;
+        case BinaryGraphFormat.REFERENCE:
+            return this.handles.get(readVarInt());
+        case BinaryGraphFormat.STRING:
+            return readString();
+        case BinaryGraphFormat.TRUE:
+            return Boolean.TRUE;
+        case BinaryGraphFormat.FALSE:
+            return Boolean.FALSE;
+        case BinaryGraphFormat.INTEGER:
+            return Integer.valueOf((int) readVarLong());
+        case BinaryGraphFormat.LONG:
+            return Long.valueOf(readVarLong());
+        case BinaryGraphFormat.DOUBLE:
+            return Double.valueOf(this.in.readDouble());
+        case BinaryGraphFormat.FLOAT:
+            return Float.valueOf(this.in.readFloat());
+        case BinaryGraphFormat.SHORT:
+            return Short.valueOf((short) readVarLong());
+        case BinaryGraphFormat.BYTE:
+            return Byte.valueOf(this.in.readByte());
+        case BinaryGraphFormat.CHARACTER:
+            return Character.valueOf(this.in.readChar());
+        case BinaryGraphFormat.COLOR:
+            return new Color(this.in.readInt(), true);
+        case BinaryGraphFormat.ENUM:
+            return getEnumConstant(readClass(), readString());
+        case BinaryGraphFormat.ARRAY:
+            return readArray();
+        case BinaryGraphFormat.COLLECTION:
+            return readCollection();
+        case BinaryGraphFormat.MAP:
+            return readMap();
+        case BinaryGraphFormat.SERIALIZED:
+            return readSerializedObject();
+        case BinaryGraphFormat.OBJECT:
+            return readObject();
+        default:
+            throw new IOException("Corrupted binary diagram file : unknown tag " + tag);
+        }
+    }
+
+    /**
+     * @return an array and its elements
+     * @throws IOException
+     */
+    private Object readArray() throws IOException
+    {
+        int handle = reserveHandle();
+        Class<?> type = readClass();
+        int length = readVarInt();
+        Object array = Array.newInstance(type.getComponentType(), length);
+        this.handles.set(handle, array);
+        byte primitiveCode = BinaryGraphFormat.getPrimitiveCode(type.getComponentType());
+        if (primitiveCode == BinaryGraphFormat.NOT_PRIMITIVE)
+        {
+            Object[] objects = (Object[]) array;
+            for (int i = 0; i < length; i++)
+            {
+                objects[i] = readValue();
+            }
+            return array;
+        }
+        for (int i = 0; i < length; i++)
+        {
+            Array.set(array, i, readPrimitive(primitiveCode));
+        }
+        return array;
+    }
+
+    /**
+     * @return a collection and its elements
+     * @throws IOException
+     */
+    @SuppressWarnings("unchecked")
+    private Object readCollection() throws IOException
+    {
+        int handle = reserveHandle();
+        Class<?> type = readClass();
+        if (!BinaryGraphFormat.isCollectionClass(type))
+        {
+            throw new IOException("Corrupted binary diagram file : unsupported collection type " + type.getName());
+        }
+        Collection<Object> collection = (Collection<Object>) newInstance(type);
+        this.handles.set(handle, collection);
+        int size = readVarInt();
+        for (int i = 0; i < size; i++)
+        {
+            collection.add(readValue());
+        }
+        return collection;
+    }
+
+    /**
+     * @return a map and its entries
+     * @throws IOException
+     */
+    @SuppressWarnings("unchecked")
+    private Object readMap() throws IOException
+    {
+        int handle = reserveHandle();
+        Class<?> type = readClass();
+        if (!BinaryGraphFormat.isMapClass(type))
+        {
+            throw new IOException("Corrupted binary diagram file : unsupported map type " + type.getName());
+        }
+        Map<Object, Object> map = (Map<Object, Object>) newInstance(type);
+        this.handles.set(handle, map);
+        int size = readVarInt();
+        for (int i = 0; i < size; i++)
+        {
+            Object key = readValue();
+            map.put(key, readValue());
+        }
+        return map;
+    }
+
+    /**
+     * @return an object saved with Java serialization
+     * @throws IOException
+     */
+    private Object readSerializedObject() throws IOException
+    {
+        int handle = reserveHandle();
+        byte[] bytes = new byte[readVarInt()];
+        this.in.readFully(bytes);
+        ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(bytes))
+        {
+            @Override
+            protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException
+            {
+                if (!BinaryGraphFormat.isSerializedClassName(desc.getName()))
+                {
+                    throw new InvalidClassException(desc.getName(), "not allowed in binary diagram files");
+                }
+                try
+                {
+                    return Class.forName(desc.getName(), false, BinaryGraphReader.this.classLoader);
+                }
+                catch (ClassNotFoundException e)
+                {
+                    return super.resolveClass(desc);
+                }
+            }
+
+            @Override
+            protected Class<?> resolveProxyClass(String[] interfaces) throws IOException, ClassNotFoundException
+            {
+                throw new InvalidClassException("Proxy classes are not allowed in binary diagram files");
+            }
+        };
+        try
+        {
+            Object result = objectIn.readObject();
+            this.handles.set(handle, result);
+            return result;
+        }
+        catch (ClassNotFoundException e)
+        {
+            throw new IOException("Unable to read binary diagram file : " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return an object and the values of its fields
+     * @throws IOException
+     */
+    private Object readObject() throws IOException
+    {
+        int handle = reserveHandle();
+        ClassDescriptor descriptor = readDescriptor();
+        Object result = this.reflectionProvider.newInstance(descriptor.type);
+        this.handles.set(handle, result);
+        for (int i = 0; i < descriptor.fieldNames.length; i++)
+        {
+            byte primitiveCode = descriptor.primitiveCodes[i];
+            Object fieldValue = (primitiveCode == BinaryGraphFormat.NOT_PRIMITIVE) ? readValue() : readPrimitive(primitiveCode);
+            if (fieldValue != null)
+            {
+                this.reflectionProvider.writeField(result, descriptor.fieldNames[i], fieldValue, descriptor.definedIns[i]);
+            }
+        }
+        Object resolved = this.serializationMethodInvoker.callReadResolve(result);
+        if (resolved != result)
+        {
+            this.handles.set(handle, resolved);
+        }
+        return resolved;
+    }
+
+    /**
+     * Reads the value of a primitive field or array element (without tag)
+     *
+     * @param primitiveCode
+     * @return the boxed value
+     * @throws IOException
+     */
+    private Object readPrimitive(byte primitiveCode) throws IOException
+    {
+        switch (primitiveCode)
+        {
+        case BinaryGraphFormat.PRIMITIVE_INT:
+            return Integer.valueOf((int) readVarLong());
+        case BinaryGraphFormat.PRIMITIVE_DOUBLE:
+            return Double.valueOf(this.in.readDouble());
+        case BinaryGraphFormat.PRIMITIVE_BOOLEAN:
+            return Boolean.valueOf(this.in.readBoolean());
+        case BinaryGraphFormat.PRIMITIVE_LONG:
+            return Long.valueOf(readVarLong());
+        case BinaryGraphFormat.PRIMITIVE_FLOAT:
+            return Float.valueOf(this.in.readFloat());
+        case BinaryGraphFormat.PRIMITIVE_CHAR:
+            return Character.valueOf(this.in.readChar());
+        case BinaryGraphFormat.PRIMITIVE_BYTE:
+            return Byte.valueOf(this.in.readByte());
+        case BinaryGraphFormat.PRIMITIVE_SHORT:
+            return Short.valueOf((short) readVarLong());
+        default:
+            throw new IOException("Corrupted binary diagram file : unknown primitive type " + primitiveCode);
+        }
+    }
+
+    /**
+     * @return the descriptor of an object class
+     * @throws IOException
+     */
+    private ClassDescriptor readDescriptor() throws IOException
+    {
+        int index = readVarInt();
+        if (index > 0)
+        {
+            return this.descriptors.get(index - 1);
+        }
+        ClassDescriptor descriptor = new ClassDescriptor();
+        descriptor.type = readClass();
+        int fieldCount = readVarInt();
+        descriptor.fieldNames = new String[fieldCount];
+        descriptor.definedIns = new Class<?>[fieldCount];
+        descriptor.primitiveCodes = new byte[fieldCount];
+        for (int i = 0; i < fieldCount; i++)
+        {
+            descriptor.fieldNames[i] = readString();
+            descriptor.definedIns[i] = readClass();
+            descriptor.primitiveCodes[i] = this.in.readByte();
+        }
+        this.descriptors.add(descriptor);
+        return descriptor;
+    }
+
+    /**
+     * @return a class
+     * @throws IOException
+     */
+    private Class<?> readClass() throws IOException
+    {
+        int index = readVarInt();
+        if (index > 0)
+        {
+            return this.classes.get(index - 1);
+        }
+        Class<?> type = this.mapper.realClass(readString());
+        this.classes.add(type);
+        return type;
+    }
+
+    /**
+     * @return a string
+     * @throws IOException
+     */
+    private String readString() throws IOException
+    {
+        int index = readVarInt();
+        if (index > 0)
+        {
+            return this.strings.get(index - 1);
+        }
+        byte[] bytes = new byte[readVarInt()];
+        this.in.readFully(bytes);
+        String s = new String(bytes, BinaryGraphFormat.CHARSET);
+        this.strings.add(s);
+        return s;
+    }
+
+    /**
+     * @return a positive int written with 7 bits per byte
+     * @throws IOException
+     */
+    private int readVarInt() throws IOException
+    {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7)
+        {
+            int b = this.in.readByte();
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+            {
+                return result;
+            }
+        }
+        throw new IOException("Corrupted binary diagram file : malformed number");
+    }
+
+    /**
+     * @return a signed number written with 7 bits per byte (zigzag encoding)
+     * @throws IOException
+     */
+    private long readVarLong() throws IOException
+    {
+        long zigzag = 0;
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            long b = this.in.readByte();
+            zigzag |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+            {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+        throw new IOException("Corrupted binary diagram file : malformed number");
+    }
+
+    /**
+     * Numbers the next object before reading it, so that the objects it refers to can refer to it
+     *
+     * @return its handle
+     */
+    private int reserveHandle()
+    {
+        this.handles.add(null);
+        return this.handles.size() - 1;
+    }
+
+    /**
+     * @param type a collection or map class
+     * @return a new instance
+     * @throws IOException
+     */
+    private static Object newInstance(Class<?> type) throws IOException
+    {
+        try
+        {
+            return type.newInstance();
+        }
+        catch (InstantiationException e)
+        {
+            throw new IOException("Unable to create " + type.getName());
+        }
+        catch (IllegalAccessException e)
+        {
+            throw new IOException("Unable to create " + type.getName());
+        }
+    }
+
+    /**
+     * @param type an enum class
+     * @param name a constant name
+     * @return the constant
+     */
+    @SuppressWarnings("unchecked")
+    private static Object getEnumConstant(Class type, String name)
+    {
+        return Enum.valueOf(type, name);
+    }
+
+    /**
+     * Fields read for the instances of a class
+     */
+    private static class ClassDescriptor
+    {
+        private Class<?> type;
+        private String[] fieldNames;
+        private Class<?>[] definedIns;
+        private byte[] primitiveCodes;
+    }
+
+    private DataInputStream in;
+
+    private Mapper mapper;
+
+    private ReflectionProvider reflectionProvider;
+
+    private ClassLoader classLoader;
+
+    private SerializationMethodInvoker serializationMethodInvoker = new SerializationMethodInvoker();
+
+    /** Objects, arrays, collections and maps already read */
+    private List<Object> handles = new ArrayList<Object>();
+
+    private List<String> strings = new ArrayList<String>();
+
+    private List<Class<?>> classes = new ArrayList<Class<?>>();
+
+    private List<ClassDescriptor> descriptors = new ArrayList<ClassDescriptor>();
+
+}
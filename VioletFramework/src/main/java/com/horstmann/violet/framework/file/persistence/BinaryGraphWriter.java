@@ -0,0 +1,494 @@
+package com.horstmann.violet.framework.file.persistence;
+
+import java.awt.Color;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.thoughtworks.xstream.converters.reflection.ReflectionProvider;
+import com.thoughtworks.xstream.mapper.Mapper;
+
+/**
+ * Writes objects in the binary diagram format (see BinaryGraphFormat). Fields are found the same way XStream does, with its
+ * reflection provider and mapper, so that the same state is saved as in the XStream format.
+ */
+class BinaryGraphWriter
+{
+
+    /**
+     * Default constructor
+     *
+     * @param out where to write
+     * @param mapper the XStream mapper giving class names and fields to omit
+     * @param reflectionProvider the XStream reflection provider giving fields to save
+     */
+    BinaryGraphWriter(DataOutputStream out, Mapper mapper, ReflectionProvider reflectionProvider)
+    {
+        this.out = out;
+        this.mapper = mapper;
+        this.reflectionProvider = reflectionProvider;
+    }
+
+    /**
+     * Writes a value and everything it refers to
+     *
+     * @param value
+     * @throws IOException
+     */
+    void writeValue(Object value) throws IOException
+    {
+        if (value == null)
+        {
+            this.out.writeByte(BinaryGraphFormat.NULL);
+            return;
+        }
+        Class<?> type = value.getClass();
+        if (type == String.class)
+        {
+            this.out.writeByte(BinaryGraphFormat.STRING);
+            writeString((String) value);
+            return;
+        }
+        if (writeImmutableValue(type, value))
+        {
+            return;
+        }
+        Integer handle = this.handles.get(value);
+        if (handle != null)
+        {
+            this.out.writeByte(BinaryGraphFormat.REFERENCE);
+            writeVarInt(handle.intValue());
+            return;
+        }
+        this.handles.put(value, Integer.valueOf(this.handles.size()));
+        if (type.isArray())
+        {
+            writeArray(type, value);
+        }
+        else if (BinaryGraphFormat.isCollectionClass(type))
+        {
+            this.out.writeByte(BinaryGraphFormat.COLLECTION);
+            writeClass(type);
+            Collection<?> collection = (Collection<?>) value;
+            writeVarInt(collection.size());
+            for (Object anElement : collection)
+            {
+                writeValue(anElement);
+            }
+        }
+        else if (BinaryGraphFormat.isMapClass(type))
+        {
+            this.out.writeByte(BinaryGraphFormat.MAP);
+            writeClass(type);
+            Map<?, ?> map = (Map<?, ?>) value;
+            writeVarInt(map.size());
+            for (Map.Entry<?, ?> anEntry : map.entrySet())
+            {
+                writeValue(anEntry.getKey());
+                writeValue(anEntry.getValue());
+            }
+        }
+        else if (value instanceof Collection<?> || value instanceof Map<?, ?>)
+        {
+            // Written as an object, its content would depend on the JDK implementation (or on its own writeObject() method)
+            throw new IOException("Unsupported container type in binary diagram file : " + type.getName());
+        }
+        else if (isSerializedWithJava(type))
+        {
+            if (!BinaryGraphFormat.isSerializedClass(type))
+            {
+                throw new IOException("Unsupported serializable type in binary diagram file : " + type.getName());
+            }
+            this.out.writeByte(BinaryGraphFormat.SERIALIZED);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream objectOut = new ObjectOutputStream(bytes);
+            objectOut.writeObject(value);
+            objectOut.close();
+            writeVarInt(bytes.size());
+            bytes.writeTo(this.out);
+        }
+        else
+        {
+            this.out.writeByte(BinaryGraphFormat.OBJECT);
+            ClassDescriptor descriptor = writeDescriptor(value);
+            for (int i = 0; i < descriptor.fields.length; i++)
+            {
+                Object fieldValue = getFieldValue(descriptor.fields[i], value);
+                byte primitiveCode = descriptor.primitiveCodes[i];
+                if (primitiveCode == BinaryGraphFormat.NOT_PRIMITIVE)
+                {
+                    writeValue(fieldValue);
+                }
+                else
+                {
+                    writePrimitive(primitiveCode, fieldValue);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes values which are not shared : boxed primitives, colors and enumerations
+     *
+     * @param type the value class
+     * @param value
+     * @return false if the value isn't one of them
+     * @throws IOException
+     */
+    private boolean writeImmutableValue(Class<?> type, Object value) throws IOException
+    {
+        if (type == Integer.class)
+        {
+            this.out.writeByte(BinaryGraphFormat.INTEGER);
+            writeVarLong(((Integer) value).intValue());
+        }
+        else if (type == Double.class)
+        {
+            this.out.writeByte(BinaryGraphFormat.DOUBLE);
+            this.out.writeDouble(((Double) value).doubleValue());
+        }
+        else if (type == Boolean.class)
+        {
+            this.out.writeByte(((Boolean) value).booleanValue() ? BinaryGraphFormat.TRUE : BinaryGraphFormat.FALSE);
+        }
+        else if (type == Long.class)
+        {
+            this.out.writeByte(BinaryGraphFormat.LONG);
+            writeVarLong(((Long) value).longValue());
+        }
+        else if (type == Float.class)
+        {
+            this.out.writeByte(BinaryGraphFormat.FLOAT);
+            this.out.writeFloat(((Float) value).floatValue());
+        }
+        else if (type == Short.class)
+        {
+            this.out.writeByte(BinaryGraphFormat.SHORT);
+            writeVarLong(((Short) value).shortValue());
+        }
+        else if (type == Byte.class)
+        {
+            this.out.writeByte(BinaryGraphFormat.BYTE);
+            this.out.writeByte(((Byte) value).byteValue());
+        }
+        else if (type == Character.class)
+        {
+            this.out.writeByte(BinaryGraphFormat.CHARACTER);
+            this.out.writeChar(((Character) value).charValue());
+        }
+        else if (type == Color.class)
+        {
+            // Same information as XStream's ColorConverter
+            this.out.writeByte(BinaryGraphFormat.COLOR);
+            this.out.writeInt(((Color) value).getRGB());
+        }
+        else if (value instanceof Enum<?>)
+        {
+            Enum<?> constant = (Enum<?>) value;
+            this.out.writeByte(BinaryGraphFormat.ENUM);
+            writeClass(constant.getDeclaringClass());
+            writeString(constant.name());
+        }
+        else
+        {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param type
+     * @param array
+     * @throws IOException
+     */
+    private void writeArray(Class<?> type, Object array) throws IOException
+    {
+        this.out.writeByte(BinaryGraphFormat.ARRAY);
+        writeClass(type);
+        int length = Array.getLength(array);
+        writeVarInt(length);
+        byte primitiveCode = BinaryGraphFormat.getPrimitiveCode(type.getComponentType());
+        if (primitiveCode == BinaryGraphFormat.NOT_PRIMITIVE)
+        {
+            Object[] objects = (Object[]) array;
+            for (int i = 0; i < length; i++)
+            {
+                writeValue(objects[i]);
+            }
+            return;
+        }
+        for (int i = 0; i < length; i++)
+        {
+            writePrimitive(primitiveCode, Array.get(array, i));
+        }
+    }
+
+    /**
+     * Writes the value of a primitive field or array element (without tag)
+     *
+     * @param primitiveCode
+     * @param value the boxed value
+     * @throws IOException
+     */
+    private void writePrimitive(byte primitiveCode, Object value) throws IOException
+    {
+        switch (primitiveCode)
+        {
+        case BinaryGraphFormat.PRIMITIVE_INT:
+            writeVarLong(((Integer) value).intValue());
+            break;
+        case BinaryGraphFormat.PRIMITIVE_DOUBLE:
+            this.out.writeDouble(((Double) value).doubleValue());
+            break;
+        case BinaryGraphFormat.PRIMITIVE_BOOLEAN:
+            this.out.writeBoolean(((Boolean) value).booleanValue());
+            break;
+        case BinaryGraphFormat.PRIMITIVE_LONG:
+            writeVarLong(((Long) value).longValue());
+            break;
+        case BinaryGraphFormat.PRIMITIVE_FLOAT:
+            this.out.writeFloat(((Float) value).floatValue());
+            break;
+        case BinaryGraphFormat.PRIMITIVE_CHAR:
+            this.out.writeChar(((Character) value).charValue());
+            break;
+        case BinaryGraphFormat.PRIMITIVE_BYTE:
+            this.out.writeByte(((Byte) value).byteValue());
+            break;
+        default:
+            writeVarLong(((Short) value).shortValue());
+            break;
+        }
+    }
+
+    /**
+     * Writes the descriptor of an object class (only its index if it has already been written)
+     *
+     * @param value an instance of the class
+     * @return the descriptor
+     * @throws IOException
+     */
+    private ClassDescriptor writeDescriptor(Object value) throws IOException
+    {
+        Class<?> type = value.getClass();
+        ClassDescriptor descriptor = this.descriptors.get(type);
+        if (descriptor != null)
+        {
+            writeVarInt(descriptor.index + 1);
+            return descriptor;
+        }
+        final List<Field> fields = new ArrayList<Field>();
+        this.reflectionProvider.visitSerializableFields(value, new ReflectionProvider.Visitor()
+        {
+            public void visit(String name, Class type, Class definedIn, Object fieldValue)
+            {
+                if (BinaryGraphWriter.this.mapper.shouldSerializeMember(definedIn, name))
+                {
+                    fields.add(getField(definedIn, name));
+                }
+            }
+        });
+        descriptor = new ClassDescriptor(this.descriptors.size(), fields);
+        this.descriptors.put(type, descriptor);
+        writeVarInt(0);
+        writeClass(type);
+        writeVarInt(descriptor.fields.length);
+        for (int i = 0; i < descriptor.fields.length; i++)
+        {
+            writeString(descriptor.fields[i].getName());
+            writeClass(descriptor.fields[i].getDeclaringClass());
+            this.out.writeByte(descriptor.primitiveCodes[i]);
+        }
+        return descriptor;
+    }
+
+    /**
+     * Writes a class by its XStream name (only its index if it has already been written)
+     *
+     * @param type
+     * @throws IOException
+     */
+    private void writeClass(Class<?> type) throws IOException
+    {
+        Integer index = this.classIndexes.get(type);
+        if (index != null)
+        {
+            writeVarInt(index.intValue() + 1);
+            return;
+        }
+        this.classIndexes.put(type, Integer.valueOf(this.classIndexes.size()));
+        writeVarInt(0);
+        writeString(this.mapper.serializedClass(type));
+    }
+
+    /**
+     * Writes a string (only its index if it has already been written)
+     *
+     * @param s
+     * @throws IOException
+     */
+    private void writeString(String s) throws IOException
+    {
+        Integer index = this.stringIndexes.get(s);
+        if (index != null)
+        {
+            writeVarInt(index.intValue() + 1);
+            return;
+        }
+        this.stringIndexes.put(s, Integer.valueOf(this.stringIndexes.size()));
+        writeVarInt(0);
+        byte[] bytes = s.getBytes(BinaryGraphFormat.CHARSET);
+        writeVarInt(bytes.length);
+        this.out.write(bytes);
+    }
+
+    /**
+     * Writes a positive int with 7 bits per byte
+     *
+     * @param value
+     * @throws IOException
+     */
+    private void writeVarInt(int value) throws IOException
+    {
+        while ((value & ~0x7F) != 0)
+        {
+            this.out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        this.out.writeByte(value);
+    }
+
+    /**
+     * Writes a signed number with 7 bits per byte, small negative numbers being short too (zigzag encoding)
+     *
+     * @param value
+     * @throws IOException
+     */
+    private void writeVarLong(long value) throws IOException
+    {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0)
+        {
+            this.out.writeByte((int) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+        this.out.writeByte((int) zigzag);
+    }
+
+    /**
+     * @param type
+     * @return true if the class (or one of its super classes) customizes Java serialization, so that its state can't be read
+     *         from its fields
+     */
+    private boolean isSerializedWithJava(Class<?> type)
+    {
+        Boolean result = this.serializedWithJavaClasses.get(type);
+        if (result == null)
+        {
+            result = Boolean.FALSE;
+            if (Serializable.class.isAssignableFrom(type))
+            {
+                for (Class<?> aClass = type; aClass != Object.class && aClass != null; aClass = aClass.getSuperclass())
+                {
+                    try
+                    {
+                        aClass.getDeclaredMethod("writeObject", ObjectOutputStream.class);
+                        result = Boolean.TRUE;
+                        break;
+                    }
+                    catch (NoSuchMethodException e)
+                    {
+                        // Look at the super class
+                    }
+                }
+            }
+            this.serializedWithJavaClasses.put(type, result);
+        }
+        return result.booleanValue();
+    }
+
+    /**
+     * @param definedIn
+     * @param name
+     * @return the accessible field
+     */
+    private static Field getField(Class<?> definedIn, String name)
+    {
+        try
+        {
+            Field field = definedIn.getDeclaredField(name);
+            field.setAccessible(true);
+            return field;
+        }
+        catch (NoSuchFieldException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param field
+     * @param object
+     * @return the field value (boxed if primitive)
+     */
+    private static Object getFieldValue(Field field, Object object)
+    {
+        try
+        {
+            return field.get(object);
+        }
+        catch (IllegalAccessException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Fields written for the instances of a class
+     */
+    private static class ClassDescriptor
+    {
+        ClassDescriptor(int index, List<Field> fieldList)
+        {
+            this.index = index;
+            this.fields = fieldList.toArray(new Field[fieldList.size()]);
+            this.primitiveCodes = new byte[this.fields.length];
+            for (int i = 0; i < this.fields.length; i++)
+            {
+                this.primitiveCodes[i] = BinaryGraphFormat.getPrimitiveCode(this.fields[i].getType());
+            }
+        }
+
+        private int index;
+        private Field[] fields;
+        private byte[] primitiveCodes;
+    }
+
+    private DataOutputStream out;
+
+    private Mapper mapper;
+
+    private ReflectionProvider reflectionProvider;
+
+    /** Numbers given to objects, arrays, collections and maps already written */
+    private Map<Object, Integer> handles = new IdentityHashMap<Object, Integer>();
+
+    private Map<String, Integer> stringIndexes = new HashMap<String, Integer>();
+
+    private Map<Class<?>, Integer> classIndexes = new HashMap<Class<?>, Integer>();
+
+    private Map<Class<?>, ClassDescriptor> descriptors = new HashMap<Class<?>, ClassDescriptor>();
+
+    private Map<Class<?>, Boolean> serializedWithJavaClasses = new HashMap<Class<?>, Boolean>();
+
+}
@@ -0,0 +1,74 @@
+package com.horstmann.violet.framework.file.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.horstmann.violet.framework.injection.bean.ManiocFramework.ManagedBean;
+import com.horstmann.violet.product.diagram.abstracts.IGraph;
+import com.thoughtworks.xstream.XStream;
+
+/**
+ * Compact binary implementation of IFilePersistenceService, much faster to read and write than XML for large diagrams.<br/>
+ * <br/>
+ * Graphs are saved with the same fields as with XStreamBasedPersistenceService (XStream's own mapper and reflection provider are
+ * used), so files can be converted from one format to the other without loss (see BinaryFormatConverter). But strings, classes
+ * and class field lists are written only once and then referred to by an index, objects refer to each other with integers
+ * instead of ids and numbers are stored in binary. See BinaryGraphFormat for details.
+ */
+@ManagedBean(registeredManually=true)
+public class BinaryPersistenceService implements IFilePersistenceService
+{
+
+    @Override
+    public void write(IGraph graph, OutputStream out)
+    {
+        try
+        {
+            DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+            dataOut.writeInt(BinaryGraphFormat.MAGIC_NUMBER);
+            dataOut.writeShort(BinaryGraphFormat.FORMAT_VERSION);
+            XStream xStream = this.xstreamService.getXStream();
+            BinaryGraphWriter writer = new BinaryGraphWriter(dataOut, xStream.getMapper(), xStream.getReflectionProvider());
+            writer.writeValue(graph);
+            dataOut.flush();
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public IGraph read(InputStream in) throws IOException
+    {
+        DataInputStream dataIn = new DataInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+        if (dataIn.readInt() != BinaryGraphFormat.MAGIC_NUMBER)
+        {
+            throw new IOException("Not a binary diagram file");
+        }
+        int version = dataIn.readUnsignedShort();
+        if (version > BinaryGraphFormat.FORMAT_VERSION)
+        {
+            throw new IOException("Binary diagram file version " + version + " isn't supported by this version of Violet");
+        }
+        XStream xStream = this.xstreamService.getXStream();
+        BinaryGraphReader reader = new BinaryGraphReader(dataIn, xStream.getMapper(), xStream.getReflectionProvider(), xStream
+                .getClassLoader());
+        Object value = reader.readValue();
+        if (!(value instanceof IGraph))
+        {
+            throw new IOException("No diagram found in binary diagram file");
+        }
+        return this.xstreamService.getReadGraph(value);
+    }
+
+    private XStreamBasedPersistenceService xstreamService = new XStreamBasedPersistenceService();
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+}
@@ -61,6 +61,11 @@ public class StandardJavaFilePersistenceService implements IFilePersistenceServi
         });
         IGraph graph = (IGraph) reader.readObject();
         in.close();
+        if (graph instanceof AbstractGraph)
+        {
+            // Ids can be changed by the decoder after nodes and edges have been added
+            ((AbstractGraph) graph).notifyStructureChanged();
+        }
         return graph;
     }
     
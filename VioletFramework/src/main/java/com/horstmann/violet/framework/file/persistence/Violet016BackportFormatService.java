@@ -21,18 +21,15 @@
 
 package com.horstmann.violet.framework.file.persistence;
 
-import java.io.ByteArrayInputStream;
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.UnsupportedEncodingException;
 import java.util.HashMap;
 import java.util.Hashtable;
-import java.util.Iterator;
 import java.util.Map;
-import java.util.Set;
 
+import com.horstmann.violet.framework.util.StringFilterInputStream;
 import com.horstmann.violet.framework.util.StringFilterOutputStream;
 import com.horstmann.violet.product.diagram.abstracts.property.ArrowHead;
 import com.horstmann.violet.product.diagram.abstracts.property.BentStyle;
@@ -52,86 +49,68 @@ public class Violet016BackportFormatService
 {
 
     /**
-     * This filter guarantees compatibility for Violet 0.16 file format
+     * This filter guarantees compatibility for Violet 0.16 file format. Class names are replaced while the stream is read, so
+     * large files aren't loaded in memory. Streams which don't refer to any Violet 0.16 class name in their first bytes (where
+     * the graph class appears) are returned unfiltered.
      * 
      * @param in raw input stream
      * @return converted input stream
      */
     public static InputStream convertFromViolet016(InputStream in)
     {
-
-        Map<String, String> replaceMap = new Hashtable<String, String>();
-        replaceMap.putAll(violet016CompatibilityMap);
-
-        // fix framework elements
-        replaceMap.put("com.horstmann.violet.BentStyle", BentStyle.class.getName());
-        replaceMap.put("com.horstmann.violet.LineStyle", LineStyle.class.getName());
-        replaceMap.put("com.horstmann.violet.ArrowHead", ArrowHead.class.getName());
-
-        // fix common elements package
-        replaceMap.put("com.horstmann.violet.DiagramLinkNode", DiagramLinkNode.class.getName());
-        replaceMap.put("com.horstmann.violet.NoteEdge", NoteEdge.class.getName());
-        replaceMap.put("com.horstmann.violet.NoteNode", NoteNode.class.getName());
-        replaceMap.put("com.horstmann.violet.PointNode", PointNode.class.getName());
-
-        String original = getInputStreamContent(in);
-        String replaced = replaceAll(original, replaceMap);
+        BufferedInputStream bufferedInputStream = new BufferedInputStream(in, SNIFF_LENGTH);
+        StringFilterInputStream.Dictionary dictionary = getViolet016Dictionary();
         try
         {
-            return new ByteArrayInputStream(replaced.getBytes("UTF-8"));
-        }
-        catch (UnsupportedEncodingException ex)
-        {
-            ex.printStackTrace();
-            return new ByteArrayInputStream(replaced.getBytes());
-        }
-    }
-
-    /**
-     * Converts inputStream to String
-     * 
-     * @param in stream
-     * @return string
-     */
-    private static String getInputStreamContent(InputStream in)
-    {
-        try
-        {
-            InputStreamReader isr = new InputStreamReader(in, "UTF-8");
-            StringBuffer buffer = new StringBuffer();
-            int len = 1024;
-            char buf[] = new char[len];
-            int numRead;
-            while ((numRead = isr.read(buf, 0, len)) != -1)
+            bufferedInputStream.mark(SNIFF_LENGTH);
+            byte[] header = new byte[SNIFF_LENGTH];
+            int headerLength = 0;
+            while (headerLength < SNIFF_LENGTH)
+            {
+                int numRead = bufferedInputStream.read(header, headerLength, SNIFF_LENGTH - headerLength);
+                if (numRead == -1)
+                {
+                    break;
+                }
+                headerLength += numRead;
+            }
+            bufferedInputStream.reset();
+            if (!dictionary.isFoundIn(header, headerLength))
             {
-                buffer.append(buf, 0, numRead);
+                return bufferedInputStream;
             }
-            isr.close();
-            return buffer.toString();
         }
         catch (IOException e)
         {
             throw new RuntimeException(e);
         }
+        return new StringFilterInputStream(bufferedInputStream, dictionary);
     }
 
     /**
-     * Filters a string and replaces all key courrences issed from the map by its valye
-     * 
-     * @param input string
-     * @param replaceMap key = searchedString / value = replaceString
-     * @return filtered string
+     * @return the automaton replacing Violet 0.16 class names, built again when new compatibility entries are registered
      */
-    private static String replaceAll(String input, Map<String, String> replaceMap)
+    private static synchronized StringFilterInputStream.Dictionary getViolet016Dictionary()
     {
-        Set<String> set = replaceMap.keySet();
-        for (Iterator<String> iter = set.iterator(); iter.hasNext();)
+        if (violet016Dictionary == null)
         {
-            String searchedStr = iter.next();
-            String replaceStr = replaceMap.get(searchedStr);
-            input = input.replaceAll(searchedStr, replaceStr);
+            Map<String, String> replaceMap = new HashMap<String, String>();
+            replaceMap.putAll(violet016CompatibilityMap);
+
+            // fix framework elements
+            replaceMap.put("com.horstmann.violet.BentStyle", BentStyle.class.getName());
+            replaceMap.put("com.horstmann.violet.LineStyle", LineStyle.class.getName());
+            replaceMap.put("com.horstmann.violet.ArrowHead", ArrowHead.class.getName());
+
+            // fix common elements package
+            replaceMap.put("com.horstmann.violet.DiagramLinkNode", DiagramLinkNode.class.getName());
+            replaceMap.put("com.horstmann.violet.NoteEdge", NoteEdge.class.getName());
+            replaceMap.put("com.horstmann.violet.NoteNode", NoteNode.class.getName());
+            replaceMap.put("com.horstmann.violet.PointNode", PointNode.class.getName());
+
+            violet016Dictionary = new StringFilterInputStream.Dictionary(replaceMap);
         }
-        return input;
+        return violet016Dictionary;
     }
 
     /**
@@ -167,9 +146,10 @@ public class Violet016BackportFormatService
      * 
      * @param entries
      */
-    public static void addViolet016CompatibilityEntries(Map<String, String> entries)
+    public static synchronized void addViolet016CompatibilityEntries(Map<String, String> entries)
     {
         violet016CompatibilityMap.putAll(entries);
+        violet016Dictionary = null;
     }
 
     /**
@@ -198,4 +178,14 @@ public class Violet016BackportFormatService
      */
     private static Map<String, String> violet016CompatibilityMap = new HashMap<String, String>();
 
+    /**
+     * Violet 0.16 compatibility map and framework class names compiled for reading
+     */
+    private static StringFilterInputStream.Dictionary violet016Dictionary;
+
+    /**
+     * Number of bytes looked at to detect Violet 0.16 files
+     */
+    private static final int SNIFF_LENGTH = 4096;
+
 }
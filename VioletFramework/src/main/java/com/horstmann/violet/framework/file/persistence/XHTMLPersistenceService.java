@@ -1,19 +1,22 @@
 package com.horstmann.violet.framework.file.persistence;
 
 import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.FilterReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.StringWriter;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
 import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
 
 import javax.imageio.ImageIO;
-import javax.swing.text.MutableAttributeSet;
-import javax.swing.text.html.HTML;
-import javax.swing.text.html.HTMLEditorKit;
 
 import org.apache.commons.codec.binary.Base64OutputStream;
 
@@ -39,6 +42,21 @@ public class XHTMLPersistenceService implements IFilePersistenceService
 
     private static final String TEMPLATE_XMLCONTENT_KEY = "${content}";
 
+    /** Charset of the file, as declared in the template */
+    private static final String CHARSET = "UTF-8";
+
+    /** Written in the template head since files are encoded with CHARSET (they were encoded with the platform charset before) */
+    private static final String CHARSET_MARKER = "<META name=\"violet-charset\" content=\"UTF-8\">";
+
+    /** Maximum size of the HTML head, where CHARSET_MARKER is looked for */
+    private static final int HEAD_MAX_SIZE = 4096;
+
+    /** Beginning of the content section, CHARSET_MARKER is only looked for before it */
+    private static final String CONTENT_START = "<![CDATA[";
+
+    /** Template split at its keys, see getTemplateParts() */
+    private static List<String> templateParts;
+
     private XStreamBasedPersistenceService xstreamService = new XStreamBasedPersistenceService();
 
     @InjectedBean
@@ -49,18 +67,31 @@ public class XHTMLPersistenceService implements IFilePersistenceService
     {
         try
         {
-            InputStream templateAsStream = this.getClass().getResourceAsStream(TEMPLATE_FILE);
-            String template = getInputStreamContent(templateAsStream);
-            ByteArrayOutputStream graphOutputStream = new ByteArrayOutputStream();
-            xstreamService.write(graph, graphOutputStream);
-            String graphString = graphOutputStream.toString();
-            ByteArrayOutputStream imageOutputStream = new ByteArrayOutputStream();
-            ImageIO.write(FileExportService.getImage(graph), IMAGE_TYPE, new Base64OutputStream(imageOutputStream));
-            String imageString = HTML_INLINE_IMAGE_PREFIX + imageOutputStream.toString();
-            template = template.replace(TEMPLATE_VERSION_KEY, this.versionChecker.getAppVersionNumber());
-            template = template.replace(TEMPLATE_XMLCONTENT_KEY, graphString);
-            template = template.replace(TEMPLATE_IMAGE_KEY, imageString);
-            out.write(template.getBytes());
+            Writer writer = new OutputStreamWriter(out, CHARSET);
+            List<String> templateParts = getTemplateParts();
+            for (int i = 0; i < templateParts.size(); i++)
+            {
+                String aPart = templateParts.get(i);
+                if (i % 2 == 0)
+                {
+                    writer.write(aPart);
+                }
+                else if (TEMPLATE_VERSION_KEY.equals(aPart))
+                {
+                    writer.write(this.versionChecker.getAppVersionNumber());
+                }
+                else if (TEMPLATE_XMLCONTENT_KEY.equals(aPart))
+                {
+                    this.xstreamService.write(graph, writer);
+                }
+                else if (TEMPLATE_IMAGE_KEY.equals(aPart))
+                {
+                    writer.write(HTML_INLINE_IMAGE_PREFIX);
+                    writer.flush();
+                    writeImage(graph, out);
+                }
+            }
+            writer.flush();
         }
         catch (IOException e)
         {
@@ -71,110 +102,354 @@ public class XHTMLPersistenceService implements IFilePersistenceService
     @Override
     public IGraph read(InputStream in) throws IOException
     {
-        XHTMLPersistenceServiceParserGetter kit = new XHTMLPersistenceServiceParserGetter();
-        HTMLEditorKit.Parser parser = kit.getParser();
-        StringWriter writer = new StringWriter();
-        HTMLEditorKit.ParserCallback callback = new XHTMLPersistenceServiceParserCallback(writer);
-        InputStreamReader reader = new InputStreamReader(in);
-        parser.parse(reader, callback, true);
-        String xmlContent = writer.toString();
-        ByteArrayInputStream xmlContentStream = new ByteArrayInputStream(xmlContent.getBytes());
-        return this.xstreamService.read(xmlContentStream);
+        InputStream bufferedIn = new BufferedInputStream(in, HEAD_MAX_SIZE);
+        Reader contentReader = new XHTMLContentReader(new InputStreamReader(bufferedIn, getCharset(bufferedIn)));
+        return this.xstreamService.read(contentReader);
     }
 
-    private String getInputStreamContent(InputStream in) throws IOException
+    /**
+     * Looks for CHARSET_MARKER in the HTML head to know how the file has been encoded. The head only contains ASCII chars, so it
+     * can be read before knowing the charset.
+     * 
+     * @param in the file, which must support mark() and is reset to its beginning
+     * @return CHARSET for files with the marker, the platform charset for older ones
+     * @throws IOException
+     */
+    private static Charset getCharset(InputStream in) throws IOException
     {
-        BufferedInputStream bis = new BufferedInputStream(in);
-        ByteArrayOutputStream buf = new ByteArrayOutputStream();
-        int result = bis.read();
-        while (result != -1)
+        in.mark(HEAD_MAX_SIZE);
+        byte[] head = new byte[HEAD_MAX_SIZE];
+        int length = 0;
+        int numRead;
+        while (length < head.length && (numRead = in.read(head, length, head.length - length)) != -1)
+        {
+            length += numRead;
+        }
+        in.reset();
+        String headAsString = new String(head, 0, length, "ISO-8859-1");
+        int markerPosition = headAsString.indexOf(CHARSET_MARKER);
+        int contentPosition = headAsString.indexOf(CONTENT_START);
+        if (markerPosition != -1 && (contentPosition == -1 || markerPosition < contentPosition))
         {
-            byte b = (byte) result;
-            buf.write(b);
-            result = bis.read();
+            return Charset.forName(CHARSET);
         }
-        return buf.toString();
+        return Charset.defaultCharset();
     }
 
-    private class XHTMLPersistenceServiceParserGetter extends HTMLEditorKit
+    /**
+     * Writes the diagram image encoded in base 64
+     * 
+     * @param graph
+     * @param out the output stream, left opened
+     * @throws IOException
+     */
+    private void writeImage(IGraph graph, OutputStream out) throws IOException
     {
-        public HTMLEditorKit.Parser getParser()
+        OutputStream unclosableOut = new FilterOutputStream(out)
         {
-            return super.getParser();
-        }
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException
+            {
+                this.out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException
+            {
+                // Closing the base 64 stream flushes its last bytes but the file goes on
+                flush();
+            }
+        };
+        Base64OutputStream base64Out = new Base64OutputStream(unclosableOut);
+        ImageIO.write(FileExportService.getImage(graph), IMAGE_TYPE, base64Out);
+        base64Out.close();
     }
 
-    private class XHTMLPersistenceServiceParserCallback extends HTMLEditorKit.ParserCallback
+    /**
+     * Reads the template once and splits it at its keys
+     * 
+     * @return the template parts : texts at even indexes and keys at odd indexes
+     * @throws IOException
+     */
+    private static synchronized List<String> getTemplateParts() throws IOException
     {
+        if (templateParts != null)
+        {
+            return templateParts;
+        }
+        InputStream templateAsStream = XHTMLPersistenceService.class.getResourceAsStream(TEMPLATE_FILE);
+        Reader reader = new InputStreamReader(templateAsStream, CHARSET);
+        StringBuilder template = new StringBuilder();
+        char[] buffer = new char[4096];
+        int numRead;
+        while ((numRead = reader.read(buffer)) != -1)
+        {
+            template.append(buffer, 0, numRead);
+        }
+        reader.close();
+        String[] keys =
+        {
+                TEMPLATE_VERSION_KEY,
+                TEMPLATE_XMLCONTENT_KEY,
+                TEMPLATE_IMAGE_KEY
+        };
+        List<String> parts = new ArrayList<String>();
+        int position = 0;
+        while (true)
+        {
+            int keyPosition = -1;
+            String key = null;
+            for (String aKey : keys)
+            {
+                int index = template.indexOf(aKey, position);
+                if (index != -1 && (keyPosition == -1 || index < keyPosition))
+                {
+                    keyPosition = index;
+                    key = aKey;
+                }
+            }
+            if (key == null)
+            {
+                break;
+            }
+            parts.add(template.substring(position, keyPosition));
+            parts.add(key);
+            position = keyPosition + key.length();
+        }
+        parts.add(template.substring(position));
+        templateParts = Collections.unmodifiableList(parts);
+        return templateParts;
+    }
 
-        private Writer out;
+    /**
+     * Gives the XML content embedded in a Violet HTML file, that is to say the CDATA section of the script tag whose id is
+     * "content". The HTML is read up to the end of this section and nothing is kept from it, so the XML can be parsed while it is
+     * read (the image which follows isn't even read).
+     */
+    private static class XHTMLContentReader extends FilterReader
+    {
 
-        private boolean inHeader = false;
+        public XHTMLContentReader(Reader in)
+        {
+            super(in);
+        }
 
-        public XHTMLPersistenceServiceParserCallback(Writer out)
+        @Override
+        public int read() throws IOException
         {
-            this.out = out;
+            if (!this.isContentFound)
+            {
+                findContent();
+            }
+            return nextContentChar();
         }
 
-        public void handleStartTag(HTML.Tag tag, MutableAttributeSet attributes, int position)
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException
         {
-            if (!tag.equals(HTML.Tag.SCRIPT))
+            if (!this.isContentFound)
+            {
+                findContent();
+            }
+            int count = 0;
+            while (count < len)
+            {
+                int c = nextContentChar();
+                if (c == -1)
+                {
+                    break;
+                }
+                cbuf[off + count] = (char) c;
+                count++;
+            }
+            if (count == 0 && len > 0)
             {
-                return;
+                return -1;
             }
-            if (!attributes.containsAttribute(HTML.getAttributeKey("id"), "content"))
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException
+        {
+            long count = 0;
+            while (count < n && read() != -1)
             {
-                return;
+                count++;
             }
-            this.inHeader = true;
+            return count;
         }
 
-        public void handleEndTag(HTML.Tag tag, int position)
+        @Override
+        public boolean ready() throws IOException
+        {
+            return false;
+        }
+
+        @Override
+        public boolean markSupported()
+        {
+            return false;
+        }
+
+        @Override
+        public void mark(int readAheadLimit) throws IOException
         {
-            if (tag.equals(HTML.Tag.SCRIPT))
+            throw new IOException("mark() not supported");
+        }
+
+        @Override
+        public void reset() throws IOException
+        {
+            throw new IOException("reset() not supported");
+        }
+
+        /**
+         * Skips the HTML up to the beginning of the CDATA section of the content script tag
+         * 
+         * @throws IOException if there's no such section
+         */
+        private void findContent() throws IOException
+        {
+            this.isContentFound = true;
+            boolean isInContentScript = false;
+            int c = nextChar();
+            while (c != -1)
             {
-                if (this.inHeader)
+                if (c == '<')
                 {
-                    this.inHeader = false;
+                    StringBuilder tag = new StringBuilder();
+                    c = nextChar();
+                    while (c != -1 && c != '>')
+                    {
+                        if (tag.length() < MAX_TAG_LENGTH)
+                        {
+                            tag.append((char) c);
+                        }
+                        if (isInContentScript && CDATA_START.contentEquals(tag))
+                        {
+                            return;
+                        }
+                        c = nextChar();
+                    }
+                    String tagName = tag.toString().toLowerCase();
+                    if (tagName.startsWith(SCRIPT_TAG))
+                    {
+                        isInContentScript = CONTENT_ID_PATTERN.matcher(tagName).find();
+                    }
+                    else if (tagName.startsWith(SCRIPT_END_TAG))
+                    {
+                        isInContentScript = false;
+                    }
                 }
+                c = nextChar();
             }
-            // work around bug in the parser that fails to call flush
-            if (tag.equals(HTML.Tag.HTML)) this.flush();
+            throw new IOException("No diagram content found in this file");
         }
-        
 
-        @Override
-        public void handleComment(char[] text, int position)
+        /**
+         * @return the next char of the CDATA section, or -1 at its end
+         * @throws IOException
+         */
+        private int nextContentChar() throws IOException
         {
-            if (this.inHeader)
+            while (true)
             {
-                try
+                if (this.releasedBrackets > 0)
+                {
+                    this.releasedBrackets--;
+                    return ']';
+                }
+                if (this.charAfterBrackets != -1)
+                {
+                    int c = this.charAfterBrackets;
+                    this.charAfterBrackets = -1;
+                    return c;
+                }
+                if (this.isContentEnded)
                 {
-                    String xmlContent = new String(text);
-                    xmlContent = xmlContent.replace("<![CDATA[", "");
-                    xmlContent = xmlContent.replace("]]>", "");
-                    out.write(xmlContent);
-                    out.flush();
+                    return -1;
                 }
-                catch (IOException ex)
+                int c = nextChar();
+                if (c == -1)
                 {
-                    throw new RuntimeException(ex);
+                    // Truncated file : the XML parser will complain
+                    this.isContentEnded = true;
+                    this.releasedBrackets = this.heldBrackets;
                 }
+                else if (c == ']')
+                {
+                    // Could be the beginning of the CDATA end
+                    this.heldBrackets++;
+                    continue;
+                }
+                else if (c == '>' && this.heldBrackets >= 2)
+                {
+                    this.isContentEnded = true;
+                    this.releasedBrackets = this.heldBrackets - 2;
+                }
+                else if (this.heldBrackets == 0)
+                {
+                    return c;
+                }
+                else
+                {
+                    this.releasedBrackets = this.heldBrackets;
+                    this.charAfterBrackets = c;
+                }
+                this.heldBrackets = 0;
             }
         }
 
-        public void flush()
+        /**
+         * @return the next char of the HTML file, or -1 at its end
+         * @throws IOException
+         */
+        private int nextChar() throws IOException
         {
-            try
-            {
-                out.flush();
-            }
-            catch (IOException e)
+            if (this.position == this.length)
             {
-                throw new RuntimeException(e);
+                this.length = this.in.read(this.buffer, 0, this.buffer.length);
+                this.position = 0;
+                if (this.length <= 0)
+                {
+                    this.length = 0;
+                    return -1;
+                }
             }
+            return this.buffer[this.position++];
         }
 
+        private char[] buffer = new char[8192];
+
+        private int position = 0;
+
+        private int length = 0;
+
+        private boolean isContentFound = false;
+
+        private boolean isContentEnded = false;
+
+        /** Number of ']' read and not given yet, as they could be the CDATA end */
+        private int heldBrackets = 0;
+
+        /** Number of ']' to give before reading further */
+        private int releasedBrackets = 0;
+
+        /** Char to give after released brackets, or -1 */
+        private int charAfterBrackets = -1;
+
+        private static final String SCRIPT_TAG = "script";
+
+        private static final String SCRIPT_END_TAG = "/script";
+
+        private static final String CDATA_START = "![CDATA[";
+
+        private static final Pattern CONTENT_ID_PATTERN = Pattern.compile("\\sid\\s*=\\s*[\"']?content([\"'\\s/]|$)");
+
+        /** Tags are only compared on their beginning so there's no need to keep long ones entirely */
+        private static final int MAX_TAG_LENGTH = 256;
+
     }
 
 }
@@ -4,6 +4,9 @@ import java.awt.geom.Point2D;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
@@ -12,10 +15,16 @@ import com.horstmann.violet.framework.injection.bean.ManiocFramework.InjectedBea
 import com.horstmann.violet.framework.injection.bean.ManiocFramework.ManagedBean;
 import com.horstmann.violet.framework.plugin.IDiagramPlugin;
 import com.horstmann.violet.framework.plugin.PluginRegistry;
+import com.horstmann.violet.framework.util.SerializableEnumeration;
+import com.horstmann.violet.product.diagram.abstracts.AbstractGraph;
 import com.horstmann.violet.product.diagram.abstracts.IGraph;
+import com.horstmann.violet.product.diagram.abstracts.Id;
 import com.horstmann.violet.product.diagram.abstracts.edge.IEdge;
 import com.horstmann.violet.product.diagram.abstracts.node.INode;
+import com.horstmann.violet.product.diagram.abstracts.property.MultiLineString;
 import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.xml.StaxDriver;
 
 @ManagedBean(registeredManually=true)
 public class XStreamBasedPersistenceService implements IFilePersistenceService {
@@ -29,34 +38,95 @@ public class XStreamBasedPersistenceService implements IFilePersistenceService {
 
 	@Override
 	public IGraph read(InputStream in) throws IOException {
-		XStream xStream = new XStream();
-		xStream = getConfiguredXStream(xStream);
-		Object fromXML = xStream.fromXML(in);
+		Object fromXML = getXStream().fromXML(in);
+		return getReadGraph(fromXML);
+	}
+
+	/**
+	 * Reads a graph with a StAX parser. XML is pulled from the reader while XStream builds objects, so nothing but the resulting
+	 * graph is kept in memory (useful when the XML is extracted on the fly from another file format).
+	 * 
+	 * @param reader XML content
+	 * @return the graph
+	 * @throws IOException
+	 */
+	public IGraph read(Reader reader) throws IOException {
+		HierarchicalStreamReader xmlReader = this.staxDriver.createReader(reader);
+		try {
+			Object fromXML = getXStream().unmarshal(xmlReader);
+			return getReadGraph(fromXML);
+		} finally {
+			xmlReader.close();
+		}
+	}
+
+	/**
+	 * Restores what isn't serialized in a graph which has just been read (also used by BinaryPersistenceService)
+	 * 
+	 * @param fromXML the object read
+	 * @return the graph
+	 */
+	IGraph getReadGraph(Object fromXML) {
 		IGraph graph = (IGraph) fromXML;
 		Collection<INode> allNodes = graph.getAllNodes();
 		for (INode aNode : allNodes) {
 			aNode.setGraph(graph);
 		}
+		if (graph instanceof AbstractGraph) {
+			// Rebuilds indexes which are not serialized
+			((AbstractGraph) graph).notifyStructureChanged();
+		}
 		return graph;
 	}
 
 	@Override
 	public void write(IGraph graph, OutputStream out) {
-		XStream xStream = new XStream();
-		xStream = getConfiguredXStream(xStream);
-		xStream.toXML(graph, out);
+		getXStream().toXML(graph, out);
+	}
+
+	/**
+	 * Writes a graph as XML characters, for example inside another document. The writer is flushed but not closed.
+	 * 
+	 * @param graph
+	 * @param writer
+	 */
+	public void write(IGraph graph, Writer writer) {
+		getXStream().toXML(graph, writer);
+	}
+
+	/**
+	 * Gives the shared XStream instance. It is configured again only when plugins have been registered since it has been built,
+	 * so that XStream reflection caches and plugin aliases are reused by every read and write. Annotations are processed while
+	 * configuring (they aren't autodetected, as that changes the mapper while marshalling), so a configured XStream can be used
+	 * by several threads at the same time. BinaryPersistenceService uses its mapper and reflection provider to save the same
+	 * fields.
+	 * 
+	 * @return the configured XStream
+	 */
+	synchronized XStream getXStream() {
+		int registryRevision = this.pluginRegistry.getRevision();
+		if (this.xStream == null || registryRevision != this.xStreamRevision) {
+			this.xStream = getConfiguredXStream(new XStream());
+			this.xStreamRevision = registryRevision;
+		}
+		return this.xStream;
 	}
 	
 	private XStream getConfiguredXStream(XStream xStream) {
-		xStream.autodetectAnnotations(true);
+		xStream.autodetectAnnotations(false);
 		xStream.setMode(XStream.ID_REFERENCES);
 		xStream.useAttributeFor(Point2D.Double.class, "x");
 		xStream.useAttributeFor(Point2D.Double.class, "y");
 		xStream.alias("Point2D.Double", Point2D.Double.class);
+		List<Class<?>> annotatedClasses = new ArrayList<Class<?>>();
+		annotatedClasses.add(SerializableEnumeration.class);
+		annotatedClasses.add(Id.class);
+		annotatedClasses.add(MultiLineString.class);
 		List<IDiagramPlugin> diagramPlugins = this.pluginRegistry.getDiagramPlugins();
 		for (IDiagramPlugin aPlugin : diagramPlugins) {
 			Class<? extends IGraph> graphClass = aPlugin.getGraphClass();
 			xStream.alias(graphClass.getSimpleName(), graphClass);
+			annotatedClasses.add(graphClass);
 			try {
 				IGraph aDummyGraph = graphClass.newInstance();
 				List<IEdge> edgePrototypes = aDummyGraph.getEdgePrototypes();
@@ -64,16 +134,28 @@ public class XStreamBasedPersistenceService implements IFilePersistenceService {
 				for (IEdge anEdgePrototype : edgePrototypes) {
 					Class<? extends IEdge> edgeClass = anEdgePrototype.getClass();
 					xStream.alias(edgeClass.getSimpleName(), anEdgePrototype.getClass());
+					annotatedClasses.add(edgeClass);
 				}
 				for (INode aNodePrototype : nodePrototypes) {
 					Class<? extends INode> nodeClass = aNodePrototype.getClass();
 					xStream.alias(nodeClass.getSimpleName(), aNodePrototype.getClass());
+					annotatedClasses.add(nodeClass);
 				}
 			} catch (Exception e) {
 				throw new RuntimeException(e);
 			}
 		}
+		xStream.processAnnotations(annotatedClasses.toArray(new Class<?>[annotatedClasses.size()]));
 		return xStream;
 	}
 
+	/** StAX parser factory, used to read XML from a Reader */
+	private StaxDriver staxDriver = new StaxDriver();
+
+	/** XStream shared by all reads and writes */
+	private XStream xStream;
+
+	/** Plugin registry revision when xStream has been configured */
+	private int xStreamRevision;
+
 }
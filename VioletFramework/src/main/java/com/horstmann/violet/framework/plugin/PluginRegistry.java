@@ -32,6 +32,15 @@ public class PluginRegistry
     public void register(IDiagramPlugin newDiagramPlugin)
     {
         this.diagramPlugins.add(newDiagramPlugin);
+        this.revision++;
+    }
+
+    /**
+     * @return a number incremented each time a plugin is registered, used by services which cache things built from plugins
+     */
+    public int getRevision()
+    {
+        return this.revision;
     }
     
     /**
@@ -44,5 +53,8 @@ public class PluginRegistry
     /** diagram plugins */
     private List<IDiagramPlugin> diagramPlugins = new ArrayList<IDiagramPlugin>();
 
+    /** incremented each time a plugin is registered */
+    private volatile int revision = 0;
+
 
 }
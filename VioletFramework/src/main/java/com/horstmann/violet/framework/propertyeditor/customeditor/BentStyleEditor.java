@@ -48,7 +48,8 @@ public class BentStyleEditor extends CustomPropertyEditorSupport
             "HV",
             "VH",
             "HVH",
-            "VHV"
+            "VHV",
+            "Orthogonal"
     };
 
     /** bent style technical values */
@@ -60,6 +61,7 @@ public class BentStyleEditor extends CustomPropertyEditorSupport
             BentStyle.HV,
             BentStyle.VH,
             BentStyle.HVH,
-            BentStyle.VHV
+            BentStyle.VHV,
+            BentStyle.ORTHOGONAL
     };
 }
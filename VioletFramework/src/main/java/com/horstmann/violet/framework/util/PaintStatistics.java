@@ -0,0 +1,322 @@
+/*
+ Violet - A program for editing UML diagrams.
+
+ Copyright (C) 2007 Cay S. Horstmann (http://horstmann.com)
+ Alexandre de Pellegrin (http://alexdp.free.fr);
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package com.horstmann.violet.framework.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.ObjectName;
+
+/**
+ * Collects the time spent painting editor parts, drawing each kind of node and edge, computing their bounds, routing edges... and
+ * counts hit tests and repaints. Measures are shown upon editor parts (see LayeredEditorPartRenderer) and published as a JMX MBean.<br/>
+ * <br/>
+ * Collecting is disabled by default (start the application with -Dviolet.paintStatistics=true or enable it through JMX). When
+ * disabled, measuring only costs a boolean test.<br/>
+ * <br/>
+ * Usage :<br/>
+ * long startTime = PaintStatistics.getInstance().start();<br/>
+ * ... measured code ...<br/>
+ * PaintStatistics.getInstance().stop("measure name", startTime);
+ */
+public class PaintStatistics implements PaintStatisticsMBean
+{
+
+    /**
+     * Singleton constructor
+     */
+    private PaintStatistics()
+    {
+        this.isEnabled = Boolean.getBoolean(ENABLED_PROPERTY);
+        this.isOverlayVisible = this.isEnabled;
+    }
+
+    /**
+     * @return the unique instance (created and registered as an MBean when the class is loaded, so that measured code, which runs
+     *         in many threads, never waits for a lock)
+     */
+    public static PaintStatistics getInstance()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * @return the unique instance, registered as an MBean
+     */
+    private static PaintStatistics createInstance()
+    {
+        PaintStatistics statistics = new PaintStatistics();
+        statistics.registerMBean();
+        return statistics;
+    }
+
+    /**
+     * Starts a measure
+     *
+     * @return the start time to give to stop(), or 0 if collecting is disabled
+     */
+    public long start()
+    {
+        if (!this.isEnabled)
+        {
+            return 0;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Ends a measure
+     *
+     * @param name measure name
+     * @param startTime value returned by start()
+     */
+    public void stop(String name, long startTime)
+    {
+        if (startTime == 0 || !this.isEnabled)
+        {
+            return;
+        }
+        long duration = System.nanoTime() - startTime;
+        synchronized (this)
+        {
+            getMeasure(name).add(duration);
+        }
+    }
+
+    /**
+     * Ends a measure made on an object of a given class (for example, a node draw)
+     *
+     * @param name measure name
+     * @param type the class of the measured object, appended to the measure name
+     * @param startTime value returned by start()
+     */
+    public void stop(String name, Class<?> type, long startTime)
+    {
+        if (startTime == 0 || !this.isEnabled)
+        {
+            return;
+        }
+        stop(name + " " + type.getSimpleName(), startTime);
+    }
+
+    /**
+     * Counts an event
+     *
+     * @param name counter name
+     */
+    public void count(String name)
+    {
+        if (!this.isEnabled)
+        {
+            return;
+        }
+        synchronized (this)
+        {
+            getMeasure(name).add(0);
+        }
+    }
+
+    /**
+     * Ends the measure of an editor part paint
+     *
+     * @param startTime value returned by start()
+     */
+    public void stopFrame(long startTime)
+    {
+        stop(FRAME, startTime);
+    }
+
+    @Override
+    public boolean isEnabled()
+    {
+        return this.isEnabled;
+    }
+
+    @Override
+    public void setEnabled(boolean isEnabled)
+    {
+        this.isEnabled = isEnabled;
+    }
+
+    @Override
+    public boolean isOverlayVisible()
+    {
+        return this.isOverlayVisible;
+    }
+
+    @Override
+    public void setOverlayVisible(boolean isOverlayVisible)
+    {
+        this.isOverlayVisible = isOverlayVisible;
+    }
+
+    @Override
+    public synchronized long getFrameCount()
+    {
+        Measure frames = this.measures.get(FRAME);
+        return frames == null ? 0 : frames.count;
+    }
+
+    @Override
+    public synchronized double getAverageFrameTime()
+    {
+        Measure frames = this.measures.get(FRAME);
+        return frames == null ? 0 : frames.getAverageTime();
+    }
+
+    @Override
+    public synchronized double getMaxFrameTime()
+    {
+        Measure frames = this.measures.get(FRAME);
+        return frames == null ? 0 : toMillis(frames.maxTime);
+    }
+
+    @Override
+    public synchronized String[] getReport()
+    {
+        List<Measure> sortedMeasures = new ArrayList<Measure>(this.measures.values());
+        Collections.sort(sortedMeasures, new Comparator<Measure>()
+        {
+            public int compare(Measure m1, Measure m2)
+            {
+                int result = Long.valueOf(m2.totalTime).compareTo(Long.valueOf(m1.totalTime));
+                if (result == 0)
+                {
+                    result = Long.valueOf(m2.count).compareTo(Long.valueOf(m1.count));
+                }
+                return result;
+            }
+        });
+        String[] report = new String[sortedMeasures.size()];
+        for (int i = 0; i < report.length; i++)
+        {
+            report[i] = sortedMeasures.get(i).toString();
+        }
+        return report;
+    }
+
+    @Override
+    public synchronized void reset()
+    {
+        this.measures.clear();
+    }
+
+    /**
+     * @param name
+     * @return the measure with the given name (created if needed)
+     */
+    private Measure getMeasure(String name)
+    {
+        Measure measure = this.measures.get(name);
+        if (measure == null)
+        {
+            measure = new Measure(name);
+            this.measures.put(name, measure);
+        }
+        return measure;
+    }
+
+    /**
+     * Publishes statistics through JMX
+     */
+    private void registerMBean()
+    {
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(MBEAN_NAME));
+        }
+        catch (Exception e)
+        {
+            // JMX isn't available (in an applet for example). Statistics are still shown by editor parts.
+        }
+    }
+
+    /**
+     * @param nanos
+     * @return the same duration in milliseconds
+     */
+    private static double toMillis(long nanos)
+    {
+        return nanos / 1000000.0;
+    }
+
+    /**
+     * Number of occurrences and durations of a measured operation
+     */
+    private static class Measure
+    {
+        Measure(String name)
+        {
+            this.name = name;
+        }
+
+        void add(long duration)
+        {
+            this.count++;
+            this.totalTime += duration;
+            this.maxTime = Math.max(this.maxTime, duration);
+        }
+
+        double getAverageTime()
+        {
+            return this.count == 0 ? 0 : toMillis(this.totalTime) / this.count;
+        }
+
+        @Override
+        public String toString()
+        {
+            if (this.totalTime == 0)
+            {
+                return this.name + " : " + this.count;
+            }
+            return String.format("%s : %d, total %.1f ms, avg %.3f ms, max %.1f ms", this.name, Long.valueOf(this.count), Double
+                    .valueOf(toMillis(this.totalTime)), Double.valueOf(getAverageTime()), Double.valueOf(toMillis(this.maxTime)));
+        }
+
+        private String name;
+        private long count;
+        private long totalTime;
+        private long maxTime;
+    }
+
+    private volatile boolean isEnabled;
+
+    private volatile boolean isOverlayVisible;
+
+    private Map<String, Measure> measures = new HashMap<String, Measure>();
+
+    /** Measure of editor part paints */
+    public static final String FRAME = "EditorPart.paintComponent";
+
+    /** System property enabling statistics at startup */
+    public static final String ENABLED_PROPERTY = "violet.paintStatistics";
+
+    private static final String MBEAN_NAME = "com.horstmann.violet:type=PaintStatistics";
+
+    private static final PaintStatistics INSTANCE = createInstance();
+
+}
@@ -0,0 +1,79 @@
+/*
+ Violet - A program for editing UML diagrams.
+
+ Copyright (C) 2007 Cay S. Horstmann (http://horstmann.com)
+ Alexandre de Pellegrin (http://alexdp.free.fr);
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package com.horstmann.violet.framework.util;
+
+/**
+ * JMX view of the paint statistics (see jconsole, under com.horstmann.violet)
+ */
+public interface PaintStatisticsMBean
+{
+
+    /**
+     * @return true if measures are collected
+     */
+    public boolean isEnabled();
+
+    /**
+     * Starts or stops collecting measures
+     * 
+     * @param isEnabled
+     */
+    public void setEnabled(boolean isEnabled);
+
+    /**
+     * @return true if statistics are painted upon editor parts
+     */
+    public boolean isOverlayVisible();
+
+    /**
+     * Shows or hides statistics upon editor parts
+     * 
+     * @param isOverlayVisible
+     */
+    public void setOverlayVisible(boolean isOverlayVisible);
+
+    /**
+     * @return number of editor part paints since the last reset
+     */
+    public long getFrameCount();
+
+    /**
+     * @return average time spent to paint an editor part, in milliseconds
+     */
+    public double getAverageFrameTime();
+
+    /**
+     * @return longest time spent to paint an editor part, in milliseconds
+     */
+    public double getMaxFrameTime();
+
+    /**
+     * @return one line per measure (count, total, average and max times), the most time consuming first
+     */
+    public String[] getReport();
+
+    /**
+     * Clears all measures
+     */
+    public void reset();
+
+}
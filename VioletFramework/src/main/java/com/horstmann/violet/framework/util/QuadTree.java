@@ -0,0 +1,367 @@
+/*
+ Violet - A program for editing UML diagrams.
+
+ Copyright (C) 2007 Cay S. Horstmann (http://horstmann.com)
+ Alexandre de Pellegrin (http://alexdp.free.fr);
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package com.horstmann.violet.framework.util;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A region quad tree storing objects by their bounding rectangle. An object is kept in the smallest cell which entirely contains
+ * its bounds, so point and rectangle queries only visit the cells crossing the searched area (O(log n) for well spread objects).
+ * The covered area grows automatically when an object is inserted outside of it.
+ *
+ * @param <T> the type of the indexed objects
+ */
+public class QuadTree<T>
+{
+
+    /**
+     * Inserts an object or updates its bounds if it is already indexed
+     *
+     * @param object the object to index
+     * @param bounds its bounds (copied)
+     */
+    public void insert(T object, Rectangle2D bounds)
+    {
+        remove(object);
+        Entry<T> entry = new Entry<T>(object, new Rectangle2D.Double(bounds.getX(), bounds.getY(), bounds.getWidth(), bounds
+                .getHeight()));
+        this.entries.put(object, entry);
+        if (!isFinite(entry.bounds))
+        {
+            // Can't be located, so it is returned by every query
+            this.unlocatedEntries.add(entry);
+            return;
+        }
+        growToContain(entry.bounds);
+        this.root.insert(entry, 0);
+    }
+
+    /**
+     * Removes an object from the tree
+     *
+     * @param object the object to remove
+     * @return true if the object was indexed
+     */
+    public boolean remove(T object)
+    {
+        Entry<T> entry = this.entries.remove(object);
+        if (entry == null)
+        {
+            return false;
+        }
+        if (entry.cell == null)
+        {
+            this.unlocatedEntries.remove(entry);
+            return true;
+        }
+        entry.cell.entries.remove(entry);
+        return true;
+    }
+
+    /**
+     * @param object an object
+     * @return true if this object is indexed
+     */
+    public boolean contains(T object)
+    {
+        return this.entries.containsKey(object);
+    }
+
+    /**
+     * Removes all objects
+     */
+    public void clear()
+    {
+        this.entries.clear();
+        this.unlocatedEntries.clear();
+        this.root = null;
+    }
+
+    /**
+     * @return number of indexed objects
+     */
+    public int size()
+    {
+        return this.entries.size();
+    }
+
+    /**
+     * Finds the objects whose bounds contain the given point
+     *
+     * @param p a point
+     * @return the found objects (never null)
+     */
+    public List<T> query(Point2D p)
+    {
+        List<T> result = new ArrayList<T>();
+        if (this.root != null)
+        {
+            this.root.query(p.getX(), p.getY(), result);
+        }
+        for (Entry<T> anEntry : this.unlocatedEntries)
+        {
+            result.add(anEntry.object);
+        }
+        return result;
+    }
+
+    /**
+     * Finds the objects whose bounds intersect the given rectangle
+     *
+     * @param r a rectangle
+     * @return the found objects (never null)
+     */
+    public List<T> query(Rectangle2D r)
+    {
+        List<T> result = new ArrayList<T>();
+        if (this.root != null)
+        {
+            this.root.query(r, result);
+        }
+        for (Entry<T> anEntry : this.unlocatedEntries)
+        {
+            result.add(anEntry.object);
+        }
+        return result;
+    }
+
+    /**
+     * @param r a rectangle
+     * @return false if one of the rectangle coordinates is NaN or infinite
+     */
+    private static boolean isFinite(Rectangle2D r)
+    {
+        double[] values =
+        {
+                r.getX(),
+                r.getY(),
+                r.getWidth(),
+                r.getHeight()
+        };
+        for (double aValue : values)
+        {
+            if (Double.isNaN(aValue) || Double.isInfinite(aValue))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Ensures that the root cell covers the given bounds. The root is doubled towards the rectangle until it fits.
+     *
+     * @param bounds
+     */
+    private void growToContain(Rectangle2D bounds)
+    {
+        if (this.root == null)
+        {
+            double size = Math.max(MIN_ROOT_SIZE, Math.max(bounds.getWidth(), bounds.getHeight()) * 2);
+            this.root = new Cell<T>(bounds.getX() - size / 4, bounds.getY() - size / 4, size);
+            return;
+        }
+        while (!this.root.covers(bounds))
+        {
+            double size = this.root.size;
+            double x = this.root.x;
+            double y = this.root.y;
+            boolean isGrowingToWest = bounds.getX() < x;
+            boolean isGrowingToNorth = bounds.getY() < y;
+            Cell<T> newRoot = new Cell<T>(isGrowingToWest ? x - size : x, isGrowingToNorth ? y - size : y, size * 2);
+            newRoot.split();
+            int quadrant = (isGrowingToWest ? 1 : 0) + (isGrowingToNorth ? 2 : 0);
+            newRoot.children.set(quadrant, this.root);
+            this.root = newRoot;
+        }
+    }
+
+    /**
+     * An indexed object and the cell which holds it
+     */
+    private static class Entry<T>
+    {
+        Entry(T object, Rectangle2D bounds)
+        {
+            this.object = object;
+            this.bounds = bounds;
+        }
+
+        private T object;
+        private Rectangle2D bounds;
+        private Cell<T> cell;
+    }
+
+    /**
+     * A square cell of the tree. Children are ordered NW, NE, SW, SE.
+     */
+    private static class Cell<T>
+    {
+        Cell(double x, double y, double size)
+        {
+            this.x = x;
+            this.y = y;
+            this.size = size;
+        }
+
+        boolean covers(Rectangle2D r)
+        {
+            return r.getX() >= this.x && r.getY() >= this.y && r.getMaxX() <= this.x + this.size
+                    && r.getMaxY() <= this.y + this.size;
+        }
+
+        boolean intersects(Rectangle2D r)
+        {
+            return r.getMaxX() >= this.x && r.getMaxY() >= this.y && r.getX() <= this.x + this.size
+                    && r.getY() <= this.y + this.size;
+        }
+
+        boolean contains(double px, double py)
+        {
+            return px >= this.x && py >= this.y && px <= this.x + this.size && py <= this.y + this.size;
+        }
+
+        void split()
+        {
+            double half = this.size / 2;
+            this.children = new ArrayList<Cell<T>>(4);
+            this.children.add(new Cell<T>(this.x, this.y, half));
+            this.children.add(new Cell<T>(this.x + half, this.y, half));
+            this.children.add(new Cell<T>(this.x, this.y + half, half));
+            this.children.add(new Cell<T>(this.x + half, this.y + half, half));
+        }
+
+        void insert(Entry<T> entry, int depth)
+        {
+            if (this.children == null && (this.entries.size() < MAX_ENTRIES_PER_CELL || depth >= MAX_DEPTH))
+            {
+                add(entry);
+                return;
+            }
+            if (this.children == null)
+            {
+                split();
+                List<Entry<T>> entriesToDispatch = this.entries;
+                this.entries = new ArrayList<Entry<T>>();
+                for (Entry<T> anEntry : entriesToDispatch)
+                {
+                    dispatch(anEntry, depth);
+                }
+            }
+            dispatch(entry, depth);
+        }
+
+        private void dispatch(Entry<T> entry, int depth)
+        {
+            for (Cell<T> aChild : this.children)
+            {
+                if (aChild.covers(entry.bounds))
+                {
+                    aChild.insert(entry, depth + 1);
+                    return;
+                }
+            }
+            add(entry);
+        }
+
+        private void add(Entry<T> entry)
+        {
+            this.entries.add(entry);
+            entry.cell = this;
+        }
+
+        void query(double px, double py, List<T> result)
+        {
+            if (!contains(px, py))
+            {
+                return;
+            }
+            for (Entry<T> anEntry : this.entries)
+            {
+                Rectangle2D b = anEntry.bounds;
+                if (px >= b.getX() && py >= b.getY() && px <= b.getMaxX() && py <= b.getMaxY())
+                {
+                    result.add(anEntry.object);
+                }
+            }
+            if (this.children != null)
+            {
+                for (Cell<T> aChild : this.children)
+                {
+                    aChild.query(px, py, result);
+                }
+            }
+        }
+
+        void query(Rectangle2D r, List<T> result)
+        {
+            if (!intersects(r))
+            {
+                return;
+            }
+            for (Entry<T> anEntry : this.entries)
+            {
+                Rectangle2D b = anEntry.bounds;
+                if (b.getMaxX() >= r.getX() && b.getMaxY() >= r.getY() && b.getX() <= r.getMaxX() && b.getY() <= r.getMaxY())
+                {
+                    result.add(anEntry.object);
+                }
+            }
+            if (this.children != null)
+            {
+                for (Cell<T> aChild : this.children)
+                {
+                    aChild.query(r, result);
+                }
+            }
+        }
+
+        private double x;
+        private double y;
+        private double size;
+        private List<Entry<T>> entries = new ArrayList<Entry<T>>();
+        private List<Cell<T>> children;
+    }
+
+    /** Root cell (null while the tree is empty) */
+    private Cell<T> root;
+
+    /** Objects with NaN or infinite bounds */
+    private List<Entry<T>> unlocatedEntries = new ArrayList<Entry<T>>();
+
+    /** Indexed objects, compared by identity because nodes and edges don't define equals() */
+    private Map<T, Entry<T>> entries = new IdentityHashMap<T, Entry<T>>();
+
+    /** Smallest side of the root cell */
+    private static final double MIN_ROOT_SIZE = 1024;
+
+    /** Number of objects a leaf holds before being split */
+    private static final int MAX_ENTRIES_PER_CELL = 8;
+
+    /** Maximum cell depth, reached for 1024px roots by 1px cells */
+    private static final int MAX_DEPTH = 16;
+}
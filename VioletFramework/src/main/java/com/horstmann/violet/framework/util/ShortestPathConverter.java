@@ -7,43 +7,231 @@
 package com.horstmann.violet.framework.util;
 
 import java.awt.geom.GeneralPath;
+import java.awt.geom.Line2D;
 import java.awt.geom.PathIterator;
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Converts a path made of unordered points to a polyline : points are chained from the first one to their nearest neighbour, then
+ * points which don't change the polyline shape by more than a tolerance are removed (Ramer-Douglas-Peucker).<br/>
+ * <br/>
+ * Nearest neighbours are found with a spatial hash (a grid with about one point per cell), so ordering takes O(n) time for evenly
+ * spread points (worst case O(n^2) when nearly all points share a few cells). Simplification takes O(n log n) time on average and
+ * O(n^2) in the worst case.
+ */
 public class ShortestPathConverter
 {
 
+    /**
+     * Orders the points of a path and removes those which are aligned with their neighbours
+     * 
+     * @param path a path made of points (curves are ignored)
+     * @return a polyline starting at the first point of the given path
+     */
     public static GeneralPath getShortestPath(GeneralPath path)
     {
+        return getShortestPath(path, DEFAULT_TOLERANCE);
+    }
 
+    /**
+     * Orders the points of a path and simplifies it
+     * 
+     * @param path a path made of points (curves are ignored)
+     * @param tolerance maximum distance between a removed point and the simplified polyline
+     * @return a polyline starting at the first point of the given path
+     */
+    public static GeneralPath getShortestPath(GeneralPath path, double tolerance)
+    {
         List<Point2D> points = extractPointsFromGeneralPath(path);
-        List<Point2D> sortedPoints = new ArrayList<Point2D>();
+        List<Point2D> sortedPoints = orderByNearestNeighbour(points);
+        List<Point2D> simplifiedPoints = simplify(sortedPoints, tolerance);
+        GeneralPath newPath = buildPath(simplifiedPoints);
+        return newPath;
+    }
 
-        while (points.size() > 0)
+    /**
+     * Chains points : starting from the first one, the next point is always the nearest one not yet chained
+     * 
+     * @param points
+     * @return the same points, ordered
+     */
+    public static List<Point2D> orderByNearestNeighbour(List<Point2D> points)
+    {
+        int size = points.size();
+        List<Point2D> sortedPoints = new ArrayList<Point2D>(size);
+        if (size == 0)
         {
-            Point2D currentPoint = null;
-            if (sortedPoints.size() > 0)
+            return sortedPoints;
+        }
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (Point2D aPoint : points)
+        {
+            minX = Math.min(minX, aPoint.getX());
+            minY = Math.min(minY, aPoint.getY());
+            maxX = Math.max(maxX, aPoint.getX());
+            maxY = Math.max(maxY, aPoint.getY());
+        }
+        // About one point per cell
+        double cellSize = Math.sqrt(Math.max((maxX - minX) * (maxY - minY), 1) / size);
+        cellSize = Math.max(cellSize, Math.max(maxX - minX, maxY - minY) / MAX_CELLS_PER_SIDE);
+        cellSize = Math.max(cellSize, MIN_CELL_SIZE);
+        int columns = (int) ((maxX - minX) / cellSize) + 1;
+        int rows = (int) ((maxY - minY) / cellSize) + 1;
+        int[][] cells = new int[columns * rows][];
+        int[] cellSizes = new int[columns * rows];
+        int[] pointCells = new int[size];
+        for (int i = 0; i < size; i++)
+        {
+            Point2D aPoint = points.get(i);
+            int cell = (int) ((aPoint.getY() - minY) / cellSize) * columns + (int) ((aPoint.getX() - minX) / cellSize);
+            pointCells[i] = cell;
+            if (cells[cell] == null)
             {
-                currentPoint = sortedPoints.get(sortedPoints.size() - 1);
+                cells[cell] = new int[2];
             }
-            else
+            else if (cellSizes[cell] == cells[cell].length)
+            {
+                int[] newCell = new int[cellSizes[cell] * 2];
+                System.arraycopy(cells[cell], 0, newCell, 0, cellSizes[cell]);
+                cells[cell] = newCell;
+            }
+            cells[cell][cellSizes[cell]++] = i;
+        }
+
+        int current = 0;
+        for (int remaining = size; remaining > 0; remaining--)
+        {
+            Point2D currentPoint = points.get(current);
+            sortedPoints.add(currentPoint);
+            removeFromCell(cells, cellSizes, pointCells[current], current);
+            if (remaining == 1)
             {
-                currentPoint = points.get(0);
+                break;
             }
-            points.remove(currentPoint);
-            Point2D closestPoint = getClosestPoint(currentPoint, points);
-            if (closestPoint != null)
+            int column = pointCells[current] % columns;
+            int row = pointCells[current] / columns;
+            int closest = -1;
+            double shortestDistance = Double.POSITIVE_INFINITY;
+            // Rings of cells around the current one are visited until no closer point can be found
+            for (int radius = 0; radius < Math.max(columns, rows); radius++)
             {
-                sortedPoints.add(closestPoint);
-                currentPoint = closestPoint;
+                if (closest != -1 && (radius - 1) * cellSize > shortestDistance)
+                {
+                    break;
+                }
+                for (int r = row - radius; r <= row + radius; r++)
+                {
+                    if (r < 0 || r >= rows)
+                    {
+                        continue;
+                    }
+                    boolean isRingRow = (r == row - radius || r == row + radius);
+                    int step = isRingRow ? 1 : 2 * radius;
+                    for (int c = column - radius; c <= column + radius; c += Math.max(step, 1))
+                    {
+                        if (c < 0 || c >= columns)
+                        {
+                            continue;
+                        }
+                        int cell = r * columns + c;
+                        for (int k = 0; k < cellSizes[cell]; k++)
+                        {
+                            int candidate = cells[cell][k];
+                            double distance = currentPoint.distance(points.get(candidate));
+                            if (distance < shortestDistance || (distance == shortestDistance && candidate < closest))
+                            {
+                                closest = candidate;
+                                shortestDistance = distance;
+                            }
+                        }
+                    }
+                }
             }
+            current = closest;
         }
+        return sortedPoints;
+    }
 
-        GeneralPath newPath = buildPath(sortedPoints);
-        return newPath;
+    /**
+     * Removes the points of a polyline which are closer than the given tolerance to the simplified polyline (Ramer-Douglas-Peucker)
+     * 
+     * @param points
+     * @param tolerance
+     * @return the kept points (first and last points are always kept)
+     */
+    public static List<Point2D> simplify(List<Point2D> points, double tolerance)
+    {
+        int size = points.size();
+        if (size < 3)
+        {
+            return new ArrayList<Point2D>(points);
+        }
+        boolean[] isKept = new boolean[size];
+        isKept[0] = true;
+        isKept[size - 1] = true;
+        // Explicit stack of (first, last) ranges instead of recursion, as paths can have thousands of points
+        int[] stack = new int[2 * size];
+        int stackSize = 0;
+        stack[stackSize++] = 0;
+        stack[stackSize++] = size - 1;
+        while (stackSize > 0)
+        {
+            int last = stack[--stackSize];
+            int first = stack[--stackSize];
+            Point2D firstPoint = points.get(first);
+            Point2D lastPoint = points.get(last);
+            int farthest = -1;
+            double farthestDistance = tolerance;
+            for (int i = first + 1; i < last; i++)
+            {
+                double distance = getDistanceToSegment(points.get(i), firstPoint, lastPoint);
+                if (distance > farthestDistance)
+                {
+                    farthest = i;
+                    farthestDistance = distance;
+                }
+            }
+            if (farthest != -1)
+            {
+                isKept[farthest] = true;
+                stack[stackSize++] = first;
+                stack[stackSize++] = farthest;
+                stack[stackSize++] = farthest;
+                stack[stackSize++] = last;
+            }
+        }
+        List<Point2D> result = new ArrayList<Point2D>();
+        for (int i = 0; i < size; i++)
+        {
+            if (isKept[i])
+            {
+                result.add(points.get(i));
+            }
+        }
+        return result;
+    }
+
+    private static double getDistanceToSegment(Point2D p, Point2D segmentStart, Point2D segmentEnd)
+    {
+        return Line2D.ptSegDist(segmentStart.getX(), segmentStart.getY(), segmentEnd.getX(), segmentEnd.getY(), p.getX(), p.getY());
+    }
 
+    private static void removeFromCell(int[][] cells, int[] cellSizes, int cell, int point)
+    {
+        int[] content = cells[cell];
+        for (int k = 0; k < cellSizes[cell]; k++)
+        {
+            if (content[k] == point)
+            {
+                content[k] = content[--cellSizes[cell]];
+                return;
+            }
+        }
     }
 
     private static List<Point2D> extractPointsFromGeneralPath(GeneralPath path)
@@ -66,22 +254,6 @@ public class ShortestPathConverter
         return points;
     }
 
-    private static Point2D getClosestPoint(Point2D refPoint, List<Point2D> pointList)
-    {
-        Point2D closestPoint = null;
-        double shortestDistance = -1;
-        for (Point2D aPoint : pointList)
-        {
-            double distance = refPoint.distance(aPoint);
-            if (shortestDistance < 0 || distance < shortestDistance)
-            {
-                closestPoint = aPoint;
-                shortestDistance = distance;
-            }
-        }
-        return closestPoint;
-    }
-
     private static GeneralPath buildPath(List<Point2D> points)
     {
         GeneralPath newPath = null;
@@ -108,4 +280,13 @@ public class ShortestPathConverter
         return newPath;
     }
 
+    /** Default tolerance : half a pixel */
+    private static final double DEFAULT_TOLERANCE = 0.5;
+
+    /** Spatial hash cells are never smaller than this, to avoid huge grids when points are very close */
+    private static final double MIN_CELL_SIZE = 1e-6;
+
+    /** Limits the grid size when points are spread on a thin line */
+    private static final int MAX_CELLS_PER_SIDE = 1024;
+
 }
@@ -0,0 +1,530 @@
+/*
+ Violet - A program for editing UML diagrams.
+
+ Copyright (C) 2007 Cay S. Horstmann (http://horstmann.com)
+ Alexandre de Pellegrin (http://alexdp.free.fr);
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package com.horstmann.violet.framework.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class is an inputstream filter. It replaces all the key occurrences issued from the map by their value while data is read,
+ * so only a few kilobytes are held in memory whatever the stream length.<br/>
+ * <br/>
+ * All the keys are searched at once with an Aho-Corasick automaton (see Dictionary). When several keys match, the one which starts
+ * first wins and, among those starting at the same position, the longest one. Replaced values are not searched again.<br/>
+ * <br/>
+ * Keys and values are encoded in UTF-8 and searched byte per byte, which gives the same result as working on characters for any
+ * ASCII compatible stream as long as keys are ASCII (class names for example).
+ */
+public class StringFilterInputStream extends FilterInputStream
+{
+
+    /**
+     * Default constructor
+     *
+     * @param in inputstream to filter
+     * @param replaceMap pairs of key/value to filter
+     */
+    public StringFilterInputStream(InputStream in, Map<String, String> replaceMap)
+    {
+        this(in, new Dictionary(replaceMap));
+    }
+
+    /**
+     * Constructor to use when the same pairs of key/value filter many streams
+     *
+     * @param in inputstream to filter
+     * @param dictionary pairs of key/value to filter
+     */
+    public StringFilterInputStream(InputStream in, Dictionary dictionary)
+    {
+        super(in);
+        this.dictionary = dictionary;
+        this.state = dictionary.root;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        int numRead = read(this.singleByte, 0, 1);
+        if (numRead == -1)
+        {
+            return -1;
+        }
+        return this.singleByte[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if (len == 0)
+        {
+            return 0;
+        }
+        while (this.outputEnd == this.outputStart && !this.isFinished)
+        {
+            process();
+        }
+        int available = this.outputEnd - this.outputStart;
+        if (available == 0)
+        {
+            return -1;
+        }
+        int numRead = Math.min(len, available);
+        System.arraycopy(this.output, this.outputStart, b, off, numRead);
+        this.outputStart += numRead;
+        return numRead;
+    }
+
+    @Override
+    public long skip(long n) throws IOException
+    {
+        byte[] skipped = new byte[CHUNK_SIZE];
+        long remaining = n;
+        while (remaining > 0)
+        {
+            int numRead = read(skipped, 0, (int) Math.min(CHUNK_SIZE, remaining));
+            if (numRead == -1)
+            {
+                break;
+            }
+            remaining -= numRead;
+        }
+        return n - remaining;
+    }
+
+    @Override
+    public int available() throws IOException
+    {
+        return this.outputEnd - this.outputStart;
+    }
+
+    @Override
+    public boolean markSupported()
+    {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit)
+    {
+        // Not supported
+    }
+
+    @Override
+    public synchronized void reset() throws IOException
+    {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * Reads and filters the next chunk of the underlying stream
+     *
+     * @throws IOException
+     */
+    private void process() throws IOException
+    {
+        if (this.pendingStart > 0)
+        {
+            // Bytes which could still be replaced go back to the beginning of the buffer
+            int shift = this.pendingStart;
+            System.arraycopy(this.pending, shift, this.pending, 0, this.pendingEnd - shift);
+            this.pendingStart = 0;
+            this.pendingEnd -= shift;
+            this.scanned -= shift;
+            this.matchStart -= shift;
+        }
+        if (this.pending.length - this.pendingEnd < CHUNK_SIZE)
+        {
+            byte[] newPending = new byte[this.pendingEnd + CHUNK_SIZE];
+            System.arraycopy(this.pending, 0, newPending, 0, this.pendingEnd);
+            this.pending = newPending;
+        }
+        int numRead = this.in.read(this.pending, this.pendingEnd, CHUNK_SIZE);
+        if (numRead == -1)
+        {
+            finish();
+            return;
+        }
+        this.pendingEnd += numRead;
+        scan();
+    }
+
+    /**
+     * Feeds the automaton with the bytes read and not scanned yet. Bytes which can't be part of a key anymore are moved to the
+     * output.
+     */
+    private void scan()
+    {
+        while (this.scanned < this.pendingEnd)
+        {
+            this.state = this.dictionary.next(this.state, this.pending[this.scanned]);
+            this.scanned++;
+            if (this.state.value != null)
+            {
+                // Longest key ending here (thus the one starting first)
+                int start = this.scanned - this.state.keyLength;
+                if (this.matchValue == null || start < this.matchStart
+                        || (start == this.matchStart && this.state.keyLength > this.matchLength))
+                {
+                    this.matchStart = start;
+                    this.matchLength = this.state.keyLength;
+                    this.matchValue = this.state.value;
+                }
+            }
+            if (this.matchValue != null && this.scanned - this.state.depth > this.matchStart)
+            {
+                // No key starting before or with the match can be found anymore
+                replaceMatch();
+            }
+        }
+        // Bytes before the current state's prefix can't be part of a key (and the match, if any, starts after them)
+        int safeEnd = this.scanned - this.state.depth;
+        write(this.pending, this.pendingStart, safeEnd - this.pendingStart);
+        this.pendingStart = safeEnd;
+    }
+
+    /**
+     * Writes the bytes before the current match and its value, then starts scanning again right after the match
+     */
+    private void replaceMatch()
+    {
+        write(this.pending, this.pendingStart, this.matchStart - this.pendingStart);
+        write(this.matchValue, 0, this.matchValue.length);
+        this.pendingStart = this.matchStart + this.matchLength;
+        this.scanned = this.pendingStart;
+        this.state = this.dictionary.root;
+        this.matchValue = null;
+        this.matchStart = 0;
+        this.matchLength = 0;
+    }
+
+    /**
+     * Filters the remaining bytes once the underlying stream is exhausted
+     */
+    private void finish()
+    {
+        scan();
+        while (this.matchValue != null)
+        {
+            replaceMatch();
+            scan();
+        }
+        write(this.pending, this.pendingStart, this.pendingEnd - this.pendingStart);
+        this.pendingStart = this.pendingEnd;
+        this.isFinished = true;
+    }
+
+    /**
+     * Appends filtered bytes to the output
+     *
+     * @param b
+     * @param off
+     * @param len
+     */
+    private void write(byte[] b, int off, int len)
+    {
+        if (len <= 0)
+        {
+            return;
+        }
+        if (this.outputStart == this.outputEnd)
+        {
+            this.outputStart = 0;
+            this.outputEnd = 0;
+        }
+        if (this.output.length - this.outputEnd < len)
+        {
+            int available = this.outputEnd - this.outputStart;
+            byte[] newOutput = this.output;
+            if (this.output.length < available + len)
+            {
+                newOutput = new byte[Math.max(this.output.length * 2, available + len)];
+            }
+            System.arraycopy(this.output, this.outputStart, newOutput, 0, available);
+            this.output = newOutput;
+            this.outputStart = 0;
+            this.outputEnd = available;
+        }
+        System.arraycopy(b, off, this.output, this.outputEnd, len);
+        this.outputEnd += len;
+    }
+
+    /**
+     * Pairs of key/value compiled into an Aho-Corasick automaton. It is immutable, so it can be built once and shared by several
+     * streams and threads.
+     */
+    public static class Dictionary
+    {
+        /**
+         * Default constructor
+         *
+         * @param replaceMap key = searchedString / value = replaceString
+         */
+        public Dictionary(Map<String, String> replaceMap)
+        {
+            for (String aKey : replaceMap.keySet())
+            {
+                String aValue = replaceMap.get(aKey);
+                if (aKey != null && aKey.length() > 0 && aValue != null)
+                {
+                    add(toBytes(aKey), toBytes(aValue));
+                }
+            }
+            computeFailureLinks();
+        }
+
+        /**
+         * @param data
+         * @param length number of bytes to search in data
+         * @return true if one of the keys is found in the given bytes
+         */
+        public boolean isFoundIn(byte[] data, int length)
+        {
+            Node current = this.root;
+            for (int i = 0; i < length; i++)
+            {
+                current = next(current, data[i]);
+                if (current.value != null)
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return true if there's nothing to replace
+         */
+        public boolean isEmpty()
+        {
+            return this.root.labels.length == 0;
+        }
+
+        /**
+         * @param current current automaton state
+         * @param b next byte
+         * @return the state reached after this byte
+         */
+        Node next(Node current, byte b)
+        {
+            while (true)
+            {
+                Node child = current.getChild(b);
+                if (child != null)
+                {
+                    return child;
+                }
+                if (current == this.root)
+                {
+                    return current;
+                }
+                current = current.failure;
+            }
+        }
+
+        /**
+         * Adds a key to the trie
+         *
+         * @param key
+         * @param value
+         */
+        private void add(byte[] key, byte[] value)
+        {
+            Node current = this.root;
+            for (int i = 0; i < key.length; i++)
+            {
+                Node child = current.getChild(key[i]);
+                if (child == null)
+                {
+                    child = current.addChild(key[i]);
+                }
+                current = child;
+            }
+            current.keyLength = key.length;
+            current.value = value;
+        }
+
+        /**
+         * Links each state to the state of its longest proper suffix, breadth first, and propagates the values found through these
+         * links
+         */
+        private void computeFailureLinks()
+        {
+            this.root.failure = this.root;
+            List<Node> fifo = new ArrayList<Node>();
+            fifo.add(this.root);
+            for (int i = 0; i < fifo.size(); i++)
+            {
+                Node aNode = fifo.get(i);
+                for (int j = 0; j < aNode.labels.length; j++)
+                {
+                    Node aChild = aNode.children[j];
+                    if (aNode == this.root)
+                    {
+                        aChild.failure = this.root;
+                    }
+                    else
+                    {
+                        aChild.failure = next(aNode.failure, aNode.labels[j]);
+                    }
+                    if (aChild.value == null)
+                    {
+                        aChild.keyLength = aChild.failure.keyLength;
+                        aChild.value = aChild.failure.value;
+                    }
+                    fifo.add(aChild);
+                }
+            }
+        }
+
+        /**
+         * @param s
+         * @return s encoded in UTF-8
+         */
+        private static byte[] toBytes(String s)
+        {
+            try
+            {
+                return s.getBytes("UTF-8");
+            }
+            catch (UnsupportedEncodingException e)
+            {
+                throw new RuntimeException(e);
+            }
+        }
+
+        final Node root = new Node(0);
+    }
+
+    /**
+     * Automaton state : a prefix of one or more keys
+     */
+    static class Node
+    {
+        Node(int depth)
+        {
+            this.depth = depth;
+        }
+
+        Node getChild(byte b)
+        {
+            int low = 0;
+            int high = this.labels.length - 1;
+            while (low <= high)
+            {
+                int middle = (low + high) >>> 1;
+                if (this.labels[middle] < b)
+                {
+                    low = middle + 1;
+                }
+                else if (this.labels[middle] > b)
+                {
+                    high = middle - 1;
+                }
+                else
+                {
+                    return this.children[middle];
+                }
+            }
+            return null;
+        }
+
+        Node addChild(byte b)
+        {
+            int index = 0;
+            while (index < this.labels.length && this.labels[index] < b)
+            {
+                index++;
+            }
+            byte[] newLabels = new byte[this.labels.length + 1];
+            Node[] newChildren = new Node[this.children.length + 1];
+            System.arraycopy(this.labels, 0, newLabels, 0, index);
+            System.arraycopy(this.children, 0, newChildren, 0, index);
+            System.arraycopy(this.labels, index, newLabels, index + 1, this.labels.length - index);
+            System.arraycopy(this.children, index, newChildren, index + 1, this.children.length - index);
+            Node child = new Node(this.depth + 1);
+            newLabels[index] = b;
+            newChildren[index] = child;
+            this.labels = newLabels;
+            this.children = newChildren;
+            return child;
+        }
+
+        /** Prefix length */
+        final int depth;
+
+        /** Sorted transition bytes */
+        byte[] labels = new byte[0];
+
+        Node[] children = new Node[0];
+
+        /** State of the longest proper suffix which is also a prefix */
+        Node failure;
+
+        /** Length of the longest key ending at this state, if value isn't null */
+        int keyLength;
+
+        /** Value of the longest key ending at this state, or null */
+        byte[] value;
+    }
+
+    private Dictionary dictionary;
+
+    private Node state;
+
+    /** Bytes read from the underlying stream */
+    private byte[] pending = new byte[CHUNK_SIZE];
+
+    /** Start of the bytes which could still be replaced */
+    private int pendingStart = 0;
+
+    /** Start of the bytes not fed to the automaton yet */
+    private int scanned = 0;
+
+    private int pendingEnd = 0;
+
+    /** Earliest key found which could still be followed by a longer one (null value if none) */
+    private int matchStart = 0;
+
+    private int matchLength = 0;
+
+    private byte[] matchValue;
+
+    /** Filtered bytes not read yet */
+    private byte[] output = new byte[CHUNK_SIZE];
+
+    private int outputStart = 0;
+
+    private int outputEnd = 0;
+
+    private boolean isFinished = false;
+
+    private byte[] singleByte = new byte[1];
+
+    private static final int CHUNK_SIZE = 8192;
+
+}
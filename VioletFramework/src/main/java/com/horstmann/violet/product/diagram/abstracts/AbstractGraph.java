@@ -28,8 +28,13 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import com.horstmann.violet.framework.util.PaintStatistics;
 import com.horstmann.violet.product.diagram.abstracts.edge.IEdge;
 import com.horstmann.violet.product.diagram.abstracts.node.INode;
 import com.horstmann.violet.product.diagram.abstracts.node.RectangularNode;
@@ -53,6 +58,30 @@ public abstract class AbstractGraph implements Serializable, Cloneable, IGraph
 
     @Override
     public INode findNode(Point2D p)
+    {
+        PaintStatistics statistics = PaintStatistics.getInstance();
+        long startTime = statistics.start();
+        INode result;
+        if (!isSpatialIndexEnabled())
+        {
+            result = findNodeWithoutIndex(p);
+        }
+        else
+        {
+            result = getSpatialIndex().findNode(p);
+        }
+        statistics.stop("IGraph.findNode (hit test)", startTime);
+        return result;
+    }
+
+    /**
+     * Finds a node containing the given point by scanning all the nodes. This is the lookup used when the spatial index is
+     * disabled.
+     * 
+     * @param p a point
+     * @return a node containing p or null if no nodes contain p
+     */
+    protected INode findNodeWithoutIndex(Point2D p)
     {
         for (INode n : getAllNodes())
         {
@@ -71,15 +100,35 @@ public abstract class AbstractGraph implements Serializable, Cloneable, IGraph
     @Override
     public INode findNode(Id id)
     {
-        for (INode n : getAllNodes())
-        {
-            if (n.getId().equals(id)) return n;
-        }
-        return null;
+        return getIdIndex().findNode(id);
     }
 
     @Override
     public IEdge findEdge(Point2D p)
+    {
+        PaintStatistics statistics = PaintStatistics.getInstance();
+        long startTime = statistics.start();
+        IEdge result;
+        if (!isSpatialIndexEnabled())
+        {
+            result = findEdgeWithoutIndex(p);
+        }
+        else
+        {
+            result = getSpatialIndex().findEdge(p);
+        }
+        statistics.stop("IGraph.findEdge (hit test)", startTime);
+        return result;
+    }
+
+    /**
+     * Finds an edge containing the given point by scanning all the edges. This is the lookup used when the spatial index is
+     * disabled.
+     * 
+     * @param p a point
+     * @return an edge containing p or null if no edges contain p
+     */
+    protected IEdge findEdgeWithoutIndex(Point2D p)
     {
         for (IEdge e : edges)
         {
@@ -91,90 +140,443 @@ public abstract class AbstractGraph implements Serializable, Cloneable, IGraph
     @Override
     public IEdge findEdge(Id id)
     {
-        for (IEdge e : edges)
+        return getIdIndex().findEdge(id);
+    }
+
+    @Override
+    public Collection<INode> findNodes(Rectangle2D r)
+    {
+        if (!isSpatialIndexEnabled())
         {
-            if (e.getId().equals(id)) return e;
+            List<INode> result = new ArrayList<INode>();
+            for (INode n : getAllNodes())
+            {
+                if (GraphSpatialIndex.getBoundsOnGraph(n).intersects(r)) result.add(n);
+            }
+            return result;
         }
-        return null;
+        return getSpatialIndex().findNodes(r);
     }
 
     @Override
-    public void draw(Graphics2D g2)
+    public Collection<IEdge> findEdges(Rectangle2D r)
     {
-        List<INode> specialNodes = new ArrayList<INode>();
-
-        int count = 0;
-        int z = 0;
-        Collection<INode> nodes = getAllNodes();
-        while (count < nodes.size())
+        if (!isSpatialIndexEnabled())
         {
-            for (INode n : nodes)
+            List<IEdge> result = new ArrayList<IEdge>();
+            for (IEdge e : edges)
             {
+                if (e.getBounds().intersects(r)) result.add(e);
+            }
+            return result;
+        }
+        return getSpatialIndex().findEdges(r);
+    }
+
+    /**
+     * Tells if nodes and edges are searched by location through a spatial index. Subclasses with node or edge lookup rules which
+     * don't rely on bounds can return false to scan all the elements instead.
+     * 
+     * @return true if the graph geometry is local (the index is only refreshed around moved nodes)
+     */
+    protected boolean isSpatialIndexEnabled()
+    {
+        return isGeometryLocal();
+    }
 
-                if (n.getZ() == z)
+    @Override
+    public boolean isGeometryLocal()
+    {
+        // Bent styles are edited as properties, which changes the revision
+        if (this.nonLocalEdgesRevision != this.revision)
+        {
+            this.hasNonLocalEdges = false;
+            for (IEdge anEdge : this.edges)
+            {
+                if (!anEdge.isGeometryLocal())
                 {
-                    if (n instanceof NoteNode)
-                    {
-                        specialNodes.add(n);
-                    }
-                    else
-                    {
-                        n.draw(g2);
-                    }
-                    count++;
+                    this.hasNonLocalEdges = true;
+                    break;
                 }
             }
-            z++;
+            this.nonLocalEdgesRevision = this.revision;
+        }
+        return !this.hasNonLocalEdges;
+    }
+
+    /**
+     * @return the spatial index (lazily created because it isn't serialized)
+     */
+    private GraphSpatialIndex getSpatialIndex()
+    {
+        if (this.spatialIndex == null)
+        {
+            this.spatialIndex = new GraphSpatialIndex(this);
+        }
+        return this.spatialIndex;
+    }
+
+    /**
+     * @return the clip bounds tracker (lazily created because it isn't serialized)
+     */
+    private GraphBoundsTracker getBoundsTracker()
+    {
+        if (this.boundsTracker == null)
+        {
+            this.boundsTracker = new GraphBoundsTracker(this);
+        }
+        return this.boundsTracker;
+    }
+
+    /**
+     * @return the id index (lazily created because it isn't serialized)
+     */
+    private GraphIdIndex getIdIndex()
+    {
+        if (this.idIndex == null)
+        {
+            this.idIndex = new GraphIdIndex(this);
+        }
+        return this.idIndex;
+    }
+
+    /**
+     * @return the adjacency index (lazily created because it isn't serialized)
+     */
+    private GraphAdjacencyIndex getAdjacencyIndex()
+    {
+        if (this.adjacencyIndex == null)
+        {
+            this.adjacencyIndex = new GraphAdjacencyIndex(this);
+        }
+        return this.adjacencyIndex;
+    }
+
+    @Override
+    public long getRevision()
+    {
+        return this.revision;
+    }
+
+    /**
+     * Notifies this graph that a node has been moved. Called by nodes when their location changes.
+     * 
+     * @param node the moved node
+     */
+    public void notifyNodeMoved(INode node)
+    {
+        this.revision++;
+        getSpatialIndex().nodeMoved(node);
+        getBoundsTracker().nodeChanged(node);
+    }
+
+    /**
+     * Notifies this graph that a node (with its children) has been added somewhere in its node tree. Called by nodes when a child is
+     * added.
+     * 
+     * @param node the added node
+     */
+    public void notifyNodeAdded(INode node)
+    {
+        this.revision++;
+        invalidateAllNodes();
+        getSpatialIndex().invalidate();
+        getIdIndex().nodeAdded(node);
+        getBoundsTracker().nodeChanged(node);
+    }
+
+    /**
+     * Notifies this graph that a node (with its children) has been removed from its node tree. Called by nodes when a child is
+     * removed.
+     * 
+     * @param node the removed node
+     */
+    public void notifyNodeRemoved(INode node)
+    {
+        this.revision++;
+        invalidateAllNodes();
+        getSpatialIndex().invalidate();
+        getIdIndex().nodeRemoved(node);
+        getBoundsTracker().nodeRemoved(node);
+    }
+
+    /**
+     * Notifies this graph that nodes or edges have been added, removed or re-identified without going through its methods.
+     */
+    public void notifyStructureChanged()
+    {
+        this.revision++;
+        invalidateAllNodes();
+        getSpatialIndex().invalidate();
+        getIdIndex().invalidate();
+        getAdjacencyIndex().invalidate();
+        getBoundsTracker().invalidate();
+    }
+
+    /**
+     * Notifies this graph that the size or the shape of some of its elements may have changed (for example, after a property
+     * change).
+     */
+    public void notifyGeometryChanged()
+    {
+        this.revision++;
+        getSpatialIndex().invalidate();
+        getBoundsTracker().invalidate();
+    }
+
+    @Override
+    public void draw(Graphics2D g2)
+    {
+        long startTime = PaintStatistics.getInstance().start();
+        LevelOfDetail levelOfDetail = LevelOfDetail.get(g2);
+        for (INode n : getNodesInDrawOrder())
+        {
+            drawNode(g2, n, levelOfDetail);
         }
 
         for (int i = 0; i < edges.size(); i++)
         {
             IEdge e = (IEdge) edges.get(i);
-            e.draw(g2);
+            drawEdge(g2, e);
         }
         // Special nodes are always drawn upon other elements
+        for (INode n : getSpecialNodesInDrawOrder())
+        {
+            drawSpecialNode(g2, n, levelOfDetail);
+        }
+        PaintStatistics.getInstance().stop("IGraph.draw", startTime);
+    }
+
+    @Override
+    public void draw(Graphics2D g2, Rectangle2D clip)
+    {
+        if (clip == null)
+        {
+            draw(g2);
+            return;
+        }
+        long startTime = PaintStatistics.getInstance().start();
+        // Shadows, arrow heads and strokes can be painted slightly outside of element bounds
+        Rectangle2D visibleArea = new Rectangle2D.Double(clip.getX() - CLIP_MARGIN, clip.getY() - CLIP_MARGIN, clip.getWidth() + 2
+                * CLIP_MARGIN, clip.getHeight() + 2 * CLIP_MARGIN);
+        List<INode> visibleNodes = new ArrayList<INode>(findNodes(visibleArea));
+        final Map<INode, Integer> drawRanks = getDrawRanks();
+        Collections.sort(visibleNodes, new Comparator<INode>()
+        {
+            public int compare(INode n1, INode n2)
+            {
+                return drawRanks.get(n1).compareTo(drawRanks.get(n2));
+            }
+        });
+        LevelOfDetail levelOfDetail = LevelOfDetail.get(g2);
+        List<INode> specialNodes = new ArrayList<INode>();
+        for (INode n : visibleNodes)
+        {
+            if (n instanceof NoteNode)
+            {
+                specialNodes.add(n);
+            }
+            else
+            {
+                drawNode(g2, n, levelOfDetail);
+            }
+        }
+        for (IEdge e : findEdges(visibleArea))
+        {
+            drawEdge(g2, e);
+        }
         for (INode n : specialNodes)
         {
-            // Translate g2 if node has parent
-            INode p = n.getParent();
-            Point2D nodeLocationOnGraph = n.getLocationOnGraph();
-            Point2D nodeLocation = n.getLocation();
-            Point2D g2Location = new Point2D.Double(nodeLocationOnGraph.getX() - nodeLocation.getX(), nodeLocationOnGraph.getY()
-                    - nodeLocation.getY());
-            g2.translate(g2Location.getX(), g2Location.getY());
+            drawSpecialNode(g2, n, levelOfDetail);
+        }
+        PaintStatistics.getInstance().stop("IGraph.draw", startTime);
+    }
+
+    /**
+     * Draws a node or only its outline if the diagram is zoomed out too much
+     * 
+     * @param g2 the graphics context
+     * @param n the node to draw
+     * @param levelOfDetail
+     */
+    private void drawNode(Graphics2D g2, INode n, LevelOfDetail levelOfDetail)
+    {
+        long startTime = PaintStatistics.getInstance().start();
+        if (levelOfDetail.isOutlineOnly())
+        {
+            n.drawOutline(g2);
+        }
+        else
+        {
             n.draw(g2);
-            // Restore g2 original location
-            g2.translate(-g2Location.getX(), -g2Location.getY());
         }
+        PaintStatistics.getInstance().stop("draw", n.getClass(), startTime);
+    }
 
+    /**
+     * Draws an edge
+     * 
+     * @param g2 the graphics context
+     * @param e the edge to draw
+     */
+    private void drawEdge(Graphics2D g2, IEdge e)
+    {
+        long startTime = PaintStatistics.getInstance().start();
+        e.draw(g2);
+        PaintStatistics.getInstance().stop("draw", e.getClass(), startTime);
     }
 
-    /*
-     * (non-Javadoc)
+    /**
+     * Draws a special node upon the other elements, translating g2 if the node has a parent
      * 
-     * @see com.horstmann.violet.product.diagram.abstracts.IGraph#getBounds()
+     * @param g2 the graphics context
+     * @param n the node to draw
+     * @param levelOfDetail
      */
-    public Rectangle2D getClipBounds()
+    private void drawSpecialNode(Graphics2D g2, INode n, LevelOfDetail levelOfDetail)
     {
-        Rectangle2D r = minBounds;
-        for (INode n : nodes)
+        long startTime = PaintStatistics.getInstance().start();
+        if (levelOfDetail.isOutlineOnly())
         {
-            Rectangle2D b = n.getBounds();
-            if (r == null) r = b;
-            else r.add(b);
+            n.drawOutline(g2);
+            PaintStatistics.getInstance().stop("draw", n.getClass(), startTime);
+            return;
         }
-        for (IEdge e : edges)
+        Point2D nodeLocationOnGraph = n.getLocationOnGraph();
+        Point2D nodeLocation = n.getLocation();
+        Point2D g2Location = new Point2D.Double(nodeLocationOnGraph.getX() - nodeLocation.getX(), nodeLocationOnGraph.getY()
+                - nodeLocation.getY());
+        g2.translate(g2Location.getX(), g2Location.getY());
+        n.draw(g2);
+        // Restore g2 original location
+        g2.translate(-g2Location.getX(), -g2Location.getY());
+        PaintStatistics.getInstance().stop("draw", n.getClass(), startTime);
+    }
+
+    /**
+     * @return position of each node in the draw order (special nodes come after regular ones)
+     */
+    private Map<INode, Integer> getDrawRanks()
+    {
+        if (this.drawRanks == null)
+        {
+            Map<INode, Integer> ranks = new IdentityHashMap<INode, Integer>();
+            int rank = 0;
+            for (INode n : getNodesInDrawOrder())
+            {
+                ranks.put(n, Integer.valueOf(rank++));
+            }
+            for (INode n : getSpecialNodesInDrawOrder())
+            {
+                ranks.put(n, Integer.valueOf(rank++));
+            }
+            this.drawRanks = ranks;
+        }
+        return this.drawRanks;
+    }
+
+    /**
+     * @return regular nodes sorted by Z level (nodes with the same level keep the getAllNodes() order)
+     */
+    protected List<INode> getNodesInDrawOrder()
+    {
+        if (this.nodesInDrawOrder == null)
+        {
+            sortNodesInDrawOrder();
+        }
+        return this.nodesInDrawOrder;
+    }
+
+    /**
+     * @return special nodes (i.e. notes), which are drawn upon edges and other nodes, sorted by Z level
+     */
+    protected List<INode> getSpecialNodesInDrawOrder()
+    {
+        if (this.specialNodesInDrawOrder == null)
+        {
+            sortNodesInDrawOrder();
+        }
+        return this.specialNodesInDrawOrder;
+    }
+
+    /**
+     * Dispatches nodes between regular and special ones and sorts them by Z level. This is only done when nodes are added, removed
+     * or change their Z level.
+     */
+    private void sortNodesInDrawOrder()
+    {
+        List<INode> regularNodes = new ArrayList<INode>();
+        List<INode> specialNodes = new ArrayList<INode>();
+        for (INode n : getAllNodes())
         {
-            r.add(e.getBounds());
+            if (n instanceof NoteNode)
+            {
+                specialNodes.add(n);
+            }
+            else
+            {
+                regularNodes.add(n);
+            }
         }
-        return r == null ? new Rectangle2D.Double() : new Rectangle2D.Double(r.getX(), r.getY(), r.getWidth()
-                + RectangularNode.SHADOW_GAP, r.getHeight() + RectangularNode.SHADOW_GAP);
+        // Collections.sort() is stable so nodes with the same Z level keep their order
+        Comparator<INode> zComparator = new Comparator<INode>()
+        {
+            public int compare(INode n1, INode n2)
+            {
+                int z1 = n1.getZ();
+                int z2 = n2.getZ();
+                return (z1 < z2 ? -1 : (z1 == z2 ? 0 : 1));
+            }
+        };
+        Collections.sort(regularNodes, zComparator);
+        Collections.sort(specialNodes, zComparator);
+        this.nodesInDrawOrder = Collections.unmodifiableList(regularNodes);
+        this.specialNodesInDrawOrder = Collections.unmodifiableList(specialNodes);
+    }
+
+    /**
+     * Notifies this graph that the Z level of one of its nodes has changed. Called by nodes when their Z level changes.
+     */
+    public void notifyDrawOrderChanged()
+    {
+        this.revision++;
+        this.nodesInDrawOrder = null;
+        this.specialNodesInDrawOrder = null;
+        this.drawRanks = null;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.horstmann.violet.product.diagram.abstracts.IGraph#getBounds()
+     */
+    public Rectangle2D getClipBounds()
+    {
+        return getBoundsTracker().getClipBounds();
     }
 
     @Override
     public void setBounds(Rectangle2D newValue)
     {
         minBounds = newValue;
+        this.revision++;
+        getBoundsTracker().invalidate();
+    }
+
+    /**
+     * @return the minimum bounds set with setBounds() (or null)
+     */
+    Rectangle2D getMinBounds()
+    {
+        return this.minBounds;
+    }
+
+    /**
+     * @return nodes directly attached to the graph
+     */
+    List<INode> getRootNodes()
+    {
+        return Collections.unmodifiableList(this.nodes);
     }
 
     @Override
@@ -186,20 +588,44 @@ public abstract class AbstractGraph implements Serializable, Cloneable, IGraph
     @Override
     public Collection<INode> getAllNodes()
     {
-        List<INode> fifo = new ArrayList<INode>();
-        List<INode> allNodes = new ArrayList<INode>();
-        fifo.addAll(nodes);
-        allNodes.addAll(nodes);
-        while (!fifo.isEmpty())
+        if (this.allNodes == null)
+        {
+            List<INode> flattenedNodes = new ArrayList<INode>(this.nodes);
+            for (int i = 0; i < flattenedNodes.size(); i++)
+            {
+                INode nodeToInspect = flattenedNodes.get(i);
+                flattenedNodes.addAll(nodeToInspect.getChildren());
+            }
+            // Let's have children first
+            Collections.reverse(flattenedNodes);
+            this.allNodes = Collections.unmodifiableList(flattenedNodes);
+        }
+        return this.allNodes;
+    }
+
+    /**
+     * @param node
+     * @return true if the given node belongs to this graph (directly or as a child of another node)
+     */
+    protected boolean containsNode(INode node)
+    {
+        if (this.allNodesSet == null)
         {
-            INode nodeToInspect = fifo.remove(0);
-            List<INode> children = nodeToInspect.getChildren();
-            fifo.addAll(children);
-            allNodes.addAll(children);
+            Set<INode> nodeSet = Collections.newSetFromMap(new IdentityHashMap<INode, Boolean>());
+            nodeSet.addAll(getAllNodes());
+            this.allNodesSet = nodeSet;
         }
-        // Let's have children first
-        Collections.reverse(allNodes);
-        return Collections.unmodifiableCollection(allNodes);
+        return this.allNodesSet.contains(node);
+    }
+
+    /**
+     * Drops the flattened node views. They are recomputed on next call (and never modified once returned).
+     */
+    private void invalidateAllNodes()
+    {
+        this.allNodes = null;
+        this.allNodesSet = null;
+        notifyDrawOrderChanged();
     }
 
     @Override
@@ -208,6 +634,24 @@ public abstract class AbstractGraph implements Serializable, Cloneable, IGraph
         return Collections.unmodifiableCollection(edges);
     }
 
+    @Override
+    public List<IEdge> getIncomingEdges(INode node)
+    {
+        return getAdjacencyIndex().getIncomingEdges(node);
+    }
+
+    @Override
+    public List<IEdge> getOutgoingEdges(INode node)
+    {
+        return getAdjacencyIndex().getOutgoingEdges(node);
+    }
+
+    @Override
+    public List<IEdge> getConnectedEdges(INode node)
+    {
+        return getAdjacencyIndex().getConnectedEdges(node);
+    }
+
     @Override
     public boolean addNode(INode newNode, Point2D p)
     {
@@ -218,6 +662,7 @@ public abstract class AbstractGraph implements Serializable, Cloneable, IGraph
         {
             newNode.setLocation(p);
             nodes.add(newNode);
+            notifyNodeAdded(newNode);
             return true;
         }
         // Case 2 : attached to an existing node
@@ -227,12 +672,18 @@ public abstract class AbstractGraph implements Serializable, Cloneable, IGraph
             Point2D parentLocationOnGraph = potentialParentNode.getLocationOnGraph();
             Point2D relativeLocation = new Point2D.Double(p.getX() - parentLocationOnGraph.getX(), p.getY()
                     - parentLocationOnGraph.getY());
-            return potentialParentNode.addChild(newNode, relativeLocation);
+            boolean isAdded = potentialParentNode.addChild(newNode, relativeLocation);
+            if (isAdded)
+            {
+                notifyNodeAdded(newNode);
+            }
+            return isAdded;
         }
         // Case 3 : attached directly to the graph
         newNode.setLocation(p);
         newNode.setParent(null);
         nodes.add(newNode);
+        notifyNodeAdded(newNode);
         return true;
     }
 
@@ -245,6 +696,7 @@ public abstract class AbstractGraph implements Serializable, Cloneable, IGraph
             if (this.nodes.contains(aNodeToRemove))
             {
                 this.nodes.remove(aNodeToRemove);
+                notifyNodeRemoved(aNodeToRemove);
             }
         }
         // Step 1b : Remove nodes attach to other nodes as children
@@ -261,12 +713,11 @@ public abstract class AbstractGraph implements Serializable, Cloneable, IGraph
         }
         // Step 2 : Disconnect edges
         List<IEdge> edgesToRemove = new ArrayList<IEdge>();
-        Collection<INode> allNodes = getAllNodes();
         for (IEdge anEdge : this.edges)
         {
             INode startingNode = anEdge.getStart();
             INode endingNode = anEdge.getEnd();
-            boolean isEdgeStillConnected = (allNodes.contains(startingNode) && allNodes.contains(endingNode));
+            boolean isEdgeStillConnected = (containsNode(startingNode) && containsNode(endingNode));
             if (!isEdgeStillConnected)
             {
                 edgesToRemove.add(anEdge);
@@ -280,11 +731,12 @@ public abstract class AbstractGraph implements Serializable, Cloneable, IGraph
     public boolean connect(IEdge e, INode start, Point2D startLocation, INode end, Point2D endLocation, Point2D[] transitionPoints)
     {
         // Step 1 : find if nodes exist
-        Collection<INode> allNodes = getAllNodes();
-        if (start != null && !allNodes.contains(start)) {
+        boolean isStartInGraph = (start == null || containsNode(start));
+        boolean isEndInGraph = (end == null || containsNode(end));
+        if (!isStartInGraph) {
         	addNode(start, start.getLocation());
         }
-        if (end != null && !allNodes.contains(end)) {
+        if (!isEndInGraph) {
         	addNode(end, end.getLocation());
         }
         e.setStart(start);
@@ -296,6 +748,11 @@ public abstract class AbstractGraph implements Serializable, Cloneable, IGraph
         {
             e.setId(new Id());
         	edges.add(e);
+            getSpatialIndex().invalidate();
+            getIdIndex().edgeAdded(e);
+            getAdjacencyIndex().edgeAdded(e);
+            getBoundsTracker().edgeAdded(e);
+            this.revision++;
             return true;
         }
         return false;
@@ -311,7 +768,12 @@ public abstract class AbstractGraph implements Serializable, Cloneable, IGraph
             startingNode.removeConnection(anEdgeToRemove);
             endingNode.removeConnection(anEdgeToRemove);
             this.edges.remove(anEdgeToRemove);
+            getIdIndex().edgeRemoved(anEdgeToRemove);
+            getAdjacencyIndex().edgeRemoved(anEdgeToRemove);
+            getBoundsTracker().edgeRemoved(anEdgeToRemove);
         }
+        getSpatialIndex().invalidate();
+        this.revision++;
     }
 
     @Override
@@ -327,4 +789,19 @@ public abstract class AbstractGraph implements Serializable, Cloneable, IGraph
     private ArrayList<IEdge> edges;
     private transient Rectangle2D minBounds;
     private transient IGrid grid;
+    private transient GraphSpatialIndex spatialIndex;
+    private transient GraphBoundsTracker boundsTracker;
+    private transient GraphIdIndex idIndex;
+    private transient GraphAdjacencyIndex adjacencyIndex;
+    private transient List<INode> allNodes;
+    private transient Set<INode> allNodesSet;
+    private transient List<INode> nodesInDrawOrder;
+    private transient List<INode> specialNodesInDrawOrder;
+    private transient Map<INode, Integer> drawRanks;
+    private transient long revision;
+    private transient boolean hasNonLocalEdges;
+    private transient long nonLocalEdgesRevision = -1;
+
+    /** Margin added around the clip area when looking for visible elements */
+    private static final double CLIP_MARGIN = 10;
 }
@@ -0,0 +1,211 @@
+/*
+ Violet - A program for editing UML diagrams.
+
+ Copyright (C) 2007 Cay S. Horstmann (http://horstmann.com)
+ Alexandre de Pellegrin (http://alexdp.free.fr);
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package com.horstmann.violet.product.diagram.abstracts;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.horstmann.violet.product.diagram.abstracts.edge.IEdge;
+import com.horstmann.violet.product.diagram.abstracts.node.INode;
+
+/**
+ * Index used by AbstractGraph to get the edges connected to a node without scanning all the edges of the graph.<br/>
+ * <br/>
+ * Edges are listed per node in the same order as in the graph. The index is kept up to date when edges are connected or removed
+ * and lazily built from the graph when it has been invalidated (for example, after deserialization as this index isn't persisted).
+ */
+class GraphAdjacencyIndex
+{
+
+    /**
+     * Default constructor
+     * 
+     * @param graph the indexed graph
+     */
+    GraphAdjacencyIndex(AbstractGraph graph)
+    {
+        this.graph = graph;
+    }
+
+    /**
+     * Forces the index to be rebuilt on next lookup
+     */
+    void invalidate()
+    {
+        this.isValid = false;
+    }
+
+    /**
+     * Indexes an edge on its starting and ending nodes
+     * 
+     * @param edge
+     */
+    void edgeAdded(IEdge edge)
+    {
+        if (this.isValid)
+        {
+            add(edge);
+        }
+    }
+
+    /**
+     * Removes an edge from its starting and ending nodes
+     * 
+     * @param edge
+     */
+    void edgeRemoved(IEdge edge)
+    {
+        if (!this.isValid)
+        {
+            return;
+        }
+        remove(edge.getStart(), edge);
+        remove(edge.getEnd(), edge);
+    }
+
+    /**
+     * @param node
+     * @return edges ending on the given node
+     */
+    List<IEdge> getIncomingEdges(INode node)
+    {
+        NodeEdges nodeEdges = getNodeEdges(node);
+        return nodeEdges == null ? EMPTY_LIST : Collections.unmodifiableList(nodeEdges.incomingEdges);
+    }
+
+    /**
+     * @param node
+     * @return edges starting from the given node
+     */
+    List<IEdge> getOutgoingEdges(INode node)
+    {
+        NodeEdges nodeEdges = getNodeEdges(node);
+        return nodeEdges == null ? EMPTY_LIST : Collections.unmodifiableList(nodeEdges.outgoingEdges);
+    }
+
+    /**
+     * @param node
+     * @return edges starting from or ending on the given node (only once for edges connected twice to it)
+     */
+    List<IEdge> getConnectedEdges(INode node)
+    {
+        NodeEdges nodeEdges = getNodeEdges(node);
+        return nodeEdges == null ? EMPTY_LIST : Collections.unmodifiableList(nodeEdges.connectedEdges);
+    }
+
+    /**
+     * @param node
+     * @return edges connected to this node or null if there's no one
+     */
+    private NodeEdges getNodeEdges(INode node)
+    {
+        if (!this.isValid)
+        {
+            rebuild();
+        }
+        return this.edgesByNode.get(node);
+    }
+
+    /**
+     * Rebuilds the whole index from the graph
+     */
+    private void rebuild()
+    {
+        this.isValid = true;
+        this.edgesByNode.clear();
+        for (IEdge anEdge : this.graph.getAllEdges())
+        {
+            add(anEdge);
+        }
+    }
+
+    private void add(IEdge edge)
+    {
+        INode startingNode = edge.getStart();
+        INode endingNode = edge.getEnd();
+        if (startingNode != null)
+        {
+            NodeEdges nodeEdges = getOrCreateNodeEdges(startingNode);
+            nodeEdges.outgoingEdges.add(edge);
+            nodeEdges.connectedEdges.add(edge);
+        }
+        if (endingNode != null)
+        {
+            NodeEdges nodeEdges = getOrCreateNodeEdges(endingNode);
+            nodeEdges.incomingEdges.add(edge);
+            if (endingNode != startingNode)
+            {
+                nodeEdges.connectedEdges.add(edge);
+            }
+        }
+    }
+
+    private void remove(INode node, IEdge edge)
+    {
+        NodeEdges nodeEdges = this.edgesByNode.get(node);
+        if (nodeEdges == null)
+        {
+            return;
+        }
+        nodeEdges.incomingEdges.remove(edge);
+        nodeEdges.outgoingEdges.remove(edge);
+        nodeEdges.connectedEdges.remove(edge);
+        if (nodeEdges.connectedEdges.isEmpty())
+        {
+            this.edgesByNode.remove(node);
+        }
+    }
+
+    private NodeEdges getOrCreateNodeEdges(INode node)
+    {
+        NodeEdges nodeEdges = this.edgesByNode.get(node);
+        if (nodeEdges == null)
+        {
+            nodeEdges = new NodeEdges();
+            this.edgesByNode.put(node, nodeEdges);
+        }
+        return nodeEdges;
+    }
+
+    /**
+     * Edges connected to a node
+     */
+    private static class NodeEdges
+    {
+        private List<IEdge> incomingEdges = new ArrayList<IEdge>();
+        private List<IEdge> outgoingEdges = new ArrayList<IEdge>();
+        private List<IEdge> connectedEdges = new ArrayList<IEdge>();
+    }
+
+    private AbstractGraph graph;
+
+    private boolean isValid = false;
+
+    /** Nodes are compared by identity, as edges do to find their starting and ending nodes */
+    private Map<INode, NodeEdges> edgesByNode = new IdentityHashMap<INode, NodeEdges>();
+
+    private static final List<IEdge> EMPTY_LIST = Collections.emptyList();
+
+}
@@ -0,0 +1,339 @@
+/*
+ Violet - A program for editing UML diagrams.
+
+ Copyright (C) 2007 Cay S. Horstmann (http://horstmann.com)
+ Alexandre de Pellegrin (http://alexdp.free.fr);
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package com.horstmann.violet.product.diagram.abstracts;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.horstmann.violet.product.diagram.abstracts.edge.IEdge;
+import com.horstmann.violet.product.diagram.abstracts.node.INode;
+import com.horstmann.violet.product.diagram.abstracts.node.RectangularNode;
+
+/**
+ * Keeps the union of the bounds of a graph's top level nodes and edges, used by AbstractGraph.getClipBounds().<br/>
+ * <br/>
+ * The bounds each element contributes are remembered. When elements are added or moved, the union is simply enlarged. When an
+ * element which was touching a side of the union is removed or moved away from it, the union can shrink, so it is computed again
+ * from all the elements on next lookup. Changes are processed lazily, so successive moves during a drag only cost a set insertion.
+ */
+class GraphBoundsTracker
+{
+
+    /**
+     * Default constructor
+     *
+     * @param graph the tracked graph
+     */
+    GraphBoundsTracker(AbstractGraph graph)
+    {
+        this.graph = graph;
+    }
+
+    /**
+     * Forces the bounds to be computed again from all the elements on next lookup
+     */
+    void invalidate()
+    {
+        this.isValid = false;
+    }
+
+    /**
+     * Declares that a node has been moved or added (its top level ancestor and the edges connected to it and to its descendants
+     * are updated). If the graph geometry isn't local, other nodes could have changed too, so everything is computed again.
+     *
+     * @param node
+     */
+    void nodeChanged(INode node)
+    {
+        if (!this.graph.isGeometryLocal())
+        {
+            invalidate();
+            return;
+        }
+        if (this.isValid)
+        {
+            this.changedNodes.add(node);
+        }
+    }
+
+    /**
+     * Declares that a node has been removed
+     *
+     * @param node
+     */
+    void nodeRemoved(INode node)
+    {
+        if (!this.isValid)
+        {
+            return;
+        }
+        if (!this.contributions.containsKey(node))
+        {
+            // A child : its ancestors could shrink
+            invalidate();
+            return;
+        }
+        this.changedNodes.remove(node);
+        update(node, null);
+    }
+
+    /**
+     * Declares that an edge has been connected
+     *
+     * @param edge
+     */
+    void edgeAdded(IEdge edge)
+    {
+        if (this.isValid)
+        {
+            this.changedEdges.add(edge);
+        }
+    }
+
+    /**
+     * Declares that an edge has been removed
+     *
+     * @param edge
+     */
+    void edgeRemoved(IEdge edge)
+    {
+        if (this.isValid)
+        {
+            this.changedEdges.remove(edge);
+            update(edge, null);
+        }
+    }
+
+    /**
+     * @return the smallest rectangle enclosing the graph, enlarged for shadows. It is shared, so callers must not modify it.
+     */
+    Rectangle2D getClipBounds()
+    {
+        refresh();
+        if (this.clipBounds == null && this.union == null)
+        {
+            this.clipBounds = new Rectangle2D.Double();
+        }
+        if (this.clipBounds == null)
+        {
+            double width = this.union.getWidth() + RectangularNode.SHADOW_GAP;
+            double height = this.union.getHeight() + RectangularNode.SHADOW_GAP;
+            this.clipBounds = new Rectangle2D.Double(this.union.getX(), this.union.getY(), width, height);
+        }
+        return this.clipBounds;
+    }
+
+    /**
+     * Processes pending changes
+     */
+    private void refresh()
+    {
+        if (this.isValid && !this.changedNodes.isEmpty())
+        {
+            // Node locations can be adjusted while computing bounds, so we work on a copy
+            List<INode> nodesToProcess = new ArrayList<INode>(this.changedNodes);
+            this.changedNodes.clear();
+            for (INode aNode : nodesToProcess)
+            {
+                processChangedNode(aNode);
+            }
+        }
+        if (this.isValid && !this.changedEdges.isEmpty())
+        {
+            List<IEdge> edgesToProcess = new ArrayList<IEdge>(this.changedEdges);
+            this.changedEdges.clear();
+            for (IEdge anEdge : edgesToProcess)
+            {
+                update(anEdge, anEdge.getBounds());
+            }
+        }
+        if (!this.isValid)
+        {
+            rebuild();
+        }
+    }
+
+    /**
+     * Updates the bounds of a moved or added node and of the edges which follow it
+     *
+     * @param node
+     */
+    private void processChangedNode(INode node)
+    {
+        if (!this.graph.containsNode(node))
+        {
+            // Located before being inserted (it will be declared again once added) or not inserted at all
+            return;
+        }
+        INode root = node;
+        while (root.getParent() != null)
+        {
+            root = root.getParent();
+        }
+        if (root != node && this.contributions.containsKey(node))
+        {
+            // Was a top level node before being added to another one
+            update(node, null);
+        }
+        update(root, root.getBounds());
+        List<INode> fifo = new ArrayList<INode>();
+        fifo.add(node);
+        for (int i = 0; i < fifo.size() && this.isValid; i++)
+        {
+            INode aNode = fifo.get(i);
+            for (IEdge anEdge : this.graph.getConnectedEdges(aNode))
+            {
+                update(anEdge, anEdge.getBounds());
+            }
+            fifo.addAll(aNode.getChildren());
+        }
+    }
+
+    /**
+     * Replaces the bounds an element contributes to the union
+     *
+     * @param element a top level node or an edge
+     * @param newBounds its new bounds or null if it has been removed
+     */
+    private void update(Object element, Rectangle2D newBounds)
+    {
+        if (!this.isValid)
+        {
+            return;
+        }
+        Rectangle2D oldBounds;
+        if (newBounds == null)
+        {
+            oldBounds = this.contributions.remove(element);
+        }
+        else
+        {
+            // Elements may return the rectangle they use internally
+            oldBounds = this.contributions.put(element, copy(newBounds));
+        }
+        if (oldBounds != null && isTouchingSide(oldBounds) && (newBounds == null || !newBounds.contains(oldBounds)))
+        {
+            // The union may shrink
+            invalidate();
+            return;
+        }
+        if (newBounds != null)
+        {
+            add(newBounds);
+        }
+    }
+
+    /**
+     * @param r
+     * @return true if the given rectangle touches one of the sides of the union
+     */
+    private boolean isTouchingSide(Rectangle2D r)
+    {
+        if (this.union == null)
+        {
+            return true;
+        }
+        return r.getMinX() <= this.union.getMinX() || r.getMinY() <= this.union.getMinY() || r.getMaxX() >= this.union.getMaxX()
+                || r.getMaxY() >= this.union.getMaxY();
+    }
+
+    /**
+     * Enlarges the union
+     *
+     * @param r
+     */
+    private void add(Rectangle2D r)
+    {
+        if (this.union == null)
+        {
+            this.union = new Rectangle2D.Double(r.getX(), r.getY(), r.getWidth(), r.getHeight());
+            this.clipBounds = null;
+            return;
+        }
+        if (!this.union.contains(r))
+        {
+            this.union.add(r);
+            this.clipBounds = null;
+        }
+    }
+
+    /**
+     * Computes the union from all the elements
+     */
+    private void rebuild()
+    {
+        this.isValid = true;
+        this.changedNodes.clear();
+        this.changedEdges.clear();
+        this.contributions.clear();
+        this.union = null;
+        this.clipBounds = null;
+        Rectangle2D minBounds = this.graph.getMinBounds();
+        if (minBounds != null)
+        {
+            add(minBounds);
+        }
+        for (INode aNode : this.graph.getRootNodes())
+        {
+            Rectangle2D bounds = copy(aNode.getBounds());
+            this.contributions.put(aNode, bounds);
+            add(bounds);
+        }
+        for (IEdge anEdge : this.graph.getAllEdges())
+        {
+            Rectangle2D bounds = copy(anEdge.getBounds());
+            this.contributions.put(anEdge, bounds);
+            add(bounds);
+        }
+    }
+
+    /**
+     * @param r
+     * @return a copy of r
+     */
+    private static Rectangle2D copy(Rectangle2D r)
+    {
+        return new Rectangle2D.Double(r.getX(), r.getY(), r.getWidth(), r.getHeight());
+    }
+
+    private AbstractGraph graph;
+
+    private boolean isValid = false;
+
+    private Set<INode> changedNodes = new LinkedHashSet<INode>();
+
+    private Set<IEdge> changedEdges = new LinkedHashSet<IEdge>();
+
+    /** Bounds of each top level node and edge when they have been added to the union */
+    private Map<Object, Rectangle2D> contributions = new IdentityHashMap<Object, Rectangle2D>();
+
+    private Rectangle2D union;
+
+    /** Returned rectangle, created again only when the union changes */
+    private Rectangle2D clipBounds;
+
+}
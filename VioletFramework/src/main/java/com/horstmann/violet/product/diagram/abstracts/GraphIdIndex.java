@@ -0,0 +1,223 @@
+/*
+ Violet - A program for editing UML diagrams.
+
+ Copyright (C) 2007 Cay S. Horstmann (http://horstmann.com)
+ Alexandre de Pellegrin (http://alexdp.free.fr);
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package com.horstmann.violet.product.diagram.abstracts;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.horstmann.violet.product.diagram.abstracts.edge.IEdge;
+import com.horstmann.violet.product.diagram.abstracts.node.INode;
+
+/**
+ * Index used by AbstractGraph to find nodes and edges by their id in constant time.<br/>
+ * <br/>
+ * It is kept up to date when nodes and edges are added or removed and lazily built from the graph when it has been invalidated
+ * (for example, after deserialization as this index isn't persisted).
+ */
+class GraphIdIndex
+{
+
+    /**
+     * Default constructor
+     * 
+     * @param graph the indexed graph
+     */
+    GraphIdIndex(AbstractGraph graph)
+    {
+        this.graph = graph;
+    }
+
+    /**
+     * Forces the index to be rebuilt on next lookup
+     */
+    void invalidate()
+    {
+        this.isValid = false;
+    }
+
+    /**
+     * Indexes a node and all its children
+     * 
+     * @param node
+     */
+    void nodeAdded(INode node)
+    {
+        if (!this.isValid)
+        {
+            return;
+        }
+        for (INode aNode : getNodeAndDescendants(node))
+        {
+            this.nodesById.put(aNode.getId(), aNode);
+        }
+    }
+
+    /**
+     * Removes a node and all its children from the index
+     * 
+     * @param node
+     */
+    void nodeRemoved(INode node)
+    {
+        if (!this.isValid)
+        {
+            return;
+        }
+        for (INode aNode : getNodeAndDescendants(node))
+        {
+            Id id = aNode.getId();
+            if (this.nodesById.get(id) == aNode)
+            {
+                this.nodesById.remove(id);
+            }
+        }
+    }
+
+    /**
+     * Indexes an edge
+     * 
+     * @param edge
+     */
+    void edgeAdded(IEdge edge)
+    {
+        if (this.isValid)
+        {
+            this.edgesById.put(edge.getId(), edge);
+        }
+    }
+
+    /**
+     * Removes an edge from the index
+     * 
+     * @param edge
+     */
+    void edgeRemoved(IEdge edge)
+    {
+        if (!this.isValid)
+        {
+            return;
+        }
+        Id id = edge.getId();
+        if (this.edgesById.get(id) == edge)
+        {
+            this.edgesById.remove(id);
+        }
+    }
+
+    /**
+     * @param id
+     * @return the node which has the given id or null if not found
+     */
+    INode findNode(Id id)
+    {
+        refresh();
+        INode result = this.nodesById.get(id);
+        if (result != null && !id.equals(result.getId()))
+        {
+            // Id changed after the node has been indexed
+            rebuild();
+            result = this.nodesById.get(id);
+        }
+        return result;
+    }
+
+    /**
+     * @param id
+     * @return the edge which has the given id or null if not found
+     */
+    IEdge findEdge(Id id)
+    {
+        refresh();
+        IEdge result = this.edgesById.get(id);
+        if (result != null && !id.equals(result.getId()))
+        {
+            // Id changed after the edge has been indexed
+            rebuild();
+            result = this.edgesById.get(id);
+        }
+        return result;
+    }
+
+    /**
+     * Rebuilds the index if needed
+     */
+    private void refresh()
+    {
+        if (!this.isValid)
+        {
+            rebuild();
+        }
+    }
+
+    /**
+     * Rebuilds the whole index from the graph
+     */
+    private void rebuild()
+    {
+        this.isValid = true;
+        this.nodesById.clear();
+        this.edgesById.clear();
+        for (INode aNode : this.graph.getAllNodes())
+        {
+            // Keeps the same priority as a linear scan if ids are duplicated
+            Id id = aNode.getId();
+            if (!this.nodesById.containsKey(id))
+            {
+                this.nodesById.put(id, aNode);
+            }
+        }
+        for (IEdge anEdge : this.graph.getAllEdges())
+        {
+            Id id = anEdge.getId();
+            if (!this.edgesById.containsKey(id))
+            {
+                this.edgesById.put(id, anEdge);
+            }
+        }
+    }
+
+    /**
+     * @param node
+     * @return the given node followed by all its children, grand children...
+     */
+    private List<INode> getNodeAndDescendants(INode node)
+    {
+        List<INode> result = new ArrayList<INode>();
+        result.add(node);
+        for (int i = 0; i < result.size(); i++)
+        {
+            result.addAll(result.get(i).getChildren());
+        }
+        return result;
+    }
+
+    private AbstractGraph graph;
+
+    private boolean isValid = false;
+
+    private Map<Id, INode> nodesById = new HashMap<Id, INode>();
+
+    private Map<Id, IEdge> edgesById = new HashMap<Id, IEdge>();
+
+}
@@ -0,0 +1,326 @@
+/*
+ Violet - A program for editing UML diagrams.
+
+ Copyright (C) 2007 Cay S. Horstmann (http://horstmann.com)
+ Alexandre de Pellegrin (http://alexdp.free.fr);
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package com.horstmann.violet.product.diagram.abstracts;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.horstmann.violet.framework.util.PaintStatistics;
+import com.horstmann.violet.framework.util.QuadTree;
+import com.horstmann.violet.product.diagram.abstracts.edge.IEdge;
+import com.horstmann.violet.product.diagram.abstracts.node.INode;
+
+/**
+ * Spatial index used by AbstractGraph to find nodes and edges by location without scanning the whole graph.<br/>
+ * <br/>
+ * Node and edge bounds are computed from many things (text, children, connected edges...) so the index is a cache : it is fully
+ * rebuilt after structural changes and only moved nodes (and the elements whose geometry depends on them) are refreshed after a
+ * drag, which is why it is only used by graphs with local geometry (see IGraph.isGeometryLocal()). Candidates returned by the
+ * tree are always checked against their current bounds.
+ */
+class GraphSpatialIndex
+{
+
+    /**
+     * Default constructor
+     *
+     * @param graph the indexed graph
+     */
+    GraphSpatialIndex(AbstractGraph graph)
+    {
+        this.graph = graph;
+    }
+
+    /**
+     * Forces the index to be rebuilt on next lookup
+     */
+    void invalidate()
+    {
+        this.isValid = false;
+    }
+
+    /**
+     * Declares that a node location has changed
+     *
+     * @param node
+     */
+    void nodeMoved(INode node)
+    {
+        if (this.isValid)
+        {
+            this.movedNodes.add(node);
+        }
+    }
+
+    /**
+     * Finds the top most node containing the given point (i.e. the first one in the graph's node list)
+     *
+     * @param p
+     * @return the found node or null
+     */
+    INode findNode(Point2D p)
+    {
+        refresh();
+        INode result = null;
+        int resultRank = Integer.MAX_VALUE;
+        for (INode aCandidate : this.nodeTree.query(p))
+        {
+            int rank = this.nodeRanks.get(aCandidate).intValue();
+            if (rank < resultRank && getBoundsOnGraph(aCandidate).contains(p))
+            {
+                result = aCandidate;
+                resultRank = rank;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds the first edge containing the given point
+     *
+     * @param p
+     * @return the found edge or null
+     */
+    IEdge findEdge(Point2D p)
+    {
+        refresh();
+        IEdge result = null;
+        int resultRank = Integer.MAX_VALUE;
+        for (IEdge aCandidate : this.edgeTree.query(p))
+        {
+            int rank = this.edgeRanks.get(aCandidate).intValue();
+            if (rank < resultRank && aCandidate.contains(p))
+            {
+                result = aCandidate;
+                resultRank = rank;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param r
+     * @return nodes which bounds on graph intersect the given rectangle, in the graph's order
+     */
+    List<INode> findNodes(Rectangle2D r)
+    {
+        refresh();
+        List<INode> result = new ArrayList<INode>();
+        for (INode aCandidate : this.nodeTree.query(r))
+        {
+            if (getBoundsOnGraph(aCandidate).intersects(r))
+            {
+                result.add(aCandidate);
+            }
+        }
+        sortByRank(result, this.nodeRanks);
+        return result;
+    }
+
+    /**
+     * @param r
+     * @return edges which bounds intersect the given rectangle, in the graph's order
+     */
+    List<IEdge> findEdges(Rectangle2D r)
+    {
+        refresh();
+        List<IEdge> result = new ArrayList<IEdge>();
+        for (IEdge aCandidate : this.edgeTree.query(r))
+        {
+            if (aCandidate.getBounds().intersects(r))
+            {
+                result.add(aCandidate);
+            }
+        }
+        sortByRank(result, this.edgeRanks);
+        return result;
+    }
+
+    /**
+     * Sorts elements found in the tree as they are ordered in the graph
+     * 
+     * @param elements
+     * @param ranks
+     */
+    private static <T> void sortByRank(List<T> elements, final Map<T, Integer> ranks)
+    {
+        Collections.sort(elements, new Comparator<T>()
+        {
+            public int compare(T e1, T e2)
+            {
+                return ranks.get(e1).compareTo(ranks.get(e2));
+            }
+        });
+    }
+
+    /**
+     * @param node
+     * @return node's bounds translated to the graph's coordinates (children bounds are relative to their parent)
+     */
+    static Rectangle2D getBoundsOnGraph(INode node)
+    {
+        long startTime = PaintStatistics.getInstance().start();
+        Point2D locationOnGraph = node.getLocationOnGraph();
+        Rectangle2D bounds = node.getBounds();
+        PaintStatistics.getInstance().stop("getBounds", node.getClass(), startTime);
+        return new Rectangle2D.Double(locationOnGraph.getX(), locationOnGraph.getY(), bounds.getWidth(), bounds.getHeight());
+    }
+
+    /**
+     * Brings the index up to date before a lookup
+     */
+    private void refresh()
+    {
+        if (!this.isValid)
+        {
+            rebuild();
+            return;
+        }
+        if (this.movedNodes.isEmpty())
+        {
+            return;
+        }
+        // Node locations can be adjusted while computing bounds, so we work on a copy
+        List<INode> nodesToProcess = new ArrayList<INode>(this.movedNodes);
+        this.movedNodes.clear();
+        Set<INode> nodesToUpdate = new LinkedHashSet<INode>();
+        for (INode aMovedNode : nodesToProcess)
+        {
+            collectDependentNodes(aMovedNode, nodesToUpdate);
+        }
+        Set<IEdge> edgesToUpdate = new LinkedHashSet<IEdge>();
+        for (INode aNode : nodesToUpdate)
+        {
+            edgesToUpdate.addAll(this.graph.getConnectedEdges(aNode));
+        }
+        for (INode aNode : nodesToUpdate)
+        {
+            if (this.nodeTree.contains(aNode))
+            {
+                this.nodeTree.insert(aNode, getBoundsOnGraph(aNode));
+            }
+        }
+        for (IEdge anEdge : edgesToUpdate)
+        {
+            if (this.edgeTree.contains(anEdge))
+            {
+                this.edgeTree.insert(anEdge, getPaddedBounds(anEdge));
+            }
+        }
+    }
+
+    /**
+     * Collects the nodes whose bounds could change when the given node moves : its ancestors (which often wrap their children),
+     * its descendants (which are located relatively to it) and the nodes it is connected to.
+     *
+     * @param movedNode
+     * @param result
+     */
+    private void collectDependentNodes(INode movedNode, Set<INode> result)
+    {
+        INode anAncestor = movedNode.getParent();
+        while (anAncestor != null && result.add(anAncestor))
+        {
+            anAncestor = anAncestor.getParent();
+        }
+        List<INode> fifo = new ArrayList<INode>();
+        fifo.add(movedNode);
+        for (int i = 0; i < fifo.size(); i++)
+        {
+            INode aNode = fifo.get(i);
+            result.add(aNode);
+            fifo.addAll(aNode.getChildren());
+        }
+        for (IEdge anEdge : this.graph.getConnectedEdges(movedNode))
+        {
+            result.add(anEdge.getStart());
+            result.add(anEdge.getEnd());
+        }
+        result.remove(null);
+    }
+
+    /**
+     * Rebuilds the whole index from the graph
+     */
+    private void rebuild()
+    {
+        this.isValid = true;
+        this.movedNodes.clear();
+        this.nodeTree.clear();
+        this.edgeTree.clear();
+        this.nodeRanks.clear();
+        this.edgeRanks.clear();
+        int rank = 0;
+        for (INode aNode : this.graph.getAllNodes())
+        {
+            this.nodeTree.insert(aNode, getBoundsOnGraph(aNode));
+            this.nodeRanks.put(aNode, Integer.valueOf(rank++));
+        }
+        rank = 0;
+        for (IEdge anEdge : this.graph.getAllEdges())
+        {
+            this.edgeTree.insert(anEdge, getPaddedBounds(anEdge));
+            this.edgeRanks.put(anEdge, Integer.valueOf(rank++));
+        }
+    }
+
+    /**
+     * @param edge
+     * @return edge bounds enlarged by the distance tolerated when clicking on an edge
+     */
+    private static Rectangle2D getPaddedBounds(IEdge edge)
+    {
+        long startTime = PaintStatistics.getInstance().start();
+        Rectangle2D bounds = edge.getBounds();
+        PaintStatistics.getInstance().stop("getBounds", edge.getClass(), startTime);
+        return new Rectangle2D.Double(bounds.getX() - EDGE_HIT_MARGIN, bounds.getY() - EDGE_HIT_MARGIN, bounds.getWidth() + 2
+                * EDGE_HIT_MARGIN, bounds.getHeight() + 2 * EDGE_HIT_MARGIN);
+    }
+
+    private AbstractGraph graph;
+
+    private boolean isValid = false;
+
+    private Set<INode> movedNodes = new LinkedHashSet<INode>();
+
+    private QuadTree<INode> nodeTree = new QuadTree<INode>();
+
+    private QuadTree<IEdge> edgeTree = new QuadTree<IEdge>();
+
+    /** Position of each node in graph.getAllNodes(), used to keep the same priority as a linear scan */
+    private Map<INode, Integer> nodeRanks = new IdentityHashMap<INode, Integer>();
+
+    /** Position of each edge in graph.getAllEdges() */
+    private Map<IEdge, Integer> edgeRanks = new IdentityHashMap<IEdge, Integer>();
+
+    /** Distance (in pixels) under which a point is considered to be on an edge (see ShapeEdge.contains()) */
+    private static final double EDGE_HIT_MARGIN = 3;
+
+}
@@ -45,6 +45,33 @@ public interface IGraph
     public abstract Collection<IEdge> getAllEdges();
 
 
+    /**
+     * Gets the edges ending on a node.
+     * 
+     * @param node a node of this graph
+     * @return an unmodifiable list of the edges
+     */
+    public abstract List<IEdge> getIncomingEdges(INode node);
+
+
+    /**
+     * Gets the edges starting from a node.
+     * 
+     * @param node a node of this graph
+     * @return an unmodifiable list of the edges
+     */
+    public abstract List<IEdge> getOutgoingEdges(INode node);
+
+
+    /**
+     * Gets the edges starting from or ending on a node.
+     * 
+     * @param node a node of this graph
+     * @return an unmodifiable list of the edges
+     */
+    public abstract List<IEdge> getConnectedEdges(INode node);
+
+
     /**
      * Removes one or more edges from this graph.
      * 
@@ -119,6 +146,39 @@ public interface IGraph
      */
     public abstract IEdge findEdge(Point2D p);
 
+    /**
+     * Finds the nodes located in an area of the graph.
+     * 
+     * @param r a rectangle
+     * @return the nodes which bounds on the graph intersect r
+     */
+    public abstract Collection<INode> findNodes(Rectangle2D r);
+
+    /**
+     * Finds the edges located in an area of the graph.
+     * 
+     * @param r a rectangle
+     * @return the edges which bounds intersect r
+     */
+    public abstract Collection<IEdge> findEdges(Rectangle2D r);
+
+    /**
+     * Gets a number which changes each time something which could change the way the graph is drawn is modified (nodes or edges
+     * added, removed, moved, edited...). It can be used to know if a rendering of this graph is up to date.
+     * 
+     * @return current revision
+     */
+    public abstract long getRevision();
+
+    /**
+     * Tells if moving a node can only change the bounds of the nodes related to it (its ancestors, its descendants and the nodes
+     * it is connected to) and of their edges. Caches which are refreshed incrementally after a drag (spatial index, clip bounds,
+     * damaged areas...) are only used when this is true.
+     * 
+     * @return false if some node or edge bounds depend on nodes which aren't related to them (see IEdge.isGeometryLocal())
+     */
+    public abstract boolean isGeometryLocal();
+
     /**
      * Draws the graph
      * 
@@ -126,11 +186,19 @@ public interface IGraph
      */
     public abstract void draw(Graphics2D g2);
 
+    /**
+     * Draws the part of the graph which is visible in a clip area. Nodes and edges which don't intersect it are skipped.
+     * 
+     * @param g2 the graphics context
+     * @param clip the visible area in graph coordinates (the whole graph is drawn if null)
+     */
+    public abstract void draw(Graphics2D g2, Rectangle2D clip);
+
 
     /**
      * Gets the smallest rectangle enclosing the graph
      * 
-     * @return the bounding rectangle
+     * @return the bounding rectangle (which must not be modified)
      */
     public abstract Rectangle2D getClipBounds();
     
@@ -0,0 +1,189 @@
+/*
+ Violet - A program for editing UML diagrams.
+
+ Copyright (C) 2007 Cay S. Horstmann (http://horstmann.com)
+ Alexandre de Pellegrin (http://alexdp.free.fr);
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package com.horstmann.violet.product.diagram.abstracts;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * How much detail nodes and edges draw, depending on the scale of the graphics context they are drawn on. When a diagram is
+ * zoomed out, texts are only a few pixels tall so drawing them (and shadows, arrow heads...) costs a lot for nothing.<br/>
+ * <br/>
+ * - FULL : everything is drawn;<br/>
+ * - SIMPLIFIED : shadows and arrow heads are skipped and texts are replaced by grey bars;<br/>
+ * - OUTLINE : nodes are drawn as plain rectangles (see INode.drawOutline()) and edges as lines without labels.
+ */
+public enum LevelOfDetail
+{
+    FULL, SIMPLIFIED, OUTLINE;
+
+    /**
+     * @param g2 the graphics context elements are drawn on
+     * @return the level of detail matching its scale
+     */
+    public static LevelOfDetail get(Graphics2D g2)
+    {
+        return get(getScale(g2.getTransform()));
+    }
+
+    /**
+     * @param scale the ratio between device pixels and graph units
+     * @return the level of detail for this scale
+     */
+    public static LevelOfDetail get(double scale)
+    {
+        if (scale < outlineThreshold)
+        {
+            return OUTLINE;
+        }
+        if (scale < simplifiedThreshold)
+        {
+            return SIMPLIFIED;
+        }
+        return FULL;
+    }
+
+    /**
+     * @return true if nodes draw their shadow
+     */
+    public boolean isShadowVisible()
+    {
+        return this == FULL;
+    }
+
+    /**
+     * @return true if edges draw their arrow heads
+     */
+    public boolean isArrowHeadVisible()
+    {
+        return this == FULL;
+    }
+
+    /**
+     * @return true if texts are replaced by bars
+     */
+    public boolean isTextGreeked()
+    {
+        return this == SIMPLIFIED;
+    }
+
+    /**
+     * @return true if texts are not drawn at all
+     */
+    public boolean isTextHidden()
+    {
+        return this == OUTLINE;
+    }
+
+    /**
+     * @return true if nodes are only drawn as rectangles
+     */
+    public boolean isOutlineOnly()
+    {
+        return this == OUTLINE;
+    }
+
+    /**
+     * Draws bars standing for text lines, with the current color made lighter
+     *
+     * @param g2 the graphics context
+     * @param r the text bounds
+     * @param lineCount number of text lines
+     */
+    public static void drawGreekedText(Graphics2D g2, Rectangle2D r, int lineCount)
+    {
+        if (lineCount <= 0 || r.isEmpty())
+        {
+            return;
+        }
+        Color oldColor = g2.getColor();
+        g2.setColor(new Color(oldColor.getRed(), oldColor.getGreen(), oldColor.getBlue(), GREEKED_TEXT_ALPHA));
+        double lineHeight = r.getHeight() / lineCount;
+        for (int i = 0; i < lineCount; i++)
+        {
+            g2.fill(new Rectangle2D.Double(r.getX(), r.getY() + i * lineHeight + lineHeight / 4, r.getWidth(), lineHeight / 2));
+        }
+        g2.setColor(oldColor);
+    }
+
+    /**
+     * Sets the scale under which texts are greeked and shadows and arrow heads are skipped.<br/>
+     * Editor parts cache their rendering, so they must be invalidated afterwards.
+     *
+     * @param threshold
+     */
+    public static void setSimplifiedThreshold(double threshold)
+    {
+        simplifiedThreshold = threshold;
+    }
+
+    /**
+     * @return the scale under which texts are greeked and shadows and arrow heads are skipped
+     */
+    public static double getSimplifiedThreshold()
+    {
+        return simplifiedThreshold;
+    }
+
+    /**
+     * Sets the scale under which nodes are only drawn as rectangles.<br/>
+     * Editor parts cache their rendering, so they must be invalidated afterwards.
+     *
+     * @param threshold
+     */
+    public static void setOutlineThreshold(double threshold)
+    {
+        outlineThreshold = threshold;
+    }
+
+    /**
+     * @return the scale under which nodes are only drawn as rectangles
+     */
+    public static double getOutlineThreshold()
+    {
+        return outlineThreshold;
+    }
+
+    /**
+     * @param transform
+     * @return the average scale of the transform (rotations and translations are ignored)
+     */
+    private static double getScale(AffineTransform transform)
+    {
+        return Math.sqrt(Math.abs(transform.getDeterminant()));
+    }
+
+    /** Default simplified threshold : 12 points texts are about 5 pixels tall under it */
+    public static final double DEFAULT_SIMPLIFIED_THRESHOLD = 0.45;
+
+    /** Default outline threshold */
+    public static final double DEFAULT_OUTLINE_THRESHOLD = 0.2;
+
+    private static volatile double simplifiedThreshold = DEFAULT_SIMPLIFIED_THRESHOLD;
+
+    private static volatile double outlineThreshold = DEFAULT_OUTLINE_THRESHOLD;
+
+    private static final int GREEKED_TEXT_ALPHA = 96;
+
+}
@@ -24,8 +24,11 @@ package com.horstmann.violet.product.diagram.abstracts.edge;
 import java.awt.geom.Line2D;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
 
 import com.horstmann.violet.product.diagram.abstracts.Direction;
+import com.horstmann.violet.product.diagram.abstracts.IGraph;
 import com.horstmann.violet.product.diagram.abstracts.Id;
 import com.horstmann.violet.product.diagram.abstracts.node.INode;
 import com.thoughtworks.xstream.annotations.XStreamAsAttribute;
@@ -44,6 +47,7 @@ public abstract class AbstractEdge implements IEdge
     public void setStart(INode startingNode)
     {
         this.start = startingNode;
+        invalidateGeometry();
     }
 
     @Override
@@ -56,6 +60,7 @@ public abstract class AbstractEdge implements IEdge
     public void setEnd(INode endingNode)
     {
         this.end = endingNode;
+        invalidateGeometry();
     }
 
     @Override
@@ -68,6 +73,7 @@ public abstract class AbstractEdge implements IEdge
     public void setStartLocation(Point2D startLocation)
     {
         this.startLocation = startLocation;
+        invalidateGeometry();
     }
 
     @Override
@@ -80,6 +86,7 @@ public abstract class AbstractEdge implements IEdge
     public void setEndlocation(Point2D endLocation)
     {
         this.endLocation = endLocation;
+        invalidateGeometry();
     }
 
     @Override
@@ -92,6 +99,7 @@ public abstract class AbstractEdge implements IEdge
     public void setTransitionPoints(Point2D[] transitionPoints)
     {
         this.transitionPoints = transitionPoints;
+        invalidateGeometry();
     }
     
     @Override
@@ -146,6 +154,24 @@ public abstract class AbstractEdge implements IEdge
 
     @Override
     public Line2D getConnectionPoints()
+    {
+        boolean isCacheable = checkGeometryCache();
+        if (isCacheable && this.connectionPoints != null)
+        {
+            return (Line2D) this.connectionPoints.clone();
+        }
+        Line2D result = computeConnectionPoints();
+        if (isCacheable)
+        {
+            this.connectionPoints = (Line2D) result.clone();
+        }
+        return result;
+    }
+
+    /**
+     * @return the connection points on both nodes, computed from their current location
+     */
+    private Line2D computeConnectionPoints()
     {
         INode startingNode = getStart();
         INode endingNode = getEnd();
@@ -160,6 +186,111 @@ public abstract class AbstractEdge implements IEdge
         return new Line2D.Double(absoluteStartingConnectionPoint, absoluteEndingConnectionPoint);
     }
 
+    /**
+     * Declares that a property this edge's geometry depends on (other than the location of its nodes) has changed, so that
+     * cached geometry is computed again.
+     */
+    protected void invalidateGeometry()
+    {
+        this.geometryRevision++;
+    }
+
+    /**
+     * Checks that the geometry cached by this edge is still up to date. The geometry of an edge depends on its own properties, on
+     * the bounds of its nodes and of their parents, and on the directions of the edges connected to the same nodes (connection
+     * points are shared out along node sides). So, the cache is dropped each time one of these changes or when
+     * invalidateGeometry() has been called. When the geometry depends on other parts of the diagram, the cache is dropped each
+     * time the graph revision changes.
+     * 
+     * @return false if geometry can't be cached because the edge isn't connected to a graph
+     */
+    protected boolean checkGeometryCache()
+    {
+        IGraph graph = (this.start != null ? this.start.getGraph() : null);
+        if (graph == null || this.end == null)
+        {
+            return false;
+        }
+        List<Double> geometryStamp = getGeometryStamp(graph);
+        if (!this.isGeometryCached || !geometryStamp.equals(this.cachedGeometryStamp)
+                || this.geometryRevision != this.cachedGeometryRevision)
+        {
+            clearGeometryCache();
+            this.cachedGeometryStamp = geometryStamp;
+            this.cachedGeometryRevision = this.geometryRevision;
+            this.isGeometryCached = true;
+        }
+        return true;
+    }
+
+    /**
+     * @param graph the graph this edge belongs to
+     * @return the values the geometry of this edge depends on (only the graph revision when it isn't local)
+     */
+    private List<Double> getGeometryStamp(IGraph graph)
+    {
+        List<Double> stamp = new ArrayList<Double>();
+        if (!graph.isGeometryLocal() || !isGeometryLocal())
+        {
+            stamp.add(Double.valueOf(graph.getRevision()));
+            return stamp;
+        }
+        addNodeStamp(graph, this.start, stamp);
+        addNodeStamp(graph, this.end, stamp);
+        if (this.transitionPoints != null)
+        {
+            for (Point2D aTransitionPoint : this.transitionPoints)
+            {
+                stamp.add(Double.valueOf(aTransitionPoint.getX()));
+                stamp.add(Double.valueOf(aTransitionPoint.getY()));
+            }
+        }
+        return stamp;
+    }
+
+    /**
+     * Adds the bounds of the given node and of its parents, and the directions of the edges connected to it
+     * 
+     * @param graph
+     * @param node
+     * @param stamp
+     */
+    private static void addNodeStamp(IGraph graph, INode node, List<Double> stamp)
+    {
+        for (INode aNode = node; aNode != null; aNode = aNode.getParent())
+        {
+            Point2D location = aNode.getLocation();
+            Rectangle2D bounds = aNode.getBounds();
+            stamp.add(Double.valueOf(location.getX()));
+            stamp.add(Double.valueOf(location.getY()));
+            stamp.add(Double.valueOf(bounds.getWidth()));
+            stamp.add(Double.valueOf(bounds.getHeight()));
+        }
+        for (IEdge anEdge : graph.getConnectedEdges(node))
+        {
+            Direction direction = anEdge.getDirection(node);
+            if (direction != null)
+            {
+                stamp.add(Double.valueOf(direction.getX()));
+                stamp.add(Double.valueOf(direction.getY()));
+            }
+        }
+    }
+
+    @Override
+    public boolean isGeometryLocal()
+    {
+        return true;
+    }
+
+    /**
+     * Drops cached geometry. Subclasses which cache their own geometry override it and call super.
+     */
+    protected void clearGeometryCache()
+    {
+        this.connectionPoints = null;
+    }
+
     @Override
     public Id getId()
     {
@@ -182,6 +313,7 @@ public abstract class AbstractEdge implements IEdge
         {
             AbstractEdge cloned = (AbstractEdge) super.clone();
             cloned.id = new Id();
+            cloned.isGeometryCached = false;
             return cloned;
         }
         catch (CloneNotSupportedException ex)
@@ -254,4 +386,19 @@ public abstract class AbstractEdge implements IEdge
 
     /** Edge tool tip */
     private transient String toolTip;
+
+    /** Incremented each time a property this edge's geometry depends on is changed */
+    private transient long geometryRevision;
+
+    /** Edge geometry revision when the cache has been filled */
+    private transient long cachedGeometryRevision;
+
+    /** Node bounds, edge directions and transition points (or graph revision) when the cache has been filled */
+    private transient List<Double> cachedGeometryStamp;
+
+    /** True if the geometry cache has been filled for the revisions above */
+    private transient boolean isGeometryCached;
+
+    /** Cached connection points */
+    private transient Line2D connectionPoints;
 }
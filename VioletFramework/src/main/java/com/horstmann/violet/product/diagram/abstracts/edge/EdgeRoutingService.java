@@ -0,0 +1,275 @@
+/*
+ Violet - A program for editing UML diagrams.
+
+ Copyright (C) 2007 Cay S. Horstmann (http://horstmann.com)
+ Alexandre de Pellegrin (http://alexdp.free.fr);
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package com.horstmann.violet.product.diagram.abstracts.edge;
+
+import java.awt.geom.Line2D;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.SwingUtilities;
+
+import com.horstmann.violet.framework.util.QuadTree;
+import com.horstmann.violet.product.diagram.abstracts.AbstractGraph;
+import com.horstmann.violet.product.diagram.abstracts.IGraph;
+import com.horstmann.violet.product.diagram.abstracts.node.INode;
+import com.horstmann.violet.product.diagram.abstracts.property.BentStyle;
+
+/**
+ * Routes all the orthogonal edges of a diagram at once in background threads, so that opening a large diagram doesn't freeze the
+ * first paint.<br/>
+ * <br/>
+ * Node bounds and connection points are copied on the event dispatch thread, then paths are searched in parallel on this copy.
+ * Results are given to the edges all together on the event dispatch thread. Meanwhile, edges which have no route yet are drawn
+ * with a simple path. A route which doesn't match the diagram anymore when it is published is simply searched again by its edge.
+ */
+public class EdgeRoutingService
+{
+
+    /**
+     * Singleton constructor
+     */
+    private EdgeRoutingService()
+    {
+        int threadCount = Math.max(1, Runtime.getRuntime().availableProcessors());
+        this.executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory()
+        {
+            public Thread newThread(Runnable r)
+            {
+                Thread thread = new Thread(r, "EdgeRoutingService");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * @return service instance
+     */
+    public static synchronized EdgeRoutingService getInstance()
+    {
+        if (instance == null)
+        {
+            instance = new EdgeRoutingService();
+        }
+        return instance;
+    }
+
+    /**
+     * Routes all the edges of a graph which have the ORTHOGONAL bent style. Must be called on the event dispatch thread.
+     * 
+     * @param graph the graph
+     * @param whenDone called on the event dispatch thread once the routes are published (can be null)
+     */
+    public void routeAll(final IGraph graph, final Runnable whenDone)
+    {
+        final List<RoutingRequest> requests = new ArrayList<RoutingRequest>();
+        for (IEdge anEdge : graph.getAllEdges())
+        {
+            if (!(anEdge instanceof SegmentedLineEdge) || anEdge.getStart() == null || anEdge.getEnd() == null)
+            {
+                continue;
+            }
+            SegmentedLineEdge aSegmentedLineEdge = (SegmentedLineEdge) anEdge;
+            if (!BentStyle.ORTHOGONAL.equals(aSegmentedLineEdge.getBentStyle()))
+            {
+                continue;
+            }
+            RoutingRequest aRequest = new RoutingRequest();
+            aRequest.edge = aSegmentedLineEdge;
+            aRequest.startNode = anEdge.getStart();
+            aRequest.endNode = anEdge.getEnd();
+            aRequest.ignoredNodes = OrthogonalEdgeRouter.getIgnoredNodes(anEdge.getStart(), anEdge.getEnd());
+            Line2D connectionPoints = anEdge.getConnectionPoints();
+            aRequest.startPoint = connectionPoints.getP1();
+            aRequest.endPoint = connectionPoints.getP2();
+            requests.add(aRequest);
+        }
+        if (requests.isEmpty())
+        {
+            if (whenDone != null) whenDone.run();
+            return;
+        }
+        final NodeBoundsSnapshot snapshot = new NodeBoundsSnapshot(graph.getAllNodes());
+        this.graphsBeingRouted.put(graph, graph);
+        final OrthogonalEdgeRouter.Route[] routes = new OrthogonalEdgeRouter.Route[requests.size()];
+        final AtomicInteger remainingTasks = new AtomicInteger(this.threadCount);
+        final AtomicInteger nextRequest = new AtomicInteger(0);
+        for (int i = 0; i < this.threadCount; i++)
+        {
+            this.executor.execute(new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        // Requests are taken one by one so that threads finish at the same time
+                        for (int index = nextRequest.getAndIncrement(); index < routes.length; index = nextRequest.getAndIncrement())
+                        {
+                            RoutingRequest aRequest = requests.get(index);
+                            routes[index] = ROUTER.route(snapshot, aRequest.startNode, aRequest.endNode, aRequest.ignoredNodes,
+                                    aRequest.startPoint, aRequest.endPoint, null);
+                        }
+                    }
+                    finally
+                    {
+                        if (remainingTasks.decrementAndGet() == 0)
+                        {
+                            SwingUtilities.invokeLater(new Runnable()
+                            {
+                                public void run()
+                                {
+                                    publish(graph, requests, routes, whenDone);
+                                }
+                            });
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * @param graph
+     * @return true if the edges of this graph are currently routed in background
+     */
+    public boolean isRouting(IGraph graph)
+    {
+        return this.graphsBeingRouted.containsKey(graph);
+    }
+
+    /**
+     * Gives computed routes to their edges
+     * 
+     * @param graph
+     * @param requests
+     * @param routes
+     * @param whenDone
+     */
+    private void publish(IGraph graph, List<RoutingRequest> requests, OrthogonalEdgeRouter.Route[] routes, Runnable whenDone)
+    {
+        for (int i = 0; i < routes.length; i++)
+        {
+            if (routes[i] != null)
+            {
+                requests.get(i).edge.setOrthogonalRoute(routes[i]);
+            }
+        }
+        this.graphsBeingRouted.remove(graph);
+        // Edge bounds have changed without any node being moved
+        if (graph instanceof AbstractGraph)
+        {
+            ((AbstractGraph) graph).notifyGeometryChanged();
+        }
+        if (whenDone != null)
+        {
+            whenDone.run();
+        }
+    }
+
+    /**
+     * An edge to route and everything needed to do it without reading the graph
+     */
+    private static class RoutingRequest
+    {
+        private SegmentedLineEdge edge;
+        private INode startNode;
+        private INode endNode;
+        private Map<INode, INode> ignoredNodes;
+        private Point2D startPoint;
+        private Point2D endPoint;
+    }
+
+    /**
+     * Copy of node bounds, which can be read by several threads as it is never modified
+     */
+    private static class NodeBoundsSnapshot implements OrthogonalEdgeRouter.ObstacleFinder
+    {
+        NodeBoundsSnapshot(Collection<INode> nodes)
+        {
+            int rank = 0;
+            for (INode aNode : nodes)
+            {
+                Rectangle2D bounds = OrthogonalEdgeRouter.getBoundsOnGraph(aNode);
+                this.bounds.put(aNode, bounds);
+                this.ranks.put(aNode, Integer.valueOf(rank++));
+                this.tree.insert(aNode, bounds);
+            }
+        }
+
+        public List<INode> findNodes(Rectangle2D area)
+        {
+            List<INode> result = new ArrayList<INode>();
+            for (INode aCandidate : this.tree.query(area))
+            {
+                if (this.bounds.get(aCandidate).intersects(area))
+                {
+                    result.add(aCandidate);
+                }
+            }
+            // Same order as IGraph.findNodes() so that routes can be compared
+            Collections.sort(result, new Comparator<INode>()
+            {
+                public int compare(INode n1, INode n2)
+                {
+                    return ranks.get(n1).compareTo(ranks.get(n2));
+                }
+            });
+            return result;
+        }
+
+        public Rectangle2D getBoundsOnGraph(INode node)
+        {
+            Rectangle2D nodeBounds = this.bounds.get(node);
+            return new Rectangle2D.Double(nodeBounds.getX(), nodeBounds.getY(), nodeBounds.getWidth(), nodeBounds.getHeight());
+        }
+
+        private Map<INode, Rectangle2D> bounds = new IdentityHashMap<INode, Rectangle2D>();
+        private Map<INode, Integer> ranks = new IdentityHashMap<INode, Integer>();
+        private QuadTree<INode> tree = new QuadTree<INode>();
+    }
+
+    private static EdgeRoutingService instance;
+
+    private ExecutorService executor;
+
+    private int threadCount;
+
+    /** Graphs whose edges are being routed (read by edges from any thread) */
+    private Map<IGraph, IGraph> graphsBeingRouted = Collections.synchronizedMap(new IdentityHashMap<IGraph, IGraph>());
+
+    /** Background routing doesn't slow down the user interface so it can take much more time than interactive routing */
+    private static final OrthogonalEdgeRouter ROUTER = new OrthogonalEdgeRouter(1000);
+
+}
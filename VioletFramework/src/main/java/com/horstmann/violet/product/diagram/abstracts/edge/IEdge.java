@@ -104,6 +104,11 @@ public interface IEdge extends Serializable, Cloneable, IIdentifiable
      */
     boolean isTransitionPointsSupported();
 
+    /**
+     * @return false if the path of this edge depends on nodes it isn't connected to (for example, when it goes around them)
+     */
+    boolean isGeometryLocal();
+
     /**
      * Gets the points at which this edge is connected to its nodes.
      * 
@@ -0,0 +1,664 @@
+/*
+ Violet - A program for editing UML diagrams.
+
+ Copyright (C) 2007 Cay S. Horstmann (http://horstmann.com)
+ Alexandre de Pellegrin (http://alexdp.free.fr);
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package com.horstmann.violet.product.diagram.abstracts.edge;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+
+import com.horstmann.violet.framework.util.PaintStatistics;
+import com.horstmann.violet.product.diagram.abstracts.IGraph;
+import com.horstmann.violet.product.diagram.abstracts.node.INode;
+import com.horstmann.violet.product.diagram.abstracts.property.BentStyle;
+
+/**
+ * Computes orthogonal paths which go around nodes (used by the BentStyle.ORTHOGONAL style).<br/>
+ * <br/>
+ * Node bounds (enlarged by a margin) are obstacles. Their sides give the lines of a grid, on which an A* search looks for the
+ * shortest path with the fewest bends. Only nodes located around the edge are considered.<br/>
+ * <br/>
+ * A route is kept by its edge and is only searched again when its end points or the obstacles around it change, so moving a
+ * node only reroutes the edges near it. Each search has a time budget : when it is exceeded, a simple HVH or VHV path is
+ * returned to keep dragging interactive and the search is done again next time the edge geometry is computed.
+ */
+public class OrthogonalEdgeRouter
+{
+
+    /**
+     * Creates a router with the default time budget
+     */
+    public OrthogonalEdgeRouter()
+    {
+        this(DEFAULT_TIME_BUDGET);
+    }
+
+    /**
+     * Creates a router
+     *
+     * @param timeBudget maximum time spent to search a path, in milliseconds
+     */
+    public OrthogonalEdgeRouter(long timeBudget)
+    {
+        this.timeBudget = timeBudget;
+    }
+
+    /**
+     * Computes the path of an edge
+     *
+     * @param graph the graph containing the nodes
+     * @param startNode the node where the edge starts
+     * @param endNode the node where the edge ends
+     * @param startPoint the connection point on the starting node (in graph coordinates)
+     * @param endPoint the connection point on the ending node (in graph coordinates)
+     * @param previousRoute the route previously computed for this edge (or null)
+     * @return the previous route if it is still up to date or a new route
+     */
+    public Route route(final IGraph graph, INode startNode, INode endNode, Point2D startPoint, Point2D endPoint,
+            Route previousRoute)
+    {
+        ObstacleFinder finder = new ObstacleFinder()
+        {
+            public List<INode> findNodes(Rectangle2D area)
+            {
+                return new ArrayList<INode>(graph.findNodes(area));
+            }
+
+            public Rectangle2D getBoundsOnGraph(INode node)
+            {
+                return OrthogonalEdgeRouter.getBoundsOnGraph(node);
+            }
+        };
+        return route(finder, startNode, endNode, getIgnoredNodes(startNode, endNode), startPoint, endPoint, previousRoute);
+    }
+
+    /**
+     * @param startNode
+     * @param endNode
+     * @return the containers of the connected nodes, which can't be avoided
+     */
+    static Map<INode, INode> getIgnoredNodes(INode startNode, INode endNode)
+    {
+        Map<INode, INode> ignoredNodes = new IdentityHashMap<INode, INode>();
+        for (INode aNode = startNode.getParent(); aNode != null; aNode = aNode.getParent())
+        {
+            ignoredNodes.put(aNode, aNode);
+        }
+        for (INode aNode = endNode.getParent(); aNode != null; aNode = aNode.getParent())
+        {
+            ignoredNodes.put(aNode, aNode);
+        }
+        return ignoredNodes;
+    }
+
+    /**
+     * Computes the path of an edge. Nodes are only read through the given finder, so this can be called from any thread when
+     * the finder works on a copy of node bounds.
+     *
+     * @param finder gives node bounds
+     * @param startNode the node where the edge starts
+     * @param endNode the node where the edge ends
+     * @param ignoredNodes nodes which are not obstacles
+     * @param startPoint the connection point on the starting node (in graph coordinates)
+     * @param endPoint the connection point on the ending node (in graph coordinates)
+     * @param previousRoute the route previously computed for this edge (or null)
+     * @return the previous route if it is still up to date or a new route
+     */
+    Route route(ObstacleFinder finder, INode startNode, INode endNode, Map<INode, INode> ignoredNodes, Point2D startPoint,
+            Point2D endPoint, Route previousRoute)
+    {
+        long startTime = PaintStatistics.getInstance().start();
+        Route result = computeRoute(finder, startNode, endNode, ignoredNodes, startPoint, endPoint, previousRoute);
+        PaintStatistics.getInstance().stop("OrthogonalEdgeRouter.route", startTime);
+        return result;
+    }
+
+    /**
+     * Computes the path of an edge (see route())
+     *
+     * @param finder gives node bounds
+     * @param startNode the node where the edge starts
+     * @param endNode the node where the edge ends
+     * @param ignoredNodes nodes which are not obstacles
+     * @param startPoint the connection point on the starting node (in graph coordinates)
+     * @param endPoint the connection point on the ending node (in graph coordinates)
+     * @param previousRoute the route previously computed for this edge (or null)
+     * @return the previous route if it is still up to date or a new route
+     */
+    private Route computeRoute(ObstacleFinder finder, INode startNode, INode endNode, Map<INode, INode> ignoredNodes,
+            Point2D startPoint, Point2D endPoint, Route previousRoute)
+    {
+        if (startNode == endNode)
+        {
+            return new Route(startPoint, endPoint, new ArrayList<INode>(), new ArrayList<Rectangle2D>(), BentStyle.ORTHOGONAL
+                    .getPath(startPoint, endPoint), true);
+        }
+        Rectangle2D startBounds = finder.getBoundsOnGraph(startNode);
+        Rectangle2D endBounds = finder.getBoundsOnGraph(endNode);
+        int startDirection = getExitDirection(startPoint, startBounds);
+        int endDirection = getExitDirection(endPoint, endBounds);
+        Point2D startStub = getStub(startPoint, startBounds, startDirection);
+        Point2D endStub = getStub(endPoint, endBounds, endDirection);
+
+        Rectangle2D searchArea = new Rectangle2D.Double();
+        searchArea.setFrameFromDiagonal(startStub, endStub);
+        searchArea.add(startBounds);
+        searchArea.add(endBounds);
+        searchArea.setFrame(searchArea.getX() - SEARCH_MARGIN, searchArea.getY() - SEARCH_MARGIN, searchArea.getWidth() + 2
+                * SEARCH_MARGIN, searchArea.getHeight() + 2 * SEARCH_MARGIN);
+
+        List<INode> obstacleNodes = new ArrayList<INode>();
+        List<Rectangle2D> obstacleBounds = new ArrayList<Rectangle2D>();
+        for (INode aNode : finder.findNodes(searchArea))
+        {
+            if (ignoredNodes.containsKey(aNode))
+            {
+                continue;
+            }
+            obstacleNodes.add(aNode);
+            obstacleBounds.add(finder.getBoundsOnGraph(aNode));
+        }
+
+        // Routes found with an exceeded time budget are searched again
+        if (previousRoute != null && previousRoute.isComplete
+                && previousRoute.isUpToDate(startPoint, endPoint, obstacleNodes, obstacleBounds))
+        {
+            return previousRoute;
+        }
+        List<Point2D> gridPath = search(startStub, startDirection, endStub, endDirection, obstacleBounds, searchArea);
+        if (gridPath == null)
+        {
+            return new Route(startPoint, endPoint, obstacleNodes, obstacleBounds, BentStyle.ORTHOGONAL.getPath(startPoint, endPoint),
+                    false);
+        }
+        ArrayList<Point2D> points = new ArrayList<Point2D>();
+        points.add(startPoint);
+        points.addAll(gridPath);
+        points.add(endPoint);
+        return new Route(startPoint, endPoint, obstacleNodes, obstacleBounds, removeUselessPoints(points), true);
+    }
+
+    /**
+     * A* search on the grid made of obstacle sides
+     *
+     * @param start first point, outside of the starting node
+     * @param startDirection direction taken when leaving the starting node
+     * @param end last point, outside of the ending node
+     * @param endDirection direction from the ending node to the last point
+     * @param obstacles node bounds
+     * @param searchArea area outside of which paths can't go
+     * @return grid points from start to end or null if no path has been found within the time budget
+     */
+    private List<Point2D> search(Point2D start, int startDirection, Point2D end, int endDirection, List<Rectangle2D> obstacles,
+            Rectangle2D searchArea)
+    {
+        long deadline = System.nanoTime() + this.timeBudget * 1000000L;
+
+        // Grid lines
+        TreeSet<Double> xSet = new TreeSet<Double>();
+        TreeSet<Double> ySet = new TreeSet<Double>();
+        xSet.add(start.getX());
+        xSet.add(end.getX());
+        xSet.add(searchArea.getMinX());
+        xSet.add(searchArea.getMaxX());
+        ySet.add(start.getY());
+        ySet.add(end.getY());
+        ySet.add(searchArea.getMinY());
+        ySet.add(searchArea.getMaxY());
+        List<Rectangle2D> paddedObstacles = new ArrayList<Rectangle2D>();
+        for (Rectangle2D anObstacle : obstacles)
+        {
+            Rectangle2D padded = new Rectangle2D.Double(anObstacle.getX() - MARGIN, anObstacle.getY() - MARGIN, anObstacle.getWidth()
+                    + 2 * MARGIN, anObstacle.getHeight() + 2 * MARGIN);
+            // An obstacle which overlaps the end points can't be avoided
+            if (isStrictlyInside(start, padded) || isStrictlyInside(end, padded))
+            {
+                continue;
+            }
+            paddedObstacles.add(padded);
+            addIfInside(xSet, padded.getMinX(), searchArea.getMinX(), searchArea.getMaxX());
+            addIfInside(xSet, padded.getMaxX(), searchArea.getMinX(), searchArea.getMaxX());
+            addIfInside(ySet, padded.getMinY(), searchArea.getMinY(), searchArea.getMaxY());
+            addIfInside(ySet, padded.getMaxY(), searchArea.getMinY(), searchArea.getMaxY());
+        }
+        double[] xs = toArray(xSet);
+        double[] ys = toArray(ySet);
+        int nx = xs.length;
+        int ny = ys.length;
+
+        // Segments between two neighbour grid points which cross an obstacle
+        boolean[] horizontalBlocked = new boolean[nx * ny];
+        boolean[] verticalBlocked = new boolean[nx * ny];
+        for (Rectangle2D anObstacle : paddedObstacles)
+        {
+            // Grid lines strictly inside the obstacle
+            int firstColumn = firstIndexAbove(xs, anObstacle.getMinX(), false);
+            int lastColumn = firstIndexAbove(xs, anObstacle.getMaxX(), true);
+            int firstRow = firstIndexAbove(ys, anObstacle.getMinY(), false);
+            int lastRow = firstIndexAbove(ys, anObstacle.getMaxY(), true);
+            for (int j = firstRow; j < lastRow; j++)
+            {
+                for (int i = Math.max(0, firstColumn - 1); i < lastColumn && i < nx - 1; i++)
+                {
+                    horizontalBlocked[j * nx + i] = true;
+                }
+            }
+            for (int i = firstColumn; i < lastColumn; i++)
+            {
+                for (int j = Math.max(0, firstRow - 1); j < lastRow && j < ny - 1; j++)
+                {
+                    verticalBlocked[j * nx + i] = true;
+                }
+            }
+        }
+
+        int startCell = Arrays.binarySearch(ys, start.getY()) * nx + Arrays.binarySearch(xs, start.getX());
+        int endCell = Arrays.binarySearch(ys, end.getY()) * nx + Arrays.binarySearch(xs, end.getX());
+        int arrivalDirection = OPPOSITE_DIRECTIONS[endDirection];
+
+        double[] costs = new double[nx * ny * 4];
+        Arrays.fill(costs, Double.POSITIVE_INFINITY);
+        int[] previousStates = new int[nx * ny * 4];
+        PriorityQueue<SearchState> openStates = new PriorityQueue<SearchState>();
+        int startState = startCell * 4 + startDirection;
+        costs[startState] = 0;
+        previousStates[startState] = -1;
+        openStates.add(new SearchState(startState, 0, distance(xs, ys, nx, startCell, endCell)));
+        int iteration = 0;
+        while (!openStates.isEmpty())
+        {
+            if ((++iteration & 127) == 0 && System.nanoTime() > deadline)
+            {
+                return null;
+            }
+            SearchState current = openStates.poll();
+            if (current.cost > costs[current.state])
+            {
+                continue;
+            }
+            int cell = current.state / 4;
+            int direction = current.state % 4;
+            if (cell == endCell)
+            {
+                return buildPath(current.state, previousStates, xs, ys, nx);
+            }
+            int i = cell % nx;
+            int j = cell / nx;
+            for (int newDirection = 0; newDirection < 4; newDirection++)
+            {
+                if (newDirection == OPPOSITE_DIRECTIONS[direction])
+                {
+                    continue;
+                }
+                int ni = i + DX[newDirection];
+                int nj = j + DY[newDirection];
+                if (ni < 0 || nj < 0 || ni >= nx || nj >= ny)
+                {
+                    continue;
+                }
+                boolean isBlocked;
+                if (DX[newDirection] != 0)
+                {
+                    isBlocked = horizontalBlocked[j * nx + Math.min(i, ni)];
+                }
+                else
+                {
+                    isBlocked = verticalBlocked[Math.min(j, nj) * nx + i];
+                }
+                if (isBlocked)
+                {
+                    continue;
+                }
+                int newCell = nj * nx + ni;
+                double newCost = current.cost + distance(xs, ys, nx, cell, newCell) + (newDirection == direction ? 0 : BEND_PENALTY);
+                if (newCell == endCell && newDirection != arrivalDirection)
+                {
+                    // The path would bend on the last point before entering the ending node
+                    newCost += BEND_PENALTY;
+                }
+                int newState = newCell * 4 + newDirection;
+                if (newCost < costs[newState])
+                {
+                    costs[newState] = newCost;
+                    previousStates[newState] = current.state;
+                    openStates.add(new SearchState(newState, newCost, newCost + distance(xs, ys, nx, newCell, endCell)));
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param endState
+     * @param previousStates
+     * @param xs
+     * @param ys
+     * @param nx
+     * @return grid points from the start state to the given state
+     */
+    private static List<Point2D> buildPath(int endState, int[] previousStates, double[] xs, double[] ys, int nx)
+    {
+        List<Point2D> path = new ArrayList<Point2D>();
+        for (int aState = endState; aState != -1; aState = previousStates[aState])
+        {
+            int cell = aState / 4;
+            path.add(new Point2D.Double(xs[cell % nx], ys[cell / nx]));
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    /**
+     * @param points
+     * @return the same path without duplicated points and points in the middle of a straight segment
+     */
+    private static ArrayList<Point2D> removeUselessPoints(List<Point2D> points)
+    {
+        ArrayList<Point2D> result = new ArrayList<Point2D>();
+        for (Point2D aPoint : points)
+        {
+            int size = result.size();
+            if (size > 0 && result.get(size - 1).equals(aPoint))
+            {
+                continue;
+            }
+            if (size > 1)
+            {
+                Point2D p1 = result.get(size - 2);
+                Point2D p2 = result.get(size - 1);
+                boolean isAligned = (p1.getX() == p2.getX() && p2.getX() == aPoint.getX())
+                        || (p1.getY() == p2.getY() && p2.getY() == aPoint.getY());
+                if (isAligned)
+                {
+                    result.remove(size - 1);
+                }
+            }
+            result.add(aPoint);
+        }
+        return result;
+    }
+
+    /**
+     * @param p a connection point
+     * @param bounds bounds of the node
+     * @return the direction to take to leave the node, i.e. towards the nearest side
+     */
+    private static int getExitDirection(Point2D p, Rectangle2D bounds)
+    {
+        double[] distances =
+        {
+                Math.abs(bounds.getMaxX() - p.getX()),
+                Math.abs(p.getX() - bounds.getMinX()),
+                Math.abs(bounds.getMaxY() - p.getY()),
+                Math.abs(p.getY() - bounds.getMinY())
+        };
+        int result = 0;
+        for (int i = 1; i < distances.length; i++)
+        {
+            if (distances[i] < distances[result])
+            {
+                result = i;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param p a connection point
+     * @param bounds bounds of the node
+     * @param direction exit direction
+     * @return the point where the path leaves the margin around the node
+     */
+    private static Point2D getStub(Point2D p, Rectangle2D bounds, int direction)
+    {
+        switch (direction)
+        {
+        case EAST:
+            return new Point2D.Double(bounds.getMaxX() + MARGIN, p.getY());
+        case WEST:
+            return new Point2D.Double(bounds.getMinX() - MARGIN, p.getY());
+        case SOUTH:
+            return new Point2D.Double(p.getX(), bounds.getMaxY() + MARGIN);
+        default:
+            return new Point2D.Double(p.getX(), bounds.getMinY() - MARGIN);
+        }
+    }
+
+    /**
+     * @param node
+     * @return node bounds translated to graph coordinates
+     */
+    static Rectangle2D getBoundsOnGraph(INode node)
+    {
+        Point2D locationOnGraph = node.getLocationOnGraph();
+        Rectangle2D bounds = node.getBounds();
+        return new Rectangle2D.Double(locationOnGraph.getX(), locationOnGraph.getY(), bounds.getWidth(), bounds.getHeight());
+    }
+
+    private static boolean isStrictlyInside(Point2D p, Rectangle2D r)
+    {
+        return p.getX() > r.getMinX() && p.getX() < r.getMaxX() && p.getY() > r.getMinY() && p.getY() < r.getMaxY();
+    }
+
+    private static void addIfInside(TreeSet<Double> values, double value, double min, double max)
+    {
+        if (value > min && value < max)
+        {
+            values.add(value);
+        }
+    }
+
+    private static double[] toArray(TreeSet<Double> values)
+    {
+        double[] result = new double[values.size()];
+        int i = 0;
+        for (Double aValue : values)
+        {
+            result[i++] = aValue.doubleValue();
+        }
+        return result;
+    }
+
+    /**
+     * @param values sorted values
+     * @param value
+     * @param isInclusive
+     * @return index of the first value greater than (or equal to if inclusive) the given one
+     */
+    private static int firstIndexAbove(double[] values, double value, boolean isInclusive)
+    {
+        int low = 0;
+        int high = values.length;
+        while (low < high)
+        {
+            int middle = (low + high) >>> 1;
+            if (values[middle] > value || (isInclusive && values[middle] == value))
+            {
+                high = middle;
+            }
+            else
+            {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    private static double distance(double[] xs, double[] ys, int nx, int cell1, int cell2)
+    {
+        return Math.abs(xs[cell1 % nx] - xs[cell2 % nx]) + Math.abs(ys[cell1 / nx] - ys[cell2 / nx]);
+    }
+
+    /**
+     * Gives the nodes to avoid
+     */
+    interface ObstacleFinder
+    {
+        /**
+         * @param area
+         * @return nodes intersecting the given area, always in the same order
+         */
+        List<INode> findNodes(Rectangle2D area);
+
+        /**
+         * @param node
+         * @return node bounds in graph coordinates
+         */
+        Rectangle2D getBoundsOnGraph(INode node);
+    }
+
+    /**
+     * A path computed for an edge and what it depends on
+     */
+    public static class Route
+    {
+        private Route(Point2D startPoint, Point2D endPoint, List<INode> obstacleNodes, List<Rectangle2D> obstacleBounds,
+                ArrayList<Point2D> points, boolean isComplete)
+        {
+            this.startPoint = new Point2D.Double(startPoint.getX(), startPoint.getY());
+            this.endPoint = new Point2D.Double(endPoint.getX(), endPoint.getY());
+            this.obstacleNodes = obstacleNodes;
+            this.obstacleBounds = obstacleBounds;
+            this.points = points;
+            this.isComplete = isComplete;
+        }
+
+        /**
+         * @return the points of the path (a copy)
+         */
+        public ArrayList<Point2D> getPoints()
+        {
+            ArrayList<Point2D> copy = new ArrayList<Point2D>(this.points.size());
+            for (Point2D aPoint : this.points)
+            {
+                copy.add(new Point2D.Double(aPoint.getX(), aPoint.getY()));
+            }
+            return copy;
+        }
+
+        /**
+         * @return false if the search has been stopped by the time budget (in that case, points form a simple path which doesn't
+         *         avoid nodes)
+         */
+        public boolean isComplete()
+        {
+            return this.isComplete;
+        }
+
+        private boolean isUpToDate(Point2D newStartPoint, Point2D newEndPoint, List<INode> newObstacleNodes,
+                List<Rectangle2D> newObstacleBounds)
+        {
+            if (!this.startPoint.equals(newStartPoint) || !this.endPoint.equals(newEndPoint))
+            {
+                return false;
+            }
+            if (this.obstacleNodes.size() != newObstacleNodes.size())
+            {
+                return false;
+            }
+            for (int i = 0; i < this.obstacleNodes.size(); i++)
+            {
+                if (this.obstacleNodes.get(i) != newObstacleNodes.get(i) || !this.obstacleBounds.get(i).equals(newObstacleBounds.get(i)))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private Point2D startPoint;
+        private Point2D endPoint;
+        private List<INode> obstacleNodes;
+        private List<Rectangle2D> obstacleBounds;
+        private ArrayList<Point2D> points;
+        private boolean isComplete;
+    }
+
+    /**
+     * A grid point reached with a direction, ordered by estimated total cost
+     */
+    private static class SearchState implements Comparable<SearchState>
+    {
+        SearchState(int state, double cost, double estimate)
+        {
+            this.state = state;
+            this.cost = cost;
+            this.estimate = estimate;
+        }
+
+        public int compareTo(SearchState other)
+        {
+            return Double.compare(this.estimate, other.estimate);
+        }
+
+        private int state;
+        private double cost;
+        private double estimate;
+    }
+
+    /** Maximum time spent to search a path, in milliseconds */
+    private long timeBudget;
+
+    /** Default time budget, in milliseconds */
+    public static final long DEFAULT_TIME_BUDGET = 10;
+
+    /** Distance kept between paths and nodes */
+    private static final double MARGIN = 10;
+
+    /** Distance around the end nodes inside which obstacles are considered */
+    private static final double SEARCH_MARGIN = 100;
+
+    /** Cost of a bend, as a length */
+    private static final double BEND_PENALTY = 20;
+
+    private static final int EAST = 0;
+    private static final int WEST = 1;
+    private static final int SOUTH = 2;
+    private static final int NORTH = 3;
+    private static final int[] DX =
+    {
+            1,
+            -1,
+            0,
+            0
+    };
+    private static final int[] DY =
+    {
+            0,
+            0,
+            1,
+            -1
+    };
+    private static final int[] OPPOSITE_DIRECTIONS =
+    {
+            WEST,
+            EAST,
+            NORTH,
+            SOUTH
+    };
+}
@@ -22,6 +22,7 @@
 package com.horstmann.violet.product.diagram.abstracts.edge;
 
 import java.awt.Dimension;
+import java.awt.Font;
 import java.awt.Graphics2D;
 import java.awt.Shape;
 import java.awt.Stroke;
@@ -36,6 +37,8 @@ import java.util.List;
 import javax.swing.JLabel;
 
 import com.horstmann.violet.product.diagram.abstracts.Direction;
+import com.horstmann.violet.product.diagram.abstracts.IGraph;
+import com.horstmann.violet.product.diagram.abstracts.LevelOfDetail;
 import com.horstmann.violet.product.diagram.abstracts.node.INode;
 import com.horstmann.violet.product.diagram.abstracts.property.ArrowHead;
 import com.horstmann.violet.product.diagram.abstracts.property.BentStyle;
@@ -79,6 +82,7 @@ public abstract class SegmentedLineEdge extends ShapeEdge
     public void setBentStyle(BentStyle newValue)
     {
         this.bentStyle = newValue;
+        invalidateGeometry();
     }
 
     /**
@@ -95,6 +99,13 @@ public abstract class SegmentedLineEdge extends ShapeEdge
         return bentStyle;
     }
 
+    @Override
+    public boolean isGeometryLocal()
+    {
+        // Routed paths avoid all the nodes around
+        return !BentStyle.ORTHOGONAL.equals(getBentStyle());
+    }
+
     /**
      * Sets the line style property.
      * 
@@ -127,6 +138,7 @@ public abstract class SegmentedLineEdge extends ShapeEdge
     public void setStartArrowHead(ArrowHead newValue)
     {
         this.startArrowHead = newValue;
+        invalidateGeometry();
     }
 
     /**
@@ -151,6 +163,7 @@ public abstract class SegmentedLineEdge extends ShapeEdge
     public void setEndArrowHead(ArrowHead newValue)
     {
         this.endArrowHead = newValue;
+        invalidateGeometry();
     }
 
     /**
@@ -243,35 +256,11 @@ public abstract class SegmentedLineEdge extends ShapeEdge
         getStartArrowHead().draw(g2, (Point2D) points.get(1), (Point2D) points.get(0));
         getEndArrowHead().draw(g2, (Point2D) points.get(points.size() - 2), (Point2D) points.get(points.size() - 1));
 
-        drawString(g2, (Point2D) points.get(1), (Point2D) points.get(0), getStartArrowHead(), startLabel, false);
-        drawString(g2, (Point2D) points.get(points.size() / 2 - 1), (Point2D) points.get(points.size() / 2), null, middleLabel,
-                true);
-        drawString(g2, (Point2D) points.get(points.size() - 2), (Point2D) points.get(points.size() - 1), getEndArrowHead(),
-                endLabel, false);
-    }
-
-    /**
-     * Draws a string.
-     * 
-     * @param g2 the graphics context
-     * @param p an endpoint of the segment along which to draw the string
-     * @param q the other endpoint of the segment along which to draw the string
-     * @param s the string to draw
-     * @param center true if the string should be centered along the segment
-     */
-    private void drawString(Graphics2D g2, Point2D p, Point2D q, ArrowHead arrow, String s, boolean center)
-    {
-        if (s == null || s.length() == 0) return;
-        label.setText("<html>" + s + "</html>");
-        label.setFont(g2.getFont());
-        Dimension d = label.getPreferredSize();
-        label.setBounds(0, 0, d.width, d.height);
-
-        Rectangle2D b = getStringBounds(p, q, arrow, s, center);
-
-        g2.translate(b.getX(), b.getY());
-        label.paint(g2);
-        g2.translate(-b.getX(), -b.getY());
+        getStartLabelLayout().draw(g2, (Point2D) points.get(1), (Point2D) points.get(0), getStartArrowHead(), startLabel, false);
+        getMiddleLabelLayout().draw(g2, (Point2D) points.get(points.size() / 2 - 1), (Point2D) points.get(points.size() / 2), null,
+                middleLabel, true);
+        getEndLabelLayout().draw(g2, (Point2D) points.get(points.size() - 2), (Point2D) points.get(points.size() - 1),
+                getEndArrowHead(), endLabel, false);
     }
 
     /**
@@ -326,40 +315,17 @@ public abstract class SegmentedLineEdge extends ShapeEdge
         return new Point2D.Double(attach.getX() + xoff, attach.getY() + yoff);
     }
 
-    /**
-     * Computes the extent of a string that is drawn along a line segment.
-     * 
-     * @param g2 the graphics context
-     * @param p an endpoint of the segment along which to draw the string
-     * @param q the other endpoint of the segment along which to draw the string
-     * @param s the string to draw
-     * @param center true if the string should be centered along the segment
-     * @return the rectangle enclosing the string
-     */
-    private static Rectangle2D getStringBounds(Point2D p, Point2D q, ArrowHead arrow, String s, boolean center)
-    {
-        BufferedImage dummy = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
-        // need a dummy image to get a Graphics to
-        // measure the size
-        Graphics2D g2 = (Graphics2D) dummy.getGraphics();
-        if (s == null || s.equals("")) return new Rectangle2D.Double(q.getX(), q.getY(), 0, 0);
-        label.setText("<html>" + s + "</html>");
-        label.setFont(g2.getFont());
-        Dimension d = label.getPreferredSize();
-        Point2D a = getAttachmentPoint(p, q, arrow, d, center);
-        return new Rectangle2D.Double(a.getX(), a.getY(), d.getWidth(), d.getHeight());
-    }
-
     @Override
     public Rectangle2D getBounds()
     {
         ArrayList<Point2D> points = getPoints();
         Rectangle2D r = super.getBounds();
-        r.add(getStringBounds((Point2D) points.get(1), (Point2D) points.get(0), getStartArrowHead(), startLabel, false));
-        r.add(getStringBounds((Point2D) points.get(points.size() / 2 - 1), (Point2D) points.get(points.size() / 2), null,
-                middleLabel, true));
-        r.add(getStringBounds((Point2D) points.get(points.size() - 2), (Point2D) points.get(points.size() - 1), getEndArrowHead(),
-                endLabel, false));
+        r.add(getStartLabelLayout().getBounds((Point2D) points.get(1), (Point2D) points.get(0), getStartArrowHead(), startLabel,
+                false));
+        r.add(getMiddleLabelLayout().getBounds((Point2D) points.get(points.size() / 2 - 1), (Point2D) points.get(points.size() / 2),
+                null, middleLabel, true));
+        r.add(getEndLabelLayout().getBounds((Point2D) points.get(points.size() - 2), (Point2D) points.get(points.size() - 1),
+                getEndArrowHead(), endLabel, false));
         return r;
     }
 
@@ -395,11 +361,78 @@ public abstract class SegmentedLineEdge extends ShapeEdge
      * @return an array list of Point2D objects, containing the corner points
      */
     public ArrayList<Point2D> getPoints()
+    {
+        boolean isCacheable = checkGeometryCache();
+        if (isCacheable && this.points != null)
+        {
+            return copyPoints(this.points);
+        }
+        ArrayList<Point2D> result = computePoints();
+        if (isCacheable)
+        {
+            this.points = copyPoints(result);
+        }
+        return result;
+    }
+
+    /**
+     * @param points
+     * @return a copy of the given points, so that the cached ones can't be modified
+     */
+    private static ArrayList<Point2D> copyPoints(List<Point2D> points)
+    {
+        ArrayList<Point2D> copy = new ArrayList<Point2D>(points.size());
+        for (Point2D aPoint : points)
+        {
+            copy.add(new Point2D.Double(aPoint.getX(), aPoint.getY()));
+        }
+        return copy;
+    }
+
+    @Override
+    protected void clearGeometryCache()
+    {
+        super.clearGeometryCache();
+        this.points = null;
+    }
+
+    /**
+     * Sets the route computed in background for the ORTHOGONAL bent style. It is used as long as it matches the diagram.
+     * 
+     * @param route
+     */
+    void setOrthogonalRoute(OrthogonalEdgeRouter.Route route)
+    {
+        this.orthogonalRoute = route;
+        invalidateGeometry();
+    }
+
+    /**
+     * @return the corner points, computed from the bent style and the connection points
+     */
+    private ArrayList<Point2D> computePoints()
     {
         Line2D connectionPoints = getConnectionPoints();
         Point2D startingPoint = connectionPoints.getP1();
         Point2D endingPoint = connectionPoints.getP2();
 
+        // Path avoiding nodes
+        if (BentStyle.ORTHOGONAL.equals(getBentStyle()))
+        {
+            IGraph graph = getStart().getGraph();
+            if (graph == null)
+            {
+                return BentStyle.ORTHOGONAL.getPath(startingPoint, endingPoint);
+            }
+            if (this.orthogonalRoute == null && EdgeRoutingService.getInstance().isRouting(graph))
+            {
+                // Don't search the route here as it will be given soon
+                return BentStyle.ORTHOGONAL.getPath(startingPoint, endingPoint);
+            }
+            this.orthogonalRoute = ROUTER.route(graph, getStart(), getEnd(), startingPoint, endingPoint, this.orthogonalRoute);
+            return this.orthogonalRoute.getPoints();
+        }
+
         // Automatic based path
         if (!BentStyle.AUTO.equals(getBentStyle()))
         {
@@ -444,6 +477,11 @@ public abstract class SegmentedLineEdge extends ShapeEdge
     public Direction getDirection(INode node)
     {
         Direction straightDirection = super.getDirection(node);
+        if (BentStyle.ORTHOGONAL.equals(getBentStyle()))
+        {
+            // Routed paths leave nodes perpendicularly to their sides
+            return straightDirection.getNearestCardinalDirection();
+        }
         double x = straightDirection.getX();
         double y = straightDirection.getY();
         if (node.equals(getStart()))
@@ -471,6 +509,164 @@ public abstract class SegmentedLineEdge extends ShapeEdge
         return straightDirection;
     }
 
+    @Override
+    public SegmentedLineEdge clone()
+    {
+        SegmentedLineEdge cloned = (SegmentedLineEdge) super.clone();
+        // Label layouts hold a JLabel which can't be shared
+        cloned.startLabelLayout = null;
+        cloned.middleLabelLayout = null;
+        cloned.endLabelLayout = null;
+        return cloned;
+    }
+
+    private LabelLayout getStartLabelLayout()
+    {
+        if (this.startLabelLayout == null)
+        {
+            this.startLabelLayout = new LabelLayout();
+        }
+        return this.startLabelLayout;
+    }
+
+    private LabelLayout getMiddleLabelLayout()
+    {
+        if (this.middleLabelLayout == null)
+        {
+            this.middleLabelLayout = new LabelLayout();
+        }
+        return this.middleLabelLayout;
+    }
+
+    private LabelLayout getEndLabelLayout()
+    {
+        if (this.endLabelLayout == null)
+        {
+            this.endLabelLayout = new LabelLayout();
+        }
+        return this.endLabelLayout;
+    }
+
+    /**
+     * Layout of a label drawn along a segment. Each label has its own JLabels, so edges don't share any mutable state. Swing parses
+     * the HTML text again each time the text or the font of a JLabel change, so sizes and bounds are kept until the label text,
+     * the font or the segment change. Labels are measured with the default font and painted with the graphics context's one, so
+     * one JLabel is used for each and neither of them is changed by the other.
+     */
+    private static class LabelLayout
+    {
+        /**
+         * Computes the extent of a string that is drawn along a line segment. The string is measured with the default font.
+         * 
+         * @param p an endpoint of the segment along which to draw the string
+         * @param q the other endpoint of the segment along which to draw the string
+         * @param arrow the arrow head drawn at q (or null)
+         * @param s the string to draw
+         * @param center true if the string should be centered along the segment
+         * @return the rectangle enclosing the string
+         */
+        Rectangle2D getBounds(Point2D p, Point2D q, ArrowHead arrow, String s, boolean center)
+        {
+            if (s == null || s.equals("")) return new Rectangle2D.Double(q.getX(), q.getY(), 0, 0);
+            if (!s.equals(this.measuredText))
+            {
+                this.measuringLabel = getLabel(this.measuringLabel, s, getDefaultFont());
+                this.measuredSize = this.measuringLabel.getPreferredSize();
+                this.measuredText = s;
+                this.bounds = null;
+            }
+            if (this.bounds == null || !p.equals(this.boundsP) || !q.equals(this.boundsQ) || arrow != this.boundsArrow)
+            {
+                Point2D a = getAttachmentPoint(p, q, arrow, this.measuredSize, center);
+                this.bounds = new Rectangle2D.Double(a.getX(), a.getY(), this.measuredSize.getWidth(), this.measuredSize.getHeight());
+                this.boundsP = new Point2D.Double(p.getX(), p.getY());
+                this.boundsQ = new Point2D.Double(q.getX(), q.getY());
+                this.boundsArrow = arrow;
+            }
+            return (Rectangle2D) this.bounds.clone();
+        }
+
+        /**
+         * Draws a string, or a bar standing for it when the diagram is zoomed out.
+         * 
+         * @param g2 the graphics context
+         * @param p an endpoint of the segment along which to draw the string
+         * @param q the other endpoint of the segment along which to draw the string
+         * @param arrow the arrow head drawn at q (or null)
+         * @param s the string to draw
+         * @param center true if the string should be centered along the segment
+         */
+        void draw(Graphics2D g2, Point2D p, Point2D q, ArrowHead arrow, String s, boolean center)
+        {
+            if (s == null || s.length() == 0) return;
+            LevelOfDetail levelOfDetail = LevelOfDetail.get(g2);
+            if (levelOfDetail.isTextHidden()) return;
+            Rectangle2D b = getBounds(p, q, arrow, s, center);
+            if (levelOfDetail.isTextGreeked())
+            {
+                LevelOfDetail.drawGreekedText(g2, b, 1);
+                return;
+            }
+            Font font = g2.getFont();
+            if (!s.equals(this.paintedText) || !font.equals(this.paintedFont))
+            {
+                this.paintingLabel = getLabel(this.paintingLabel, s, font);
+                this.paintedSize = this.paintingLabel.getPreferredSize();
+                this.paintedText = s;
+                this.paintedFont = font;
+            }
+            this.paintingLabel.setBounds(0, 0, this.paintedSize.width, this.paintedSize.height);
+            g2.translate(b.getX(), b.getY());
+            this.paintingLabel.paint(g2);
+            g2.translate(-b.getX(), -b.getY());
+        }
+
+        /**
+         * @param label a label (or null to create one)
+         * @param s
+         * @param font
+         * @return the label, displaying the given string with the given font
+         */
+        private static JLabel getLabel(JLabel label, String s, Font font)
+        {
+            if (label == null)
+            {
+                label = new JLabel();
+            }
+            String htmlText = "<html>" + s + "</html>";
+            if (!htmlText.equals(label.getText())) label.setText(htmlText);
+            if (!font.equals(label.getFont())) label.setFont(font);
+            return label;
+        }
+
+        private JLabel measuringLabel;
+        private JLabel paintingLabel;
+        private String measuredText;
+        private Dimension measuredSize;
+        private String paintedText;
+        private Font paintedFont;
+        private Dimension paintedSize;
+        private Point2D boundsP;
+        private Point2D boundsQ;
+        private ArrowHead boundsArrow;
+        private Rectangle2D bounds;
+    }
+
+    /**
+     * @return the font of a new graphics context, used to measure labels
+     */
+    private static Font getDefaultFont()
+    {
+        if (defaultFont == null)
+        {
+            BufferedImage dummy = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g2 = dummy.createGraphics();
+            defaultFont = g2.getFont();
+            g2.dispose();
+        }
+        return defaultFont;
+    }
+
     private transient LineStyle lineStyle;
     private transient ArrowHead startArrowHead;
     private transient ArrowHead endArrowHead;
@@ -478,6 +674,17 @@ public abstract class SegmentedLineEdge extends ShapeEdge
     private String startLabel;
     private String middleLabel;
     private String endLabel;
-
-    private static JLabel label = new JLabel();
+    /** Cached corner points */
+    private transient ArrayList<Point2D> points;
+    /** Last path computed by the router when the bent style is ORTHOGONAL */
+    private transient OrthogonalEdgeRouter.Route orthogonalRoute;
+    private transient LabelLayout startLabelLayout;
+    private transient LabelLayout middleLabelLayout;
+    private transient LabelLayout endLabelLayout;
+
+    /** Router used by edges with the ORTHOGONAL bent style (it has no state) */
+    private static final OrthogonalEdgeRouter ROUTER = new OrthogonalEdgeRouter();
+
+    /** Fonts are immutable so this one can be shared */
+    private static Font defaultFont;
 }
@@ -44,21 +44,63 @@ public abstract class ShapeEdge extends AbstractEdge
     @Override
     public Rectangle2D getBounds()
     {
-        return getShape().getBounds();
+        boolean isCacheable = checkGeometryCache();
+        if (isCacheable && this.shapeBounds != null)
+        {
+            return (Rectangle2D) this.shapeBounds.clone();
+        }
+        Rectangle2D result = getShape().getBounds();
+        if (isCacheable)
+        {
+            this.shapeBounds = (Rectangle2D) result.clone();
+        }
+        return result;
     }
 
     public boolean contains(Point2D aPoint)
     {
-        final double MAX_DIST = 3;
-
         // the end points may contain small nodes, so don't
         // match them
         Line2D conn = getConnectionPoints();
         if (aPoint.distance(conn.getP1()) <= MAX_DIST || aPoint.distance(conn.getP2()) <= MAX_DIST) return false;
 
-        Shape p = getShape();
-        BasicStroke fatStroke = new BasicStroke((float) (2 * MAX_DIST));
-        Shape fatPath = fatStroke.createStrokedShape(p);
-        return fatPath.contains(aPoint);
+        return getHitShape().contains(aPoint);
+    }
+
+    /**
+     * @return the shape stroked with a fat stroke, used to know if a point is on this edge
+     */
+    private Shape getHitShape()
+    {
+        boolean isCacheable = checkGeometryCache();
+        if (isCacheable && this.hitShape != null)
+        {
+            return this.hitShape;
+        }
+        Shape fatPath = FAT_STROKE.createStrokedShape(getShape());
+        if (isCacheable)
+        {
+            this.hitShape = fatPath;
+        }
+        return fatPath;
+    }
+
+    @Override
+    protected void clearGeometryCache()
+    {
+        super.clearGeometryCache();
+        this.shapeBounds = null;
+        this.hitShape = null;
     }
+
+    /** Cached bounds of the shape */
+    private transient Rectangle2D shapeBounds;
+
+    /** Cached shape stroked with FAT_STROKE (never given to callers so it can't be modified) */
+    private transient Shape hitShape;
+
+    /** Maximum distance between a point and the shape to consider that the point is on this edge */
+    private static final double MAX_DIST = 3;
+
+    private static final BasicStroke FAT_STROKE = new BasicStroke((float) (2 * MAX_DIST));
 }
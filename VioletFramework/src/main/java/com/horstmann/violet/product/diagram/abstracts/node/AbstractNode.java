@@ -21,6 +21,8 @@
 
 package com.horstmann.violet.product.diagram.abstracts.node;
 
+import java.awt.Color;
+import java.awt.Graphics2D;
 import java.awt.Shape;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
@@ -28,6 +30,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import com.horstmann.violet.product.diagram.abstracts.AbstractGraph;
+import com.horstmann.violet.product.diagram.abstracts.IColorable;
 import com.horstmann.violet.product.diagram.abstracts.IGraph;
 import com.horstmann.violet.product.diagram.abstracts.Id;
 import com.horstmann.violet.product.diagram.abstracts.edge.IEdge;
@@ -52,18 +55,8 @@ public abstract class AbstractNode implements INode
      */
     protected List<IEdge> getConnectedEdges()
     {
-        List<IEdge> connectedEdges = new ArrayList<IEdge>();
         IGraph currentGraph = getGraph();
-        for (IEdge anEdge : currentGraph.getAllEdges())
-        {
-            INode start = anEdge.getStart();
-            INode end = anEdge.getEnd();
-            if (this.equals(start) || this.equals(end))
-            {
-                connectedEdges.add(anEdge);
-            }
-        }
-        return connectedEdges;
+        return new ArrayList<IEdge>(currentGraph.getConnectedEdges(this));
     }
 
     @Override
@@ -93,7 +86,13 @@ public abstract class AbstractNode implements INode
     @Override
     public void setLocation(Point2D aPoint)
     {
+        Point2D oldLocation = this.location;
         this.location = aPoint;
+        boolean isMoved = (oldLocation == null || !oldLocation.equals(aPoint));
+        if (isMoved && this.graph instanceof AbstractGraph)
+        {
+            ((AbstractGraph) this.graph).notifyNodeMoved(this);
+        }
     }
 
     @Override
@@ -157,6 +156,10 @@ public abstract class AbstractNode implements INode
     {
         if (node.getParent() != this) return;
         getChildren().remove(node);
+        if (this.graph instanceof AbstractGraph)
+        {
+            ((AbstractGraph) this.graph).notifyNodeRemoved(node);
+        }
     }
 
     @Override
@@ -194,9 +197,36 @@ public abstract class AbstractNode implements INode
         getChildren().add(index, node);
         node.setParent(this);
         node.setGraph(getGraph());
+        if (this.graph instanceof AbstractGraph)
+        {
+            ((AbstractGraph) this.graph).notifyNodeAdded(node);
+        }
         return true;
     }
 
+    /**
+     * Draws the node bounds filled with its background color
+     * 
+     * @param g2 the graphics context
+     */
+    public void drawOutline(Graphics2D g2)
+    {
+        Point2D locationOnGraph = getLocationOnGraph();
+        Rectangle2D bounds = getBounds();
+        Rectangle2D outline = new Rectangle2D.Double(locationOnGraph.getX(), locationOnGraph.getY(), bounds.getWidth(), bounds
+                .getHeight());
+        Color oldColor = g2.getColor();
+        if (this instanceof IColorable)
+        {
+            IColorable colorable = (IColorable) this;
+            g2.setColor(colorable.getBackgroundColor());
+            g2.fill(outline);
+            g2.setColor(colorable.getBorderColor());
+        }
+        g2.draw(outline);
+        g2.setColor(oldColor);
+    }
+
     /**
      * @return the shape to be used for computing the drop shadow
      */
@@ -269,7 +299,12 @@ public abstract class AbstractNode implements INode
     @Override
     public void setZ(int z)
     {
+        boolean isChanged = (this.z != z);
         this.z = z;
+        if (isChanged && this.graph instanceof AbstractGraph)
+        {
+            ((AbstractGraph) this.graph).notifyDrawOrderChanged();
+        }
     }
 
     /**
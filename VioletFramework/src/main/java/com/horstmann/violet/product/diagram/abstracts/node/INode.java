@@ -173,6 +173,14 @@ public interface INode extends Serializable, Cloneable, IIdentifiable
      */
     void draw(Graphics2D g2);
 
+    /**
+     * Draws a simplified version of the node, used when the diagram is zoomed out too much to see its content (see LevelOfDetail).
+     * Unlike draw(), the node is drawn at its location on graph, whatever its parent is.
+     * 
+     * @param g2 the graphics context
+     */
+    void drawOutline(Graphics2D g2);
+
 
     /**
         
@@ -36,6 +36,7 @@ import javax.swing.UIManager;
 import com.horstmann.violet.framework.theme.ThemeManager;
 import com.horstmann.violet.product.diagram.abstracts.Direction;
 import com.horstmann.violet.product.diagram.abstracts.IColorable;
+import com.horstmann.violet.product.diagram.abstracts.LevelOfDetail;
 import com.horstmann.violet.product.diagram.abstracts.edge.IEdge;
 
 /**
@@ -154,10 +155,13 @@ public abstract class RectangularNode extends AbstractNode implements IColorable
     {
         Shape shape = getShape();
         Color oldColor = g2.getColor();
-        g2.translate(SHADOW_GAP, SHADOW_GAP);
-        g2.setColor(SHADOW_COLOR);
-        g2.fill(shape);
-        g2.translate(-SHADOW_GAP, -SHADOW_GAP);
+        if (LevelOfDetail.get(g2).isShadowVisible())
+        {
+            g2.translate(SHADOW_GAP, SHADOW_GAP);
+            g2.setColor(SHADOW_COLOR);
+            g2.fill(shape);
+            g2.translate(-SHADOW_GAP, -SHADOW_GAP);
+        }
         g2.setColor(backgroundColor);
         g2.fill(shape);
         g2.setColor(oldColor);
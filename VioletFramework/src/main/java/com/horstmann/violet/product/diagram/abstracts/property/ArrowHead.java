@@ -27,6 +27,7 @@ import java.awt.geom.GeneralPath;
 import java.awt.geom.Point2D;
 
 import com.horstmann.violet.framework.util.SerializableEnumeration;
+import com.horstmann.violet.product.diagram.abstracts.LevelOfDetail;
 
 /**
  * This class defines arrow heads of various shapes.
@@ -35,7 +36,7 @@ public class ArrowHead extends SerializableEnumeration
 {
 
     /**
-     * Draws the arrowhead.
+     * Draws the arrowhead (unless the diagram is zoomed out too much, see LevelOfDetail).
      * 
      * @param g2 the graphics context
      * @param p a point on the axis of the arrow head
@@ -43,6 +44,10 @@ public class ArrowHead extends SerializableEnumeration
      */
     public void draw(Graphics2D g2, Point2D p, Point2D q)
     {
+        if (!LevelOfDetail.get(g2).isArrowHeadVisible())
+        {
+            return;
+        }
         GeneralPath path = getPath(p, q);
         Color oldColor = g2.getColor();
         if (this != V && this != HALF_V && this != NONE)
@@ -80,6 +80,7 @@ public class BentStyle extends SerializableEnumeration
         else if (this == VH) r = getVHPath(startingPoint, endingPoint);
         else if (this == HVH) r = getHVHPath(startingPoint, endingPoint);
         else if (this == VHV) r = getVHVPath(startingPoint, endingPoint);
+        else if (this == ORTHOGONAL) r = getHVHPath(startingPoint, endingPoint);
         if (r != null) return r;
 
         // Try to inverse path
@@ -89,6 +90,7 @@ public class BentStyle extends SerializableEnumeration
         else if (this == HV) r = getVHPath(startingPoint, endingPoint);
         else if (this == VH) r = getHVPath(startingPoint, endingPoint);
         else if (this == FREE) r = getFreePath(connectionPoints);
+        else if (this == ORTHOGONAL) r = getVHVPath(startingPoint, endingPoint);
         if (r != null) return r;
 
         // Return default path
@@ -300,5 +302,9 @@ public class BentStyle extends SerializableEnumeration
     public static final BentStyle VHV = new BentStyle();
     /** Automatic bent style */
     public static final BentStyle AUTO = new BentStyle();
+    /**
+     * Orthogonal path avoiding nodes (see OrthogonalEdgeRouter). Without nodes to avoid, it is an HVH or a VHV path.
+     */
+    public static final BentStyle ORTHOGONAL = new BentStyle();
 
 }
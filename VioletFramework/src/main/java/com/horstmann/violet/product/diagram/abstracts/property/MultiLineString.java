@@ -22,7 +22,9 @@
 package com.horstmann.violet.product.diagram.abstracts.property;
 
 import java.awt.Dimension;
+import java.awt.Font;
 import java.awt.Graphics2D;
+import java.awt.font.FontRenderContext;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.io.Serializable;
@@ -32,6 +34,7 @@ import java.util.StringTokenizer;
 
 import javax.swing.JLabel;
 
+import com.horstmann.violet.product.diagram.abstracts.LevelOfDetail;
 import com.thoughtworks.xstream.annotations.XStreamAsAttribute;
 
 /**
@@ -58,8 +61,7 @@ public class MultiLineString implements Serializable, Cloneable
     public void setText(String newValue)
     {
         text = newValue;
-        setLabelText();
-        isBoundsDirty = true;
+        labelText = null;
     }
 
     /**
@@ -80,8 +82,7 @@ public class MultiLineString implements Serializable, Cloneable
     public void setJustification(int newValue)
     {
         justification = newValue;
-        setLabelText();
-        isBoundsDirty = true;
+        labelText = null;
     }
 
     /**
@@ -112,8 +113,7 @@ public class MultiLineString implements Serializable, Cloneable
     public void setUnderlined(boolean newValue)
     {
         underlined = newValue;
-        setLabelText();
-        isBoundsDirty = true;
+        labelText = null;
     }
 
     /**
@@ -124,8 +124,7 @@ public class MultiLineString implements Serializable, Cloneable
     public void setSize(int newValue)
     {
         size = newValue;
-        setLabelText();
-        isBoundsDirty = true;
+        labelText = null;
     }
 
     /**
@@ -143,8 +142,17 @@ public class MultiLineString implements Serializable, Cloneable
         return text.replace('\n', '|');
     }
 
-    private void setLabelText()
+    /**
+     * Builds the HTML text displayed by the label. It is only computed again when the text or its style change.
+     * 
+     * @return the HTML text
+     */
+    private String getLabelText()
     {
+        if (this.labelText != null)
+        {
+            return this.labelText;
+        }
         StringBuffer prefix = new StringBuffer();
         StringBuffer suffix = new StringBuffer();
         StringBuffer htmlText = new StringBuffer();
@@ -180,16 +188,6 @@ public class MultiLineString implements Serializable, Cloneable
 
         // replace any < that are not followed by {u, i, b, tt, font, br} with &lt;
 
-        List<String> dontReplace = Arrays.asList(new String[]
-        {
-                "u",
-                "i",
-                "b",
-                "tt",
-                "font",
-                "br"
-        });
-
         int ltpos = 0;
         while (ltpos != -1)
         {
@@ -199,66 +197,136 @@ public class MultiLineString implements Serializable, Cloneable
                 int end = ltpos + 1;
                 while (end < htmlText.length() && Character.isLetter(htmlText.charAt(end)))
                     end++;
-                if (!dontReplace.contains(htmlText.substring(ltpos + 1, end))) htmlText.replace(ltpos, ltpos + 1, "&lt;");
+                if (!ALLOWED_TAGS.contains(htmlText.substring(ltpos + 1, end))) htmlText.replace(ltpos, ltpos + 1, "&lt;");
             }
         }
-
-        getLabel().setText(htmlText.toString());
-        if (justification == LEFT) getLabel().setHorizontalAlignment(JLabel.LEFT);
-        else if (justification == CENTER) getLabel().setHorizontalAlignment(JLabel.CENTER);
-        else if (justification == RIGHT) getLabel().setHorizontalAlignment(JLabel.RIGHT);
-
+        this.labelText = htmlText.toString();
+        return this.labelText;
     }
 
+    /**
+     * Prepares the label to display this string. Swing parses the HTML text again each time the text or the font of the label
+     * change, so they are only set when they are different.
+     * 
+     * @param font the font to use
+     * @return the label
+     */
+    private JLabel getLabel(Font font)
+    {
+        JLabel label = getLabel();
+        String htmlText = getLabelText();
+        if (!htmlText.equals(label.getText())) label.setText(htmlText);
+        if (!font.equals(label.getFont())) label.setFont(font);
+        if (justification == LEFT) label.setHorizontalAlignment(JLabel.LEFT);
+        else if (justification == CENTER) label.setHorizontalAlignment(JLabel.CENTER);
+        else if (justification == RIGHT) label.setHorizontalAlignment(JLabel.RIGHT);
+        return label;
+    }
 
     /**
-     * Gets the bounding rectangle for this multiline string.
+     * Gets the bounding rectangle for this multiline string, as drawn with the font of a graphics context. Bounds are computed once
+     * for each text layout (text, style, font and font render context).
      * 
      * @param g2 the graphics context
      * @return the bounding rectangle (with top left corner (0,0))
      */
     private Rectangle2D getBounds(Graphics2D g2)
     {
-        setLabelText();
-    	getLabel().setFont(g2.getFont());
-        getLabel().validate();
-        if (text.length() == 0) return new Rectangle2D.Double(0, 0, 0, 0);
-        Dimension dim = getLabel().getPreferredSize();
-        return new Rectangle2D.Double(0, 0, dim.getWidth(), dim.getHeight());
+        TextLayoutKey key = new TextLayoutKey(text, justification, size, underlined, g2.getFont(), g2.getFontRenderContext());
+        if (!key.equals(this.paintedBoundsKey))
+        {
+            this.paintedBounds = computeBounds(g2.getFont());
+            this.paintedBoundsKey = key;
+        }
+        // Callers are free to modify the returned rectangle
+        return new Rectangle2D.Double(0, 0, this.paintedBounds.getWidth(), this.paintedBounds.getHeight());
     }
 
     /**
-     * Gets the bounding rectangle for this multiline string.
+     * Gets the bounding rectangle for this multiline string. Bounds are computed once for each text layout and kept apart from
+     * the ones computed while drawing, so hit tests and painting don't evict each other.
      * 
      * @return the bounding rectangle (with top left corner (0,0))
      */
     public Rectangle2D getBounds()
     {
-        if (this.isBoundsDirty || this.bounds == null)
+        if (defaultFont == null)
+        {
+            BufferedImage image = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g2 = image.createGraphics();
+            defaultFont = g2.getFont();
+            defaultFontRenderContext = g2.getFontRenderContext();
+            g2.dispose();
+        }
+        TextLayoutKey key = new TextLayoutKey(text, justification, size, underlined, defaultFont, defaultFontRenderContext);
+        if (!key.equals(this.defaultBoundsKey))
+        {
+            this.defaultBounds = computeBounds(defaultFont);
+            this.defaultBoundsKey = key;
+        }
+        // Callers are free to modify the returned rectangle
+        return new Rectangle2D.Double(0, 0, this.defaultBounds.getWidth(), this.defaultBounds.getHeight());
+    }
+
+    /**
+     * @param font
+     * @return the bounding rectangle of the label displaying this string with the given font
+     */
+    private Rectangle2D computeBounds(Font font)
+    {
+        if (text.length() == 0)
         {
-            BufferedImage image = new BufferedImage(1000, 1000, BufferedImage.TYPE_INT_RGB);
-            Graphics2D g2 = (Graphics2D) image.getGraphics();
-            this.bounds = getBounds(g2);
-            this.isBoundsDirty = false;
+            return new Rectangle2D.Double(0, 0, 0, 0);
         }
-        return this.bounds;
+        Dimension dim = getLabel(font).getPreferredSize();
+        return new Rectangle2D.Double(0, 0, dim.getWidth(), dim.getHeight());
     }
 
     /**
-     * Draws this multiline string inside a given rectangle
+     * Draws this multiline string inside a given rectangle. When the diagram is zoomed out, lines are replaced by bars (see
+     * LevelOfDetail).
      * 
      * @param g2 the graphics context
      * @param r the rectangle into which to place this multiline string
      */
     public void draw(Graphics2D g2, Rectangle2D r)
     {
-    	getLabel().setFont(g2.getFont());
-    	getLabel().setBounds(0, 0, (int) r.getWidth(), (int) r.getHeight());
+        LevelOfDetail levelOfDetail = LevelOfDetail.get(g2);
+        if (levelOfDetail.isTextHidden())
+        {
+            return;
+        }
+        if (levelOfDetail.isTextGreeked())
+        {
+            drawGreeked(g2, r);
+            return;
+        }
+        JLabel label = getLabel(g2.getFont());
+        label.setBounds(0, 0, (int) r.getWidth(), (int) r.getHeight());
         g2.translate(r.getX(), r.getY());
-        getLabel().paint(g2);
+        label.paint(g2);
         g2.translate(-r.getX(), -r.getY());
     }
 
+    /**
+     * Draws a bar for each line, where the label would have drawn it
+     * 
+     * @param g2 the graphics context
+     * @param r the rectangle into which to place this multiline string
+     */
+    private void drawGreeked(Graphics2D g2, Rectangle2D r)
+    {
+        Rectangle2D textBounds = getBounds(g2);
+        double width = Math.min(textBounds.getWidth(), r.getWidth());
+        double height = Math.min(textBounds.getHeight(), r.getHeight());
+        double x = r.getX();
+        if (justification == CENTER) x += (r.getWidth() - width) / 2;
+        else if (justification == RIGHT) x += r.getWidth() - width;
+        double y = r.getY() + (r.getHeight() - height) / 2;
+        int lineCount = new StringTokenizer(text, "\n").countTokens();
+        LevelOfDetail.drawGreekedText(g2, new Rectangle2D.Double(x, y, width, height), lineCount);
+    }
+
     public MultiLineString clone()
     {
     	MultiLineString cloned = new MultiLineString();
@@ -266,7 +334,6 @@ public class MultiLineString implements Serializable, Cloneable
     	cloned.justification = justification;
     	cloned.size = size;
     	cloned.underlined = underlined;
-    	cloned.setLabelText();
     	return cloned;
     }
     
@@ -292,6 +359,61 @@ public class MultiLineString implements Serializable, Cloneable
     @XStreamAsAttribute
     private boolean underlined;
     private transient JLabel label;
-    private transient boolean isBoundsDirty = true;
-    private transient Rectangle2D bounds;
+    private transient String labelText;
+    private transient Rectangle2D defaultBounds;
+    private transient TextLayoutKey defaultBoundsKey;
+    private transient Rectangle2D paintedBounds;
+    private transient TextLayoutKey paintedBoundsKey;
+
+    private static Font defaultFont;
+    private static FontRenderContext defaultFontRenderContext;
+
+    private static final List<String> ALLOWED_TAGS = Arrays.asList(new String[]
+    {
+            "u",
+            "i",
+            "b",
+            "tt",
+            "font",
+            "br"
+    });
+
+    /**
+     * Everything the bounds of a multiline string depend on
+     */
+    private static class TextLayoutKey
+    {
+        TextLayoutKey(String text, int justification, int size, boolean underlined, Font font, FontRenderContext fontRenderContext)
+        {
+            this.text = text;
+            this.justification = justification;
+            this.size = size;
+            this.underlined = underlined;
+            this.font = font;
+            this.fontRenderContext = fontRenderContext;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof TextLayoutKey)) return false;
+            TextLayoutKey other = (TextLayoutKey) obj;
+            return this.text.equals(other.text) && this.justification == other.justification && this.size == other.size
+                    && this.underlined == other.underlined && this.font.equals(other.font)
+                    && this.fontRenderContext.equals(other.fontRenderContext);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return this.text.hashCode() + 31 * this.font.hashCode() + 961 * (this.justification + this.size);
+        }
+
+        private String text;
+        private int justification;
+        private int size;
+        private boolean underlined;
+        private Font font;
+        private FontRenderContext fontRenderContext;
+    }
 }
@@ -25,7 +25,6 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.RenderingHints;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionAdapter;
@@ -38,10 +37,11 @@ import java.util.List;
 import javax.swing.JComponent;
 import javax.swing.JPanel;
 
+import com.horstmann.violet.framework.util.PaintStatistics;
 import com.horstmann.violet.product.diagram.abstracts.IGraph;
+import com.horstmann.violet.product.diagram.abstracts.edge.EdgeRoutingService;
 import com.horstmann.violet.product.diagram.abstracts.edge.IEdge;
 import com.horstmann.violet.product.diagram.abstracts.node.INode;
-import com.horstmann.violet.workspace.editorpart.behavior.IEditorPartBehavior;
 
 /**
  * Graph editor
@@ -101,6 +101,15 @@ public class EditorPart extends JPanel implements IEditorPart
             }
         });
         setBounds(0,0,0,0);
+        // Large diagrams would be frozen while their edges are routed at first paint
+        EdgeRoutingService.getInstance().routeAll(aGraph, new Runnable()
+        {
+            public void run()
+            {
+                damageTracker.damageAll();
+                damageTracker.repaintDamagedAreas();
+            }
+        });
     }
 
     /*
@@ -234,17 +243,12 @@ public class EditorPart extends JPanel implements IEditorPart
      */
     public void paintComponent(Graphics g)
     {
+        long startTime = PaintStatistics.getInstance().start();
         setBackground(Color.WHITE);
         super.paintComponent(g);
         Graphics2D g2 = (Graphics2D) g;
-        g2.scale(zoom, zoom);
-        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        if (grid.isVisible()) grid.paint(g2);
-        graph.draw(g2);
-        for (IEditorPartBehavior behavior : this.behaviorManager.getBehaviors())
-        {
-            behavior.onPaint(g2);
-        }
+        this.renderer.paint(g2);
+        PaintStatistics.getInstance().stopFrame(startTime);
     }
 
     @Override
@@ -259,6 +263,12 @@ public class EditorPart extends JPanel implements IEditorPart
         return this.behaviorManager;
     }
 
+    @Override
+    public IEditorPartDamageTracker getDamageTracker()
+    {
+        return this.damageTracker;
+    }
+
     private IGraph graph;
 
     private IGrid grid;
@@ -274,4 +284,8 @@ public class EditorPart extends JPanel implements IEditorPart
 
     private IEditorPartBehaviorManager behaviorManager = new EditorPartBehaviorManager();
 
+    private LayeredEditorPartRenderer renderer = new LayeredEditorPartRenderer(this);
+
+    private IEditorPartDamageTracker damageTracker = new EditorPartDamageTracker(this, this.renderer);
+
 }
\ No newline at end of file
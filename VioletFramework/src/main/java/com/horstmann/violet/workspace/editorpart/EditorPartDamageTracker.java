@@ -0,0 +1,220 @@
+package com.horstmann.violet.workspace.editorpart;
+
+import java.awt.Rectangle;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.horstmann.violet.framework.util.PaintStatistics;
+import com.horstmann.violet.product.diagram.abstracts.IGraph;
+import com.horstmann.violet.product.diagram.abstracts.edge.IEdge;
+import com.horstmann.violet.product.diagram.abstracts.node.INode;
+
+/**
+ * Default damage tracker. Damaged areas are merged into a single rectangle as Swing's RepaintManager would do anyway for a
+ * component.
+ */
+public class EditorPartDamageTracker implements IEditorPartDamageTracker
+{
+
+    /**
+     * Default constructor
+     * 
+     * @param editorPart the editor part to repaint
+     * @param renderer the renderer used by the editor part
+     */
+    public EditorPartDamageTracker(IEditorPart editorPart, LayeredEditorPartRenderer renderer)
+    {
+        this.editorPart = editorPart;
+        this.renderer = renderer;
+    }
+
+    @Override
+    public void addDamagedArea(Rectangle2D area)
+    {
+        if (area == null || this.isAllDamaged)
+        {
+            return;
+        }
+        if (this.damagedArea == null)
+        {
+            // Elements are reported before being changed so this is the revision cached images could show
+            this.revisionBeforeDamage = this.editorPart.getGraph().getRevision();
+            this.damagedArea = new Rectangle2D.Double(area.getX(), area.getY(), area.getWidth(), area.getHeight());
+            return;
+        }
+        this.damagedArea.add(area);
+    }
+
+    @Override
+    public void addDamagedNode(INode node)
+    {
+        IGraph graph = this.editorPart.getGraph();
+        if (!graph.isGeometryLocal())
+        {
+            // Nodes which aren't related to this one could be resized too
+            damageAll();
+            return;
+        }
+        // Children are drawn by their top most ancestor which usually wraps them
+        addDamagedArea(getBoundsOnGraph(getRoot(node)));
+        for (IEdge anEdge : graph.getConnectedEdges(node))
+        {
+            addDamagedEdge(anEdge);
+            // Nodes at the other end can be adjusted to follow this one
+            INode oppositeNode = (anEdge.getStart() == node ? anEdge.getEnd() : anEdge.getStart());
+            if (oppositeNode != null)
+            {
+                addDamagedArea(getBoundsOnGraph(getRoot(oppositeNode)));
+            }
+        }
+        // Edges connected to children move with them
+        List<INode> descendants = new ArrayList<INode>(node.getChildren());
+        for (int i = 0; i < descendants.size(); i++)
+        {
+            INode aDescendant = descendants.get(i);
+            for (IEdge anEdge : graph.getConnectedEdges(aDescendant))
+            {
+                addDamagedEdge(anEdge);
+            }
+            descendants.addAll(aDescendant.getChildren());
+        }
+    }
+
+    @Override
+    public void addDamagedEdge(IEdge edge)
+    {
+        addDamagedArea(edge.getBounds());
+    }
+
+    @Override
+    public void damageAll()
+    {
+        this.isAllDamaged = true;
+        this.damagedArea = null;
+    }
+
+    @Override
+    public boolean isDamaged()
+    {
+        return this.isAllDamaged || this.damagedArea != null;
+    }
+
+    @Override
+    public void repaintDamagedAreas()
+    {
+        if (this.isAllDamaged)
+        {
+            PaintStatistics.getInstance().count("repaint (all)");
+            long revision = this.editorPart.getGraph().getRevision();
+            // Panning, selecting, changing tools... keep the graph revision and then the cached diagram is still valid
+            if (revision != this.repaintedRevision)
+            {
+                this.renderer.invalidate();
+                fireDamagedAreaRepainted(null, revision);
+            }
+            this.editorPart.getSwingComponent().repaint();
+        }
+        else if (this.damagedArea != null)
+        {
+            PaintStatistics.getInstance().count("repaint (damaged area)");
+            // Shadows, grabbers and arrow heads are painted slightly outside of element bounds
+            Rectangle2D paddedArea = new Rectangle2D.Double(this.damagedArea.getX() - MARGIN, this.damagedArea.getY() - MARGIN,
+                    this.damagedArea.getWidth() + 2 * MARGIN, this.damagedArea.getHeight() + 2 * MARGIN);
+            // When only behavior feedback has changed (lasso, line drawn while linking...), cached tiles are still valid
+            boolean isGraphChanged = (this.editorPart.getGraph().getRevision() != this.revisionBeforeDamage);
+            if (isGraphChanged)
+            {
+                this.renderer.invalidate(paddedArea, this.revisionBeforeDamage);
+            }
+            double zoom = this.editorPart.getZoomFactor();
+            double x = paddedArea.getX() * zoom;
+            double y = paddedArea.getY() * zoom;
+            double maxX = paddedArea.getMaxX() * zoom;
+            double maxY = paddedArea.getMaxY() * zoom;
+            int left = (int) Math.floor(x);
+            int top = (int) Math.floor(y);
+            Rectangle repaintedArea = new Rectangle(left, top, (int) Math.ceil(maxX) - left, (int) Math.ceil(maxY) - top);
+            this.editorPart.getSwingComponent().repaint(repaintedArea);
+            if (isGraphChanged)
+            {
+                fireDamagedAreaRepainted(paddedArea, this.revisionBeforeDamage);
+            }
+        }
+        this.isAllDamaged = false;
+        this.damagedArea = null;
+        this.repaintedRevision = this.editorPart.getGraph().getRevision();
+    }
+
+    @Override
+    public void addListener(IEditorPartDamageListener listener)
+    {
+        this.listeners.add(listener);
+    }
+
+    @Override
+    public void removeListener(IEditorPartDamageListener listener)
+    {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Notifies listeners
+     * 
+     * @param area the repainted area in graph coordinates or null if everything has been repainted
+     * @param oldRevision the graph revision before the changes in this area
+     */
+    private void fireDamagedAreaRepainted(Rectangle2D area, long oldRevision)
+    {
+        for (IEditorPartDamageListener aListener : new ArrayList<IEditorPartDamageListener>(this.listeners))
+        {
+            aListener.onDamagedAreaRepainted(area, oldRevision);
+        }
+    }
+
+    /**
+     * @param node
+     * @return the top most ancestor of the given node (or the node itself if it has no parent)
+     */
+    private INode getRoot(INode node)
+    {
+        INode root = node;
+        while (root.getParent() != null)
+        {
+            root = root.getParent();
+        }
+        return root;
+    }
+
+    /**
+     * @param node
+     * @return node's bounds translated to the graph's coordinates
+     */
+    private Rectangle2D getBoundsOnGraph(INode node)
+    {
+        Point2D locationOnGraph = node.getLocationOnGraph();
+        Rectangle2D bounds = node.getBounds();
+        return new Rectangle2D.Double(locationOnGraph.getX(), locationOnGraph.getY(), bounds.getWidth(), bounds.getHeight());
+    }
+
+    private IEditorPart editorPart;
+
+    private LayeredEditorPartRenderer renderer;
+
+    private Rectangle2D damagedArea;
+
+    private List<IEditorPartDamageListener> listeners = new ArrayList<IEditorPartDamageListener>();
+
+    private boolean isAllDamaged = false;
+
+    /** Graph revision when the first damaged area has been reported */
+    private long revisionBeforeDamage;
+
+    /** Graph revision at the last repaint */
+    private long repaintedRevision = -1;
+
+    /** Margin (in graph coordinates) added around damaged areas */
+    private static final double MARGIN = 10;
+
+}
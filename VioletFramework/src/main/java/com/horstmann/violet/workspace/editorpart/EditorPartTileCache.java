@@ -0,0 +1,226 @@
+package com.horstmann.violet.workspace.editorpart;
+
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Fixed-size images of an editor part, used to avoid drawing the diagram again when the user scrolls.<br/>
+ * <br/>
+ * Tiles are located in component coordinates (so they depend on the zoom) and are only valid for the graph revision they have
+ * been rendered for. When the graph changes, tiles which don't intersect the changed areas are moved to the new revision instead
+ * of being rendered again. The least recently used tiles are dropped when the cache exceeds its memory budget.
+ */
+public class EditorPartTileCache
+{
+
+    /**
+     * @param zoom the zoom factor the tile has been rendered with
+     * @param tileX tile column (component x divided by TILE_SIZE)
+     * @param tileY tile row (component y divided by TILE_SIZE)
+     * @param revision the current graph revision
+     * @return the cached tile image or null if it isn't cached or if it is out of date
+     */
+    public BufferedImage getTile(double zoom, int tileX, int tileY, long revision)
+    {
+        TileKey key = new TileKey(zoom, tileX, tileY);
+        Tile tile = this.tiles.get(key);
+        if (tile == null)
+        {
+            return null;
+        }
+        if (tile.revision != revision)
+        {
+            removeTile(key);
+            return null;
+        }
+        return tile.image;
+    }
+
+    /**
+     * Stores a tile and drops the least recently used ones if the memory budget is exceeded
+     *
+     * @param zoom the zoom factor the tile has been rendered with
+     * @param tileX tile column
+     * @param tileY tile row
+     * @param revision the graph revision the tile has been rendered for
+     * @param image the tile image
+     */
+    public void putTile(double zoom, int tileX, int tileY, long revision, BufferedImage image)
+    {
+        TileKey key = new TileKey(zoom, tileX, tileY);
+        removeTile(key);
+        Tile tile = new Tile(image, revision);
+        this.tiles.put(key, tile);
+        this.usedMemory += tile.size;
+        Iterator<Tile> iterator = this.tiles.values().iterator();
+        while (this.usedMemory > this.memoryBudget && this.tiles.size() > 1)
+        {
+            Tile eldestTile = iterator.next();
+            iterator.remove();
+            this.usedMemory -= eldestTile.size;
+        }
+    }
+
+    /**
+     * Drops the tiles which intersect an area changed between two graph revisions. The other tiles rendered for the first revision
+     * are still valid for the second one, so this must only be called when the area covers everything which changed (clear() must
+     * be called otherwise).
+     *
+     * @param changedArea the changed area, in graph coordinates
+     * @param oldRevision the graph revision before the change
+     * @param newRevision the graph revision after the change
+     */
+    public void invalidate(Rectangle2D changedArea, long oldRevision, long newRevision)
+    {
+        Iterator<Map.Entry<TileKey, Tile>> iterator = this.tiles.entrySet().iterator();
+        while (iterator.hasNext())
+        {
+            Map.Entry<TileKey, Tile> anEntry = iterator.next();
+            Tile aTile = anEntry.getValue();
+            // Tiles rendered for another revision can't be used anymore
+            if (aTile.revision != oldRevision || anEntry.getKey().getBoundsOnGraph().intersects(changedArea))
+            {
+                iterator.remove();
+                this.usedMemory -= aTile.size;
+                continue;
+            }
+            aTile.revision = newRevision;
+        }
+    }
+
+    /**
+     * Drops the tiles which cover component pixels beyond the given limits
+     *
+     * @param width component width
+     * @param height component height
+     */
+    public void invalidateOutside(int width, int height)
+    {
+        Iterator<Map.Entry<TileKey, Tile>> iterator = this.tiles.entrySet().iterator();
+        while (iterator.hasNext())
+        {
+            Map.Entry<TileKey, Tile> anEntry = iterator.next();
+            TileKey aKey = anEntry.getKey();
+            if ((aKey.tileX + 1) * TILE_SIZE > width || (aKey.tileY + 1) * TILE_SIZE > height)
+            {
+                iterator.remove();
+                this.usedMemory -= anEntry.getValue().size;
+            }
+        }
+    }
+
+    /**
+     * Drops all tiles
+     */
+    public void clear()
+    {
+        this.tiles.clear();
+        this.usedMemory = 0;
+    }
+
+    /**
+     * Sets the maximum amount of memory used by tile images
+     *
+     * @param memoryBudget in bytes
+     */
+    public void setMemoryBudget(long memoryBudget)
+    {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * @return the maximum amount of memory used by tile images, in bytes
+     */
+    public long getMemoryBudget()
+    {
+        return this.memoryBudget;
+    }
+
+    /**
+     * @param key
+     */
+    private void removeTile(TileKey key)
+    {
+        Tile tile = this.tiles.remove(key);
+        if (tile != null)
+        {
+            this.usedMemory -= tile.size;
+        }
+    }
+
+    /**
+     * Tile location
+     */
+    private static class TileKey
+    {
+        TileKey(double zoom, int tileX, int tileY)
+        {
+            this.zoom = zoom;
+            this.tileX = tileX;
+            this.tileY = tileY;
+        }
+
+        /**
+         * @return the area drawn in this tile, in graph coordinates
+         */
+        Rectangle2D getBoundsOnGraph()
+        {
+            return new Rectangle2D.Double(this.tileX * TILE_SIZE / this.zoom, this.tileY * TILE_SIZE / this.zoom, TILE_SIZE
+                    / this.zoom, TILE_SIZE / this.zoom);
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof TileKey)) return false;
+            TileKey other = (TileKey) obj;
+            return this.zoom == other.zoom && this.tileX == other.tileX && this.tileY == other.tileY;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            long zoomBits = Double.doubleToLongBits(this.zoom);
+            return (int) (zoomBits ^ (zoomBits >>> 32)) + 31 * this.tileX + 961 * this.tileY;
+        }
+
+        private double zoom;
+        private int tileX;
+        private int tileY;
+    }
+
+    /**
+     * Tile image and the graph revision it shows
+     */
+    private static class Tile
+    {
+        Tile(BufferedImage image, long revision)
+        {
+            this.image = image;
+            this.revision = revision;
+            int bytesPerPixel = (image.getColorModel().getPixelSize() + 7) / 8;
+            this.size = (long) image.getWidth() * image.getHeight() * bytesPerPixel;
+        }
+
+        private BufferedImage image;
+        private long revision;
+        private long size;
+    }
+
+    /** Cached tiles, iterated from the least recently used to the most recently used */
+    private Map<TileKey, Tile> tiles = new LinkedHashMap<TileKey, Tile>(16, 0.75f, true);
+
+    private long usedMemory = 0;
+
+    private long memoryBudget = DEFAULT_MEMORY_BUDGET;
+
+    /** Tile side, in pixels */
+    public static final int TILE_SIZE = 256;
+
+    /** Default memory budget : 64 MB, i.e. 256 tiles of 32 bits pixels */
+    public static final long DEFAULT_MEMORY_BUDGET = 64L * 1024 * 1024;
+
+}
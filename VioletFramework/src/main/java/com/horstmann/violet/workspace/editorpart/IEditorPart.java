@@ -85,6 +85,11 @@ public interface IEditorPart
      * @return manager used to declare new editor behaviors and how to send events between behaviors
      */
     public IEditorPartBehaviorManager getBehaviorManager();
+
+    /**
+     * @return object used to repaint only the areas which have changed
+     */
+    public IEditorPartDamageTracker getDamageTracker();
     
 
 }
\ No newline at end of file
@@ -0,0 +1,21 @@
+package com.horstmann.violet.workspace.editorpart;
+
+import java.awt.geom.Rectangle2D;
+
+/**
+ * Notified each time an editor part repaints the areas changed in its graph, so that other views of the graph (such as the
+ * navigator thumbnail) can be updated the same way.
+ */
+public interface IEditorPartDamageListener
+{
+
+    /**
+     * Called after damaged areas have been asked to be repainted
+     * 
+     * @param damagedArea the changed area in graph coordinates, or null if anything could have changed
+     * @param oldRevision the graph revision before the changes described by the damaged area. Changes made before it haven't been
+     *            reported.
+     */
+    public abstract void onDamagedAreaRepainted(Rectangle2D damagedArea, long oldRevision);
+
+}
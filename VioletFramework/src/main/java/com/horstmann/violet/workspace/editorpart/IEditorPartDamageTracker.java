@@ -0,0 +1,66 @@
+package com.horstmann.violet.workspace.editorpart;
+
+import java.awt.geom.Rectangle2D;
+
+import com.horstmann.violet.product.diagram.abstracts.edge.IEdge;
+import com.horstmann.violet.product.diagram.abstracts.node.INode;
+
+/**
+ * Collects the areas of the editor part which need to be repainted after a change. Behaviors report the elements they touch
+ * (before AND after modifying them, to get their old and new bounds) and then ask to repaint only the damaged areas.
+ */
+public interface IEditorPartDamageTracker
+{
+
+    /**
+     * Declares an area which needs to be repainted
+     * 
+     * @param area in graph coordinates
+     */
+    public abstract void addDamagedArea(Rectangle2D area);
+
+    /**
+     * Declares that the area covered by a node (and by the elements drawn with it, such as its parent and its connected edges) needs
+     * to be repainted. Everything is damaged if the graph geometry isn't local (see IGraph.isGeometryLocal()).
+     * 
+     * @param node
+     */
+    public abstract void addDamagedNode(INode node);
+
+    /**
+     * Declares that the area covered by an edge needs to be repainted
+     * 
+     * @param edge
+     */
+    public abstract void addDamagedEdge(IEdge edge);
+
+    /**
+     * Declares that the whole editor part needs to be repainted
+     */
+    public abstract void damageAll();
+
+    /**
+     * @return true if something has been declared as damaged since the last repaint
+     */
+    public abstract boolean isDamaged();
+
+    /**
+     * Asks to repaint the damaged areas and resets them
+     */
+    public abstract void repaintDamagedAreas();
+
+    /**
+     * Adds a listener notified each time damaged areas are repainted
+     * 
+     * @param listener
+     */
+    public abstract void addListener(IEditorPartDamageListener listener);
+
+    /**
+     * Removes a listener
+     * 
+     * @param listener
+     */
+    public abstract void removeListener(IEditorPartDamageListener listener);
+
+}
@@ -0,0 +1,365 @@
+package com.horstmann.violet.workspace.editorpart;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+import javax.swing.JComponent;
+
+import com.horstmann.violet.framework.theme.ThemeManager;
+import com.horstmann.violet.framework.util.PaintStatistics;
+import com.horstmann.violet.product.diagram.abstracts.IGraph;
+import com.horstmann.violet.workspace.editorpart.behavior.IEditorPartBehavior;
+
+/**
+ * Paints an editor part with two layers :<br/>
+ * - a static layer, containing the grid and the diagram. It is rendered off-screen by tiles which are kept in a
+ * {@link EditorPartTileCache} until the zoom, the grid or the colors change or until elements they show are modified;<br/>
+ * - an overlay, painted on top of it at each paint by behaviors (selection grabbers, lasso, line drawn while linking nodes...).<br/>
+ * <br/>
+ * So, giving feedback while the user selects or links elements and scrolling over large diagrams mostly cost image copies instead
+ * of drawing all the diagram again.
+ */
+public class LayeredEditorPartRenderer
+{
+
+    /**
+     * Default constructor
+     * 
+     * @param editorPart the editor part to paint
+     */
+    public LayeredEditorPartRenderer(IEditorPart editorPart)
+    {
+        this.editorPart = editorPart;
+    }
+
+    /**
+     * Paints the editor part. The background is supposed to be already painted.
+     * 
+     * @param g2 the component's graphics context
+     */
+    public void paint(Graphics2D g2)
+    {
+        JComponent component = this.editorPart.getSwingComponent();
+        Rectangle visibleArea = component.getVisibleRect();
+        Rectangle clip = g2.getClipBounds();
+        if (visibleArea.isEmpty() || clip == null || !visibleArea.contains(clip) || !isPixelAligned(g2.getTransform()))
+        {
+            // Painted outside of the screen (in a scaled image, on a printer...), so there's nothing to reuse
+            paintWithoutCache(g2);
+            return;
+        }
+        checkRenderingSettings();
+        double zoom = this.editorPart.getZoomFactor();
+        int tileSize = EditorPartTileCache.TILE_SIZE;
+        int firstTileX = clip.x / tileSize;
+        int firstTileY = clip.y / tileSize;
+        int lastTileX = (clip.x + clip.width - 1) / tileSize;
+        int lastTileY = (clip.y + clip.height - 1) / tileSize;
+        for (int tileY = firstTileY; tileY <= lastTileY; tileY++)
+        {
+            for (int tileX = firstTileX; tileX <= lastTileX; tileX++)
+            {
+                // Revision is read before rendering because some nodes adjust their location while being drawn
+                long revision = this.editorPart.getGraph().getRevision();
+                BufferedImage tile = this.tileCache.getTile(zoom, tileX, tileY, revision);
+                if (tile == null)
+                {
+                    long startTime = PaintStatistics.getInstance().start();
+                    tile = renderTile(tileX, tileY, g2.getDeviceConfiguration());
+                    this.tileCache.putTile(zoom, tileX, tileY, revision, tile);
+                    PaintStatistics.getInstance().stop("render tile", startTime);
+                }
+                else
+                {
+                    PaintStatistics.getInstance().count("reuse tile");
+                }
+                g2.drawImage(tile, tileX * tileSize, tileY * tileSize, null);
+            }
+        }
+        paintOverlay(g2);
+        Rectangle statisticsArea = null;
+        if (PaintStatistics.getInstance().isOverlayVisible())
+        {
+            statisticsArea = paintStatistics(g2, visibleArea);
+        }
+        repaintStatisticsAreas(statisticsArea, clip);
+    }
+
+    /**
+     * Forces the whole static layer to be rendered again on next paint
+     */
+    public void invalidate()
+    {
+        this.tileCache.clear();
+    }
+
+    /**
+     * Forces the static layer to be rendered again where the graph has changed
+     * 
+     * @param changedArea the changed area, in graph coordinates
+     * @param oldRevision the graph revision before the change
+     */
+    public void invalidate(Rectangle2D changedArea, long oldRevision)
+    {
+        IGraph graph = this.editorPart.getGraph();
+        if (!graph.isGeometryLocal())
+        {
+            // Elements outside of the changed area could have changed too
+            this.tileCache.clear();
+            return;
+        }
+        this.tileCache.invalidate(changedArea, oldRevision, graph.getRevision());
+    }
+
+    /**
+     * @return the cache holding the static layer tiles
+     */
+    public EditorPartTileCache getTileCache()
+    {
+        return this.tileCache;
+    }
+
+    /**
+     * Paints all the layers directly on the given graphics context
+     * 
+     * @param g2
+     */
+    private void paintWithoutCache(Graphics2D g2)
+    {
+        AffineTransform oldTransform = g2.getTransform();
+        paintStaticLayerContent(g2);
+        g2.setTransform(oldTransform);
+        paintOverlay(g2);
+    }
+
+    /**
+     * Paints the grid and the graph
+     * 
+     * @param g2 a graphics context in component coordinates
+     */
+    private void paintStaticLayerContent(Graphics2D g2)
+    {
+        double zoom = this.editorPart.getZoomFactor();
+        IGrid grid = this.editorPart.getGrid();
+        IGraph graph = this.editorPart.getGraph();
+        g2.scale(zoom, zoom);
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        if (grid.isVisible())
+        {
+            long startTime = PaintStatistics.getInstance().start();
+            grid.paint(g2);
+            PaintStatistics.getInstance().stop("IGrid.paint", startTime);
+        }
+        // Clip is given in graph coordinates as g2 is already scaled
+        graph.draw(g2, g2.getClipBounds());
+    }
+
+    /**
+     * Lets behaviors paint their feedback
+     * 
+     * @param g2 a graphics context in component coordinates
+     */
+    private void paintOverlay(Graphics2D g2)
+    {
+        AffineTransform oldTransform = g2.getTransform();
+        double zoom = this.editorPart.getZoomFactor();
+        g2.scale(zoom, zoom);
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        for (IEditorPartBehavior behavior : this.editorPart.getBehaviorManager().getBehaviors())
+        {
+            behavior.onPaint(g2);
+        }
+        g2.setTransform(oldTransform);
+    }
+
+    /**
+     * Paints paint statistics in the top left corner of the visible area. The painted box only grows while statistics are shown,
+     * so that repainting it once is enough to show it entirely (see repaintStatisticsAreas()).
+     * 
+     * @param g2 a graphics context in component coordinates
+     * @param visibleArea the visible area of the component
+     * @return the painted area
+     */
+    private Rectangle paintStatistics(Graphics2D g2, Rectangle visibleArea)
+    {
+        PaintStatistics statistics = PaintStatistics.getInstance();
+        String[] report = statistics.getReport();
+        int lineCount = Math.min(report.length, MAX_STATISTICS_LINES);
+        Font oldFont = g2.getFont();
+        Color oldColor = g2.getColor();
+        g2.setFont(STATISTICS_FONT);
+        FontMetrics metrics = g2.getFontMetrics();
+        int lineHeight = metrics.getHeight();
+        int width = 0;
+        for (int i = 0; i < lineCount; i++)
+        {
+            width = Math.max(width, metrics.stringWidth(report[i]));
+        }
+        this.statisticsWidth = Math.max(this.statisticsWidth, width + 2 * STATISTICS_MARGIN);
+        this.statisticsHeight = Math.max(this.statisticsHeight, lineCount * lineHeight + 2 * STATISTICS_MARGIN);
+        int x = visibleArea.x + STATISTICS_MARGIN;
+        int y = visibleArea.y + STATISTICS_MARGIN;
+        g2.setColor(STATISTICS_BACKGROUND);
+        g2.fillRect(x, y, this.statisticsWidth, this.statisticsHeight);
+        g2.setColor(Color.WHITE);
+        for (int i = 0; i < lineCount; i++)
+        {
+            g2.drawString(report[i], x + STATISTICS_MARGIN, y + STATISTICS_MARGIN + i * lineHeight + metrics.getAscent());
+        }
+        g2.setFont(oldFont);
+        g2.setColor(oldColor);
+        return new Rectangle(x, y, this.statisticsWidth, this.statisticsHeight);
+    }
+
+    /**
+     * Statistics are painted at a fixed place of the visible area and change at each paint, but damaged areas are repainted with
+     * a clip and the viewport scrolls by copying pixels. So the area where they are painted, and the one where they were painted
+     * before, are repainted as soon as a paint doesn't cover them entirely.
+     * 
+     * @param statisticsArea the area where statistics have been painted (or null if they are hidden)
+     * @param clip the painted area
+     */
+    private void repaintStatisticsAreas(Rectangle statisticsArea, Rectangle clip)
+    {
+        JComponent component = this.editorPart.getSwingComponent();
+        if (this.statisticsArea != null && !clip.contains(this.statisticsArea))
+        {
+            component.repaint(this.statisticsArea);
+        }
+        if (statisticsArea != null && !clip.contains(statisticsArea))
+        {
+            component.repaint(statisticsArea);
+        }
+        if (statisticsArea == null)
+        {
+            this.statisticsWidth = 0;
+            this.statisticsHeight = 0;
+        }
+        this.statisticsArea = statisticsArea;
+    }
+
+    /**
+     * Renders a tile of the static layer
+     * 
+     * @param tileX tile column
+     * @param tileY tile row
+     * @param configuration
+     * @return the tile image
+     */
+    private BufferedImage renderTile(int tileX, int tileY, GraphicsConfiguration configuration)
+    {
+        int tileSize = EditorPartTileCache.TILE_SIZE;
+        BufferedImage tile;
+        if (configuration != null)
+        {
+            tile = configuration.createCompatibleImage(tileSize, tileSize, Transparency.OPAQUE);
+        }
+        else
+        {
+            tile = new BufferedImage(tileSize, tileSize, BufferedImage.TYPE_INT_RGB);
+        }
+        Graphics2D tileGraphics = tile.createGraphics();
+        try
+        {
+            tileGraphics.setColor(this.editorPart.getSwingComponent().getBackground());
+            tileGraphics.fillRect(0, 0, tileSize, tileSize);
+            tileGraphics.translate(-tileX * tileSize, -tileY * tileSize);
+            tileGraphics.clipRect(tileX * tileSize, tileY * tileSize, tileSize, tileSize);
+            paintStaticLayerContent(tileGraphics);
+        }
+        finally
+        {
+            tileGraphics.dispose();
+        }
+        return tile;
+    }
+
+    /**
+     * Drops cached tiles which have been rendered with other grid settings or colors or which could show a grid cut at the
+     * previous component size
+     */
+    private void checkRenderingSettings()
+    {
+        IGrid grid = this.editorPart.getGrid();
+        JComponent component = this.editorPart.getSwingComponent();
+        Color backgroundColor = component.getBackground();
+        Color gridColor = ThemeManager.getInstance().getTheme().getGridColor();
+        if (grid.isVisible() != this.isGridVisible || grid.getSnappingWidth() != this.gridWidth
+                || grid.getSnappingHeight() != this.gridHeight || !backgroundColor.equals(this.backgroundColor)
+                || !gridColor.equals(this.gridColor))
+        {
+            this.tileCache.clear();
+            this.isGridVisible = grid.isVisible();
+            this.gridWidth = grid.getSnappingWidth();
+            this.gridHeight = grid.getSnappingHeight();
+            this.backgroundColor = backgroundColor;
+            this.gridColor = gridColor;
+        }
+        if (component.getWidth() != this.componentWidth || component.getHeight() != this.componentHeight)
+        {
+            // The grid is painted up to the component bounds
+            this.tileCache.invalidateOutside(Math.min(component.getWidth(), this.componentWidth), Math.min(component.getHeight(),
+                    this.componentHeight));
+            this.componentWidth = component.getWidth();
+            this.componentHeight = component.getHeight();
+        }
+    }
+
+    /**
+     * @param transform
+     * @return true if the transform is only a translation by whole pixels (as when Swing paints a component on the screen)
+     */
+    private static boolean isPixelAligned(AffineTransform transform)
+    {
+        int type = transform.getType();
+        if ((type & ~AffineTransform.TYPE_TRANSLATION) != 0)
+        {
+            return false;
+        }
+        return transform.getTranslateX() == Math.rint(transform.getTranslateX())
+                && transform.getTranslateY() == Math.rint(transform.getTranslateY());
+    }
+
+    private IEditorPart editorPart;
+
+    private EditorPartTileCache tileCache = new EditorPartTileCache();
+
+    private boolean isGridVisible;
+
+    private double gridWidth;
+
+    private double gridHeight;
+
+    private Color backgroundColor;
+
+    private Color gridColor;
+
+    private int componentWidth;
+
+    private int componentHeight;
+
+    /** Where statistics have been painted last time (or null) */
+    private Rectangle statisticsArea;
+
+    private int statisticsWidth;
+
+    private int statisticsHeight;
+
+    private static final int MAX_STATISTICS_LINES = 20;
+
+    private static final int STATISTICS_MARGIN = 4;
+
+    private static final Font STATISTICS_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 11);
+
+    private static final Color STATISTICS_BACKGROUND = new Color(0, 0, 0, 160);
+
+}
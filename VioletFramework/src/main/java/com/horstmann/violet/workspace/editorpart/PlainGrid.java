@@ -24,14 +24,16 @@ package com.horstmann.violet.workspace.editorpart;
 import java.awt.Color;
 import java.awt.Component;
 import java.awt.Graphics2D;
-import java.awt.Stroke;
+import java.awt.Paint;
+import java.awt.RenderingHints;
+import java.awt.TexturePaint;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Line2D;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
 
 import com.horstmann.violet.framework.theme.ThemeManager;
-import com.horstmann.violet.product.diagram.abstracts.IGraph;
 
 /**
  * A grid to which points and rectangles can be "snapped". The snapping operation moves a point to the nearest grid point.
@@ -92,10 +94,7 @@ public class PlainGrid implements IGrid
     private Rectangle2D.Double getBounds(Graphics2D g2)
     {
         Component editorPartComponent = editorPart.getSwingComponent();
-        IGraph graph = editorPart.getGraph();
-
         Rectangle2D bounds = editorPartComponent.getBounds();
-        Rectangle2D graphBounds = graph.getClipBounds();
         double scaleX = 1;
         double scaleY = 1;
         AffineTransform transform = g2.getTransform();
@@ -103,27 +102,149 @@ public class PlainGrid implements IGrid
             scaleX = transform.getScaleX();
             scaleY = transform.getScaleY();
         }
-        return new Rectangle2D.Double(0, 0, Math.max(bounds.getMaxX() / scaleX, graphBounds.getMaxX()), Math.max(bounds
-                .getMaxY()
-                / scaleY, graphBounds.getMaxY()));
+        double maxX = bounds.getMaxX() / scaleX;
+        double maxY = bounds.getMaxY() / scaleY;
+        Rectangle2D clip = g2.getClipBounds();
+        if (clip == null || clip.getMaxX() > maxX || clip.getMaxY() > maxY)
+        {
+            // The graph can be larger than the component (while printing for example)
+            Rectangle2D graphBounds = editorPart.getGraph().getClipBounds();
+            maxX = Math.max(maxX, graphBounds.getMaxX());
+            maxY = Math.max(maxY, graphBounds.getMaxY());
+        }
+        return new Rectangle2D.Double(0, 0, maxX, maxY);
+    }
+
+    /**
+     * @return the part of the grid bounds which is inside g2's clip (lines outside of it would be ignored anyway)
+     */
+    private Rectangle2D getPaintedArea(Graphics2D g2, Rectangle2D bounds)
+    {
+        Rectangle2D clip = g2.getClipBounds();
+        if (clip == null)
+        {
+            return bounds;
+        }
+        Rectangle2D paintedArea = bounds.createIntersection(clip);
+        if (paintedArea.isEmpty())
+        {
+            return new Rectangle2D.Double(bounds.getX(), bounds.getY(), 0, 0);
+        }
+        return paintedArea;
     }
 
     @Override
     public void paint(Graphics2D g2)
     {
         if (snappingWidth == 0 || snappingHeight == 0) return;
-        Color oldColor = g2.getColor();
-        g2.setColor(ThemeManager.getInstance().getTheme().getGridColor());
-        Stroke oldStroke = g2.getStroke();
+        Color gridColor = ThemeManager.getInstance().getTheme().getGridColor();
         Rectangle2D.Double bounds = getBounds(g2);
-        for (double x = bounds.getX(); x < bounds.getMaxX(); x += snappingWidth)
-            g2.draw(new Line2D.Double(x, bounds.getY(), x, bounds.getMaxY()));
-        for (double y = bounds.getY(); y < bounds.getMaxY(); y += snappingHeight)
-            g2.draw(new Line2D.Double(bounds.getX(), y, bounds.getMaxX(), y));
-        g2.setStroke(oldStroke);
+        Rectangle2D paintedArea = getPaintedArea(g2, bounds);
+        if (paintedArea.isEmpty()) return;
+        TexturePaint texture = getTexture(g2.getTransform(), gridColor);
+        if (texture == null)
+        {
+            paintLines(g2, bounds, paintedArea, gridColor);
+            return;
+        }
+        Paint oldPaint = g2.getPaint();
+        g2.setPaint(texture);
+        g2.fill(paintedArea);
+        g2.setPaint(oldPaint);
+    }
+
+    /**
+     * Draws grid lines one by one
+     * 
+     * @param g2
+     * @param bounds the grid bounds
+     * @param paintedArea the part of the bounds to paint
+     * @param gridColor
+     */
+    private void paintLines(Graphics2D g2, Rectangle2D bounds, Rectangle2D paintedArea, Color gridColor)
+    {
+        Color oldColor = g2.getColor();
+        g2.setColor(gridColor);
+        double startX = bounds.getX() + Math.floor((paintedArea.getX() - bounds.getX()) / snappingWidth) * snappingWidth;
+        double startY = bounds.getY() + Math.floor((paintedArea.getY() - bounds.getY()) / snappingHeight) * snappingHeight;
+        Line2D.Double line = new Line2D.Double();
+        for (double x = startX; x < paintedArea.getMaxX(); x += snappingWidth)
+        {
+            line.setLine(x, paintedArea.getY(), x, paintedArea.getMaxY());
+            g2.draw(line);
+        }
+        for (double y = startY; y < paintedArea.getMaxY(); y += snappingHeight)
+        {
+            line.setLine(paintedArea.getX(), y, paintedArea.getMaxX(), y);
+            g2.draw(line);
+        }
         g2.setColor(oldColor);
     }
 
+    /**
+     * Gets a texture made of several grid cells, rendered at the device resolution. It is built again only when the grid size, its
+     * color or the scale change.
+     * 
+     * @param transform g2's transform
+     * @param gridColor
+     * @return the texture or null if grid lines can't be drawn with a texture for this transform (rotation, huge cells...)
+     */
+    private TexturePaint getTexture(AffineTransform transform, Color gridColor)
+    {
+        int type = transform.getType() & ~AffineTransform.TYPE_TRANSLATION;
+        if ((type & ~(AffineTransform.TYPE_UNIFORM_SCALE | AffineTransform.TYPE_GENERAL_SCALE)) != 0)
+        {
+            return null;
+        }
+        double scaleX = transform.getScaleX();
+        double scaleY = transform.getScaleY();
+        if (scaleX <= 0 || scaleY <= 0)
+        {
+            return null;
+        }
+        if (this.texture != null && this.textureSnappingWidth == snappingWidth && this.textureSnappingHeight == snappingHeight
+                && this.textureScaleX == scaleX && this.textureScaleY == scaleY && gridColor.equals(this.textureColor))
+        {
+            return this.texture;
+        }
+        double cellWidth = snappingWidth * scaleX;
+        double cellHeight = snappingHeight * scaleY;
+        if (cellWidth > MAX_TEXTURE_SIZE || cellHeight > MAX_TEXTURE_SIZE)
+        {
+            return null;
+        }
+        // Several cells per texture so that rounding its size to whole pixels doesn't move lines noticeably
+        int columns = (int) Math.ceil(MIN_TEXTURE_SIZE / cellWidth);
+        int rows = (int) Math.ceil(MIN_TEXTURE_SIZE / cellHeight);
+        int imageWidth = Math.max(1, (int) Math.round(columns * cellWidth));
+        int imageHeight = Math.max(1, (int) Math.round(rows * cellHeight));
+        BufferedImage image = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = image.createGraphics();
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2.scale(imageWidth / (columns * snappingWidth), imageHeight / (rows * snappingHeight));
+        g2.setColor(gridColor);
+        Line2D.Double line = new Line2D.Double();
+        // Lines on the texture edges are drawn on both sides so that their halves join when tiles are repeated
+        for (int i = 0; i <= columns; i++)
+        {
+            line.setLine(i * snappingWidth, 0, i * snappingWidth, rows * snappingHeight);
+            g2.draw(line);
+        }
+        for (int j = 0; j <= rows; j++)
+        {
+            line.setLine(0, j * snappingHeight, columns * snappingWidth, j * snappingHeight);
+            g2.draw(line);
+        }
+        g2.dispose();
+        this.texture = new TexturePaint(image, new Rectangle2D.Double(0, 0, columns * snappingWidth, rows * snappingHeight));
+        this.textureSnappingWidth = snappingWidth;
+        this.textureSnappingHeight = snappingHeight;
+        this.textureScaleX = scaleX;
+        this.textureScaleY = scaleY;
+        this.textureColor = gridColor;
+        return this.texture;
+    }
+
     /* (non-Javadoc)
      * @see com.horstmann.violet.product.diagram.abstracts.IGrid#snap(java.awt.geom.Point2D)
      */
@@ -198,4 +319,18 @@ public class PlainGrid implements IGrid
     private boolean isVisible = true;
     public static final int DEFAULT_GRID_SIZE = 10;
     private IEditorPart editorPart;
+
+    /** Cached grid texture and the settings it has been rendered for */
+    private TexturePaint texture;
+    private double textureSnappingWidth;
+    private double textureSnappingHeight;
+    private double textureScaleX;
+    private double textureScaleY;
+    private Color textureColor;
+
+    /** Minimum texture side, in pixels */
+    private static final double MIN_TEXTURE_SIZE = 128;
+
+    /** Above this cell size (in pixels), lines are drawn one by one */
+    private static final double MAX_TEXTURE_SIZE = 1024;
 }
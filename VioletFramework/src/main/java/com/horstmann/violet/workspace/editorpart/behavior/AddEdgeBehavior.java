@@ -5,6 +5,7 @@ import java.awt.Graphics2D;
 import java.awt.event.MouseEvent;
 import java.awt.geom.GeneralPath;
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -13,6 +14,7 @@ import com.horstmann.violet.product.diagram.abstracts.Id;
 import com.horstmann.violet.product.diagram.abstracts.edge.IEdge;
 import com.horstmann.violet.product.diagram.abstracts.node.INode;
 import com.horstmann.violet.workspace.editorpart.IEditorPart;
+import com.horstmann.violet.workspace.editorpart.IEditorPartDamageTracker;
 import com.horstmann.violet.workspace.editorpart.IEditorPartBehaviorManager;
 import com.horstmann.violet.workspace.editorpart.IEditorPartSelectionHandler;
 import com.horstmann.violet.workspace.sidebar.graphtools.GraphTool;
@@ -62,7 +64,8 @@ public class AddEdgeBehavior extends AbstractEditorPartBehavior
         {
             return;
         }
-        repaintOnMouseMoved(event);
+        // Repainting is done once all the behaviors have processed the drag event
+        followMouse(event);
     }
 
     @Override
@@ -73,7 +76,8 @@ public class AddEdgeBehavior extends AbstractEditorPartBehavior
             return;
         }
         this.isLinkBySeparatedClicks = true;
-        repaintOnMouseMoved(event);
+        followMouse(event);
+        this.editorPart.getDamageTracker().repaintDamagedAreas();
     }
 
     @Override
@@ -90,13 +94,35 @@ public class AddEdgeBehavior extends AbstractEditorPartBehavior
         }
     }
 
-    private void repaintOnMouseMoved(MouseEvent event)
+    /**
+     * Moves the end of the line drawn while linking and declares the areas covered by its last segment, before and after the move,
+     * as damaged
+     * 
+     * @param event
+     */
+    private void followMouse(MouseEvent event)
     {
         double zoom = this.editorPart.getZoomFactor();
         Point2D mousePoint = new Point2D.Double(event.getX() / zoom, event.getY() / zoom);
+        IEditorPartDamageTracker damageTracker = this.editorPart.getDamageTracker();
+        damageTracker.addDamagedArea(getLastSegmentBounds());
         lastMousePoint = mousePoint;
-        this.editorPart.getSwingComponent().doLayout();
-        this.editorPart.getSwingComponent().repaint();
+        damageTracker.addDamagedArea(getLastSegmentBounds());
+    }
+
+    /**
+     * @return bounds of the segment drawn between the last fixed point and the mouse
+     */
+    private Rectangle2D getLastSegmentBounds()
+    {
+        Point2D lastFixedPoint = this.firstMousePoint;
+        if (!this.transitionPoints.isEmpty())
+        {
+            lastFixedPoint = this.transitionPoints.get(this.transitionPoints.size() - 1);
+        }
+        Rectangle2D bounds = new Rectangle2D.Double(lastFixedPoint.getX(), lastFixedPoint.getY(), 0, 0);
+        bounds.add(this.lastMousePoint);
+        return bounds;
     }
 
     private boolean isConditionOK(MouseEvent event)
@@ -8,6 +8,7 @@ import java.util.List;
 import com.horstmann.violet.product.diagram.abstracts.IGraph;
 import com.horstmann.violet.product.diagram.abstracts.node.INode;
 import com.horstmann.violet.workspace.editorpart.IEditorPart;
+import com.horstmann.violet.workspace.editorpart.IEditorPartDamageTracker;
 import com.horstmann.violet.workspace.editorpart.IEditorPartSelectionHandler;
 import com.horstmann.violet.workspace.editorpart.IGrid;
 import com.horstmann.violet.workspace.sidebar.graphtools.GraphTool;
@@ -86,6 +87,7 @@ public class DragSelectedBehavior extends AbstractEditorPartBehavior
 
         boolean isAtLeastOneNodeMoved = false;
         IGrid grid = editorPart.getGrid();
+        IEditorPartDamageTracker damageTracker = editorPart.getDamageTracker();
         for (INode n : selectedNodes)
         {
             if (selectedNodes.contains(n.getParent())) continue; // parents are responsible for translating their children
@@ -93,7 +95,9 @@ public class DragSelectedBehavior extends AbstractEditorPartBehavior
             Point2D futureNodeLocation = new Point2D.Double(currentNodeLocation.getX() + dx, currentNodeLocation.getY() + dy);
             Point2D fixedFutureNodeLocation = grid.snap(futureNodeLocation);
             if (!currentNodeLocation.equals(fixedFutureNodeLocation)) {
+                damageTracker.addDamagedNode(n);
                 n.setLocation(fixedFutureNodeLocation);
+                damageTracker.addDamagedNode(n);
                 isAtLeastOneNodeMoved = true;
             }
         }
@@ -16,6 +16,7 @@ import com.horstmann.violet.framework.injection.resources.ResourceBundleInjector
 import com.horstmann.violet.framework.injection.resources.annotation.ResourceBundleBean;
 import com.horstmann.violet.framework.propertyeditor.CustomPropertyEditor;
 import com.horstmann.violet.framework.propertyeditor.ICustomPropertyEditor;
+import com.horstmann.violet.product.diagram.abstracts.AbstractGraph;
 import com.horstmann.violet.product.diagram.abstracts.IGraph;
 import com.horstmann.violet.product.diagram.abstracts.edge.IEdge;
 import com.horstmann.violet.product.diagram.abstracts.node.INode;
@@ -82,6 +83,11 @@ public class EditSelectedBehavior extends AbstractEditorPartBehavior
                     // }
                 }
 
+                if (graph instanceof AbstractGraph)
+                {
+                    // Edited properties can change node and edge bounds
+                    ((AbstractGraph) graph).notifyGeometryChanged();
+                }
                 if (edited instanceof INode)
                 {
                     behaviorManager.fireWhileEditingNode((INode) edited, event);
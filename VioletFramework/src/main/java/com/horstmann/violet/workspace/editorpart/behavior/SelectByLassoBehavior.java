@@ -12,6 +12,7 @@ import com.horstmann.violet.product.diagram.abstracts.IGraph;
 import com.horstmann.violet.product.diagram.abstracts.edge.IEdge;
 import com.horstmann.violet.product.diagram.abstracts.node.INode;
 import com.horstmann.violet.workspace.editorpart.IEditorPart;
+import com.horstmann.violet.workspace.editorpart.IEditorPartDamageTracker;
 import com.horstmann.violet.workspace.editorpart.IEditorPartSelectionHandler;
 import com.horstmann.violet.workspace.sidebar.graphtools.GraphTool;
 import com.horstmann.violet.workspace.sidebar.graphtools.IGraphToolsBar;
@@ -58,18 +59,21 @@ public class SelectByLassoBehavior extends AbstractEditorPartBehavior
         }
         double zoom = editorPart.getZoomFactor();
         Point2D mousePoint = new Point2D.Double(event.getX() / zoom, event.getY() / zoom);
+        IEditorPartDamageTracker damageTracker = editorPart.getDamageTracker();
+        if (lastMousePoint != null)
+        {
+            damageTracker.addDamagedArea(getLasso(mouseDownPoint, lastMousePoint));
+        }
         lastMousePoint = mousePoint;
         boolean isCtrl = (event.getModifiersEx() & InputEvent.CTRL_DOWN_MASK) != 0;
-        double x1 = mouseDownPoint.getX();
-        double y1 = mouseDownPoint.getY();
-        double x2 = mousePoint.getX();
-        double y2 = mousePoint.getY();
-        Rectangle2D.Double lasso = new Rectangle2D.Double(Math.min(x1, x2), Math.min(y1, y2), Math.abs(x1 - x2), Math.abs(y1 - y2));
+        Rectangle2D.Double lasso = getLasso(mouseDownPoint, mousePoint);
+        damageTracker.addDamagedArea(lasso);
         Iterator<INode> iter = graph.getAllNodes().iterator();
         while (iter.hasNext())
         {
             INode n = (INode) iter.next();
             Rectangle2D bounds = n.getBounds();
+            boolean isSelected = selectionHandler.isElementAlreadySelected(n);
             if (!isCtrl && !lasso.contains(bounds))
             {
                 selectionHandler.removeElementFromSelection(n);
@@ -78,9 +82,28 @@ public class SelectByLassoBehavior extends AbstractEditorPartBehavior
             {
                 selectionHandler.addSelectedElement(n);
             }
+            if (isSelected != selectionHandler.isElementAlreadySelected(n))
+            {
+                // Selection grabbers must be painted or erased
+                damageTracker.addDamagedNode(n);
+            }
         }
     }
 
+    /**
+     * @param p1
+     * @param p2
+     * @return the rectangle between the two given points
+     */
+    private Rectangle2D.Double getLasso(Point2D p1, Point2D p2)
+    {
+        double x1 = p1.getX();
+        double y1 = p1.getY();
+        double x2 = p2.getX();
+        double y2 = p2.getY();
+        return new Rectangle2D.Double(Math.min(x1, x2), Math.min(y1, y2), Math.abs(x1 - x2), Math.abs(y1 - y2));
+    }
+
     @Override
     public void onMouseReleased(MouseEvent event)
     {
@@ -114,11 +137,7 @@ public class SelectByLassoBehavior extends AbstractEditorPartBehavior
         }
         Color oldColor = g2.getColor();
         g2.setColor(PURPLE);
-        double x1 = mouseDownPoint.getX();
-        double y1 = mouseDownPoint.getY();
-        double x2 = lastMousePoint.getX();
-        double y2 = lastMousePoint.getY();
-        Rectangle2D.Double lasso = new Rectangle2D.Double(Math.min(x1, x2), Math.min(y1, y2), Math.abs(x1 - x2), Math.abs(y1 - y2));
+        Rectangle2D.Double lasso = getLasso(mouseDownPoint, lastMousePoint);
         g2.draw(lasso);
         g2.setColor(oldColor);
     }
@@ -9,6 +9,7 @@ import java.beans.PropertyChangeEvent;
 import com.horstmann.violet.product.diagram.abstracts.edge.IEdge;
 import com.horstmann.violet.product.diagram.abstracts.node.INode;
 import com.horstmann.violet.workspace.editorpart.IEditorPart;
+import com.horstmann.violet.workspace.editorpart.IEditorPartDamageTracker;
 import com.horstmann.violet.workspace.sidebar.graphtools.GraphTool;
 
 public class SwingRepaintingBehavior implements IEditorPartBehavior
@@ -25,36 +26,38 @@ public class SwingRepaintingBehavior implements IEditorPartBehavior
     @Override
     public void onToolSelected(GraphTool selectedTool)
     {
-        this.editorPart.getSwingComponent().doLayout();
-        this.editorPart.getSwingComponent().repaint();
+        repaintAll();
     }
 
     @Override
     public void onMouseReleased(MouseEvent event)
     {
-        this.editorPart.getSwingComponent().doLayout();
-        this.editorPart.getSwingComponent().repaint();
+        repaintAll();
     }
     
     @Override
     public void onMouseClicked(MouseEvent event)
     {
-        this.editorPart.getSwingComponent().doLayout();
-        this.editorPart.getSwingComponent().repaint();
+        repaintAll();
     }
 
     @Override
     public void onMousePressed(MouseEvent event)
     {
-        this.editorPart.getSwingComponent().doLayout();
-        this.editorPart.getSwingComponent().repaint();
+        repaintAll();
     }
 
     @Override
     public void onMouseDragged(MouseEvent event)
     {
         this.editorPart.getSwingComponent().doLayout();
-        this.editorPart.getSwingComponent().repaint();
+        IEditorPartDamageTracker damageTracker = this.editorPart.getDamageTracker();
+        if (!damageTracker.isDamaged())
+        {
+            // Nothing reported, so we don't know what changed
+            damageTracker.damageAll();
+        }
+        damageTracker.repaintDamagedAreas();
     }
     
     @Override
@@ -102,38 +105,44 @@ public class SwingRepaintingBehavior implements IEditorPartBehavior
     @Override
     public void afterRemovingSelectedElements()
     {
-        this.editorPart.getSwingComponent().doLayout();
-        this.editorPart.getSwingComponent().repaint();
+        repaintAll();
     }
 
     @Override
     public void afterEditingNode(INode node)
     {
-        this.editorPart.getSwingComponent().doLayout();
-        this.editorPart.getSwingComponent().repaint();
+        repaintAll();
     }
 
     @Override
     public void afterEditingEdge(IEdge edge)
     {
-        this.editorPart.getSwingComponent().doLayout();
-        this.editorPart.getSwingComponent().repaint();
+        repaintAll();
     }
 
     @Override
     public void afterAddingNodeAtPoint(INode node, Point2D location)
     {
-        this.editorPart.getSwingComponent().doLayout();
-        this.editorPart.getSwingComponent().repaint();
+        repaintAll();
     }
 
     @Override
     public void afterAddingEdgeAtPoints(IEdge edge, Point2D startPoint, Point2D endPoint)
     {
-        this.editorPart.getSwingComponent().doLayout();
-        this.editorPart.getSwingComponent().repaint();
+        repaintAll();
     }
     
+    /**
+     * Repaints the whole editor part, which also drops areas reported as damaged
+     */
+    private void repaintAll()
+    {
+        this.editorPart.getSwingComponent().doLayout();
+        IEditorPartDamageTracker damageTracker = this.editorPart.getDamageTracker();
+        damageTracker.damageAll();
+        damageTracker.repaintDamagedAreas();
+    }
+
     @Override
     public void onPaint(Graphics2D g2)
     {
@@ -144,29 +153,25 @@ public class SwingRepaintingBehavior implements IEditorPartBehavior
     @Override
     public void onEdgeSelected(IEdge edge)
     {
-        this.editorPart.getSwingComponent().doLayout();
-        this.editorPart.getSwingComponent().repaint();
+        repaintAll();
     }
 
     @Override
     public void onNodeSelected(INode node)
     {
-        this.editorPart.getSwingComponent().doLayout();
-        this.editorPart.getSwingComponent().repaint();
+        repaintAll();
     }
 
     @Override
     public void whileEditingEdge(IEdge edge, PropertyChangeEvent event)
     {
-        this.editorPart.getSwingComponent().doLayout();
-        this.editorPart.getSwingComponent().repaint();
+        repaintAll();
     }
 
     @Override
     public void whileEditingNode(INode node, PropertyChangeEvent event)
     {
-        this.editorPart.getSwingComponent().doLayout();
-        this.editorPart.getSwingComponent().repaint();
+        repaintAll();
     }
 
    
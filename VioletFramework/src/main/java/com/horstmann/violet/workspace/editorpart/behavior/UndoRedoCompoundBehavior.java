@@ -9,6 +9,8 @@ import java.util.List;
 import javax.swing.undo.CompoundEdit;
 import javax.swing.undo.UndoManager;
 
+import com.horstmann.violet.product.diagram.abstracts.AbstractGraph;
+import com.horstmann.violet.product.diagram.abstracts.IGraph;
 import com.horstmann.violet.product.diagram.abstracts.edge.IEdge;
 import com.horstmann.violet.product.diagram.abstracts.node.INode;
 import com.horstmann.violet.workspace.editorpart.IEditorPart;
@@ -191,6 +193,7 @@ public class UndoRedoCompoundBehavior extends AbstractEditorPartBehavior
         if (undoManager.canUndo())
         {
             undoManager.undo();
+            fireGraphGeometryChanged();
             editorPart.getSwingComponent().repaint();
         }
     }
@@ -203,6 +206,7 @@ public class UndoRedoCompoundBehavior extends AbstractEditorPartBehavior
         if (undoManager.canRedo())
         {
             undoManager.redo();
+            fireGraphGeometryChanged();
             editorPart.getSwingComponent().repaint();
         }
     }
@@ -239,4 +243,18 @@ public class UndoRedoCompoundBehavior extends AbstractEditorPartBehavior
     }
     
     
+
+    /**
+     * Undone and redone changes don't always go through the graph (properties, translations...) so geometry caches must be
+     * refreshed
+     */
+    private void fireGraphGeometryChanged()
+    {
+        IGraph graph = editorPart.getGraph();
+        if (graph instanceof AbstractGraph)
+        {
+            ((AbstractGraph) graph).notifyGeometryChanged();
+        }
+    }
+
 }
@@ -0,0 +1,384 @@
+/*
+ Violet - A program for editing UML diagrams.
+
+ Copyright (C) 2007 Cay S. Horstmann (http://horstmann.com)
+ Alexandre de Pellegrin (http://alexdp.free.fr);
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package com.horstmann.violet.workspace.sidebar;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.geom.Line2D;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import com.horstmann.violet.product.diagram.abstracts.IColorable;
+import com.horstmann.violet.product.diagram.abstracts.IGraph;
+import com.horstmann.violet.product.diagram.abstracts.edge.IEdge;
+import com.horstmann.violet.product.diagram.abstracts.node.INode;
+import com.horstmann.violet.workspace.editorpart.IEditorPart;
+import com.horstmann.violet.workspace.editorpart.IEditorPartDamageListener;
+
+/**
+ * Small image of an editor part's graph, kept up to date while the graph changes.<br/>
+ * <br/>
+ * Areas reported as damaged by the editor part are collected and rendered again at most once per THROTTLE_DELAY. Nodes are only
+ * drawn as rectangles and edges as lines (as with LevelOfDetail.OUTLINE) : their geometry is copied on the event dispatch thread
+ * and the image is rasterized in a background thread. Changes which haven't been reported (undo, paste...) are detected from the
+ * graph revision and lead to render the whole image again.
+ */
+public class NavigatorThumbnail implements IEditorPartDamageListener
+{
+
+    /**
+     * Default constructor
+     *
+     * @param editorPart the editor part showing the graph
+     * @param whenUpdated called on the event dispatch thread each time the image has been updated
+     */
+    public NavigatorThumbnail(IEditorPart editorPart, Runnable whenUpdated)
+    {
+        this.editorPart = editorPart;
+        this.whenUpdated = whenUpdated;
+        this.throttleTimer = new Timer(THROTTLE_DELAY, new ActionListener()
+        {
+            public void actionPerformed(ActionEvent e)
+            {
+                update();
+            }
+        });
+    }
+
+    /**
+     * Starts following graph changes
+     */
+    public void start()
+    {
+        this.editorPart.getDamageTracker().addListener(this);
+        this.throttleTimer.start();
+    }
+
+    /**
+     * Stops following graph changes
+     */
+    public void stop()
+    {
+        this.editorPart.getDamageTracker().removeListener(this);
+        this.throttleTimer.stop();
+    }
+
+    /**
+     * Creates a new image and renders it entirely
+     *
+     * @param width image width
+     * @param height image height
+     * @param graphScale ratio between image pixels and graph units
+     */
+    public void resize(int width, int height, double graphScale)
+    {
+        this.generation++;
+        this.pendingArea = null;
+        if (width <= 0 || height <= 0)
+        {
+            this.image = null;
+            return;
+        }
+        this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = this.image.createGraphics();
+        g2.setColor(Color.WHITE);
+        g2.fillRect(0, 0, width, height);
+        g2.dispose();
+        this.graphScale = graphScale;
+        this.isFullUpdateNeeded = true;
+        update();
+    }
+
+    /**
+     * @return the current image (updated in place) or null if there's nothing to show
+     */
+    public BufferedImage getImage()
+    {
+        return this.image;
+    }
+
+    @Override
+    public void onDamagedAreaRepainted(Rectangle2D damagedArea, long oldRevision)
+    {
+        if (damagedArea == null || oldRevision != this.knownRevision)
+        {
+            // Changes which haven't been reported could be outside of the damaged area
+            this.isFullUpdateNeeded = true;
+            return;
+        }
+        // The damaged area describes everything which changed since the known revision
+        this.knownRevision = getGraph().getRevision();
+        if (this.pendingArea == null)
+        {
+            this.pendingArea = new Rectangle2D.Double(damagedArea.getX(), damagedArea.getY(), damagedArea.getWidth(), damagedArea
+                    .getHeight());
+            return;
+        }
+        this.pendingArea.add(damagedArea);
+    }
+
+    /**
+     * Renders the pending areas in background (called by the throttle timer)
+     */
+    private void update()
+    {
+        if (this.image == null || this.isRendering)
+        {
+            return;
+        }
+        long revision = getGraph().getRevision();
+        if (revision != this.knownRevision)
+        {
+            this.isFullUpdateNeeded = true;
+        }
+        Rectangle imageBounds = new Rectangle(0, 0, this.image.getWidth(), this.image.getHeight());
+        Rectangle pixelArea;
+        if (this.isFullUpdateNeeded)
+        {
+            pixelArea = imageBounds;
+        }
+        else if (this.pendingArea != null)
+        {
+            int left = (int) Math.floor(this.pendingArea.getX() * this.graphScale);
+            int top = (int) Math.floor(this.pendingArea.getY() * this.graphScale);
+            int right = (int) Math.ceil(this.pendingArea.getMaxX() * this.graphScale);
+            int bottom = (int) Math.ceil(this.pendingArea.getMaxY() * this.graphScale);
+            pixelArea = imageBounds.intersection(new Rectangle(left, top, right - left, bottom - top));
+        }
+        else
+        {
+            return;
+        }
+        this.isFullUpdateNeeded = false;
+        this.pendingArea = null;
+        // The snapshot taken below shows this revision
+        this.knownRevision = revision;
+        if (pixelArea.isEmpty())
+        {
+            return;
+        }
+        final Rectangle target = pixelArea;
+        final double scale = this.graphScale;
+        final int currentGeneration = this.generation;
+        final Snapshot snapshot = new Snapshot(getGraph(), target, scale);
+        this.isRendering = true;
+        getExecutor().execute(new Runnable()
+        {
+            public void run()
+            {
+                BufferedImage renderedArea = null;
+                try
+                {
+                    renderedArea = snapshot.render();
+                }
+                finally
+                {
+                    final BufferedImage result = renderedArea;
+                    SwingUtilities.invokeLater(new Runnable()
+                    {
+                        public void run()
+                        {
+                            copyRenderedArea(result, target, currentGeneration);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * Copies an area rendered in background to the image
+     *
+     * @param renderedArea the rendered pixels (null if rendering failed)
+     * @param target where they go in the image
+     * @param renderedGeneration image generation at the time rendering started
+     */
+    private void copyRenderedArea(BufferedImage renderedArea, Rectangle target, int renderedGeneration)
+    {
+        this.isRendering = false;
+        if (renderedArea == null || renderedGeneration != this.generation || this.image == null)
+        {
+            // Resized in the meantime
+            return;
+        }
+        Graphics2D g2 = this.image.createGraphics();
+        g2.drawImage(renderedArea, target.x, target.y, null);
+        g2.dispose();
+        this.whenUpdated.run();
+    }
+
+    /**
+     * @return the displayed graph
+     */
+    private IGraph getGraph()
+    {
+        return this.editorPart.getGraph();
+    }
+
+    /**
+     * @return the thread shared by all thumbnails to render images
+     */
+    private static synchronized Executor getExecutor()
+    {
+        if (executor == null)
+        {
+            executor = Executors.newSingleThreadExecutor(new ThreadFactory()
+            {
+                public Thread newThread(Runnable r)
+                {
+                    Thread thread = new Thread(r, "NavigatorThumbnail");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Geometry of the elements located in an area of the thumbnail, copied so that it can be drawn out of the event dispatch
+     * thread
+     */
+    private static class Snapshot
+    {
+        /**
+         * Copies the geometry of the elements visible in the given area
+         *
+         * @param graph
+         * @param target area in image pixels
+         * @param scale ratio between image pixels and graph units
+         */
+        Snapshot(IGraph graph, Rectangle target, double scale)
+        {
+            this.target = target;
+            this.scale = scale;
+            // One more pixel around for strokes
+            Rectangle2D area = new Rectangle2D.Double((target.x - 1) / scale, (target.y - 1) / scale, (target.width + 2) / scale,
+                    (target.height + 2) / scale);
+            for (INode aNode : graph.findNodes(area))
+            {
+                Point2D locationOnGraph = aNode.getLocationOnGraph();
+                Rectangle2D bounds = aNode.getBounds();
+                this.nodeBounds.add(new Rectangle2D.Double(locationOnGraph.getX(), locationOnGraph.getY(), bounds.getWidth(), bounds
+                        .getHeight()));
+                if (aNode instanceof IColorable)
+                {
+                    IColorable colorable = (IColorable) aNode;
+                    this.nodeBackgroundColors.add(colorable.getBackgroundColor());
+                    this.nodeBorderColors.add(colorable.getBorderColor());
+                }
+                else
+                {
+                    this.nodeBackgroundColors.add(null);
+                    this.nodeBorderColors.add(Color.BLACK);
+                }
+            }
+            for (IEdge anEdge : graph.findEdges(area))
+            {
+                this.edgeLines.add(anEdge.getConnectionPoints());
+            }
+        }
+
+        /**
+         * @return the pixels of the target area
+         */
+        BufferedImage render()
+        {
+            BufferedImage result = new BufferedImage(this.target.width, this.target.height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g2 = result.createGraphics();
+            g2.setColor(Color.WHITE);
+            g2.fillRect(0, 0, this.target.width, this.target.height);
+            g2.translate(-this.target.x, -this.target.y);
+            g2.scale(this.scale, this.scale);
+            for (int i = 0; i < this.nodeBounds.size(); i++)
+            {
+                Rectangle2D bounds = this.nodeBounds.get(i);
+                Color backgroundColor = this.nodeBackgroundColors.get(i);
+                if (backgroundColor != null)
+                {
+                    g2.setColor(backgroundColor);
+                    g2.fill(bounds);
+                }
+                g2.setColor(this.nodeBorderColors.get(i));
+                g2.draw(bounds);
+            }
+            g2.setColor(EDGE_COLOR);
+            for (Line2D aLine : this.edgeLines)
+            {
+                g2.draw(aLine);
+            }
+            g2.dispose();
+            return result;
+        }
+
+        private Rectangle target;
+        private double scale;
+        private List<Rectangle2D> nodeBounds = new ArrayList<Rectangle2D>();
+        private List<Color> nodeBackgroundColors = new ArrayList<Color>();
+        private List<Color> nodeBorderColors = new ArrayList<Color>();
+        private List<Line2D> edgeLines = new ArrayList<Line2D>();
+    }
+
+    private IEditorPart editorPart;
+
+    private Runnable whenUpdated;
+
+    private Timer throttleTimer;
+
+    private BufferedImage image;
+
+    private double graphScale;
+
+    /** Incremented each time the image is replaced, so that areas rendered for an old image are ignored */
+    private int generation = 0;
+
+    /** Damaged areas not rendered yet, in graph coordinates */
+    private Rectangle2D pendingArea;
+
+    private boolean isFullUpdateNeeded = false;
+
+    private boolean isRendering = false;
+
+    /** Graph revision shown by the image once the pending areas are rendered */
+    private long knownRevision;
+
+    private static Executor executor;
+
+    /** Minimum delay between two updates, in milliseconds */
+    private static final int THROTTLE_DELAY = 300;
+
+    private static final Color EDGE_COLOR = Color.GRAY;
+
+}
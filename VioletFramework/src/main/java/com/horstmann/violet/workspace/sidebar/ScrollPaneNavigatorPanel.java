@@ -46,6 +46,8 @@ import javax.swing.SwingUtilities;
 import javax.swing.event.MouseInputAdapter;
 import javax.swing.event.MouseInputListener;
 
+import com.horstmann.violet.workspace.editorpart.IEditorPart;
+
 public class ScrollPaneNavigatorPanel extends JPanel
 {
     private static final double MAX_SIZE = 200;
@@ -56,6 +58,7 @@ public class ScrollPaneNavigatorPanel extends JPanel
     private Rectangle theRectangle;
     private Point theStartPoint;
     private double theScale;
+    private NavigatorThumbnail theThumbnail;
 
     public ScrollPaneNavigatorPanel(JScrollPane aScrollPane)
     {
@@ -67,6 +70,17 @@ public class ScrollPaneNavigatorPanel extends JPanel
         theRectangle = null;
         theStartPoint = null;
         theScale = 0.0;
+        if (theComponent instanceof IEditorPart)
+        {
+            // Diagrams are kept up to date from damaged areas instead of painting the whole editor part
+            theThumbnail = new NavigatorThumbnail((IEditorPart) theComponent, new Runnable()
+            {
+                public void run()
+                {
+                    repaint();
+                }
+            });
+        }
         setCursor(Cursor.getPredefinedCursor(Cursor.MOVE_CURSOR));
         MouseInputListener mil = new MouseInputAdapter()
         {
@@ -110,6 +124,26 @@ public class ScrollPaneNavigatorPanel extends JPanel
                 display();
             }
         });
+        theComponent.addComponentListener(new ComponentAdapter()
+        {
+            public void componentResized(ComponentEvent arg0)
+            {
+                // Zoom changed
+                if (theImage != null) updateImage();
+            }
+        });
+    }
+
+    public void addNotify()
+    {
+        super.addNotify();
+        if (theThumbnail != null) theThumbnail.start();
+    }
+
+    public void removeNotify()
+    {
+        if (theThumbnail != null) theThumbnail.stop();
+        super.removeNotify();
     }
 
     protected void paintComponent(Graphics g1D)
@@ -142,33 +176,14 @@ public class ScrollPaneNavigatorPanel extends JPanel
 
     private void display()
     {
-        double compWidth = theComponent.getWidth();
-        double compHeight = theComponent.getHeight();
-        double scaleX = MAX_SIZE / compWidth;
-        double scaleY = MAX_SIZE / compHeight;
-        theScale = Math.min(scaleX, scaleY);
-
-        theImage = new BufferedImage((int) (theComponent.getWidth() * theScale), (int) (theComponent.getHeight() * theScale),
-                BufferedImage.TYPE_BYTE_BINARY);
-
-        Graphics2D g = theImage.createGraphics();
-        g.scale(theScale, theScale);
-        theComponent.paint(g);
-
-        theStartRectangle = theComponent.getVisibleRect();
-        Insets insets = getInsets();
-        theStartRectangle.x = (int) (theScale * theStartRectangle.x + insets.left);
-        theStartRectangle.y = (int) (theScale * theStartRectangle.y + insets.right);
-        theStartRectangle.width *= theScale;
-        theStartRectangle.height *= theScale;
-        theRectangle = theStartRectangle;
+        updateImage();
+        if (theImage == null) return;
 
         // Dimension pref = thePopupMenu.getPreferredSize();
         //
         // thePopupMenu.show(theButton,
         // (theButton.getWidth() - pref.width) / 2,
         // (theButton.getHeight() - pref.height) / 2);
-        repaint();
 
         try
         {
@@ -183,6 +198,46 @@ public class ScrollPaneNavigatorPanel extends JPanel
         }
     }
 
+    private void updateImage()
+    {
+        double compWidth = theComponent.getWidth();
+        double compHeight = theComponent.getHeight();
+        double scaleX = MAX_SIZE / compWidth;
+        double scaleY = MAX_SIZE / compHeight;
+        theScale = Math.min(scaleX, scaleY);
+        int width = (int) (compWidth * theScale);
+        int height = (int) (compHeight * theScale);
+        if (width <= 0 || height <= 0)
+        {
+            theImage = null;
+            return;
+        }
+
+        if (theThumbnail != null)
+        {
+            double zoom = ((IEditorPart) theComponent).getZoomFactor();
+            theThumbnail.resize(width, height, theScale * zoom);
+            theImage = theThumbnail.getImage();
+        }
+        else
+        {
+            theImage = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY);
+            Graphics2D g = theImage.createGraphics();
+            g.scale(theScale, theScale);
+            theComponent.paint(g);
+            g.dispose();
+        }
+
+        theStartRectangle = theComponent.getVisibleRect();
+        Insets insets = getInsets();
+        theStartRectangle.x = (int) (theScale * theStartRectangle.x + insets.left);
+        theStartRectangle.y = (int) (theScale * theStartRectangle.y + insets.right);
+        theStartRectangle.width *= theScale;
+        theStartRectangle.height *= theScale;
+        theRectangle = theStartRectangle;
+        repaint();
+    }
+
     private void moveRectangle(int aDeltaX, int aDeltaY)
     {
         if (theStartRectangle == null) return;
@@ -124,7 +124,7 @@ public class SynchronizationBarNode extends RectangularNode
     {
         List<INode> connectedNodes = new ArrayList<INode>();
         // needs to contain all incoming and outgoing edges
-        for (IEdge e : getGraph().getAllEdges())
+        for (IEdge e : getGraph().getConnectedEdges(this))
         {
             if (e.getStart() == this) connectedNodes.add(e.getEnd());
             if (e.getEnd() == this) connectedNodes.add(e.getStart());
@@ -49,7 +49,7 @@ public class ClassNode extends RectangularNode
         return snappedBounds;
     }
     
-    private Rectangle2D getMiddleRectangleBounds() {
+    private Rectangle2D getMiddleRectangleBounds(Rectangle2D topBounds) {
         Rectangle2D globalBounds = new Rectangle2D.Double(0, 0, 0, 0);
         Rectangle2D attributesBounds = attributes.getBounds();
         globalBounds.add(attributesBounds);
@@ -58,7 +58,6 @@ public class ClassNode extends RectangularNode
         if (!isMethodsEmpty || !isAttributesEmpty) {
             globalBounds.add(new Rectangle2D.Double(0, 0, DEFAULT_WIDTH, DEFAULT_COMPARTMENT_HEIGHT));
         }
-        Rectangle2D topBounds = getTopRectangleBounds();
         double x = topBounds.getX();
         double y = topBounds.getMaxY();
         double w = globalBounds.getWidth();
@@ -68,7 +67,7 @@ public class ClassNode extends RectangularNode
         return snappedBounds;
     }
     
-    private Rectangle2D getBottomRectangleBounds() {
+    private Rectangle2D getBottomRectangleBounds(Rectangle2D middleBounds) {
         Rectangle2D globalBounds = new Rectangle2D.Double(0, 0, 0, 0);
         Rectangle2D methodsBounds = methods.getBounds();
         globalBounds.add(methodsBounds);
@@ -77,7 +76,6 @@ public class ClassNode extends RectangularNode
         if (!isMethodsEmpty || !isAttributesEmpty) {
             globalBounds.add(new Rectangle2D.Double(0, 0, DEFAULT_WIDTH, DEFAULT_COMPARTMENT_HEIGHT));
         }
-        Rectangle2D middleBounds = getMiddleRectangleBounds();
         double x = middleBounds.getX();
         double y = middleBounds.getMaxY();
         double w = globalBounds.getWidth();
@@ -91,11 +89,23 @@ public class ClassNode extends RectangularNode
     public Rectangle2D getBounds()
     {
         Rectangle2D top = getTopRectangleBounds();
-        Rectangle2D mid = getMiddleRectangleBounds();
-        Rectangle2D bot = getBottomRectangleBounds();
-        top.add(mid);
-        top.add(bot);
-        Rectangle2D snappedBounds = getGraph().getGrid().snap(top);
+        Rectangle2D mid = getMiddleRectangleBounds(top);
+        Rectangle2D bot = getBottomRectangleBounds(mid);
+        return getBounds(top, mid, bot);
+    }
+
+    /**
+     * @param top name compartment bounds
+     * @param mid attributes compartment bounds
+     * @param bot methods compartment bounds
+     * @return the bounds of the whole node
+     */
+    private Rectangle2D getBounds(Rectangle2D top, Rectangle2D mid, Rectangle2D bot)
+    {
+        Rectangle2D globalBounds = new Rectangle2D.Double(top.getX(), top.getY(), top.getWidth(), top.getHeight());
+        globalBounds.add(mid);
+        globalBounds.add(bot);
+        Rectangle2D snappedBounds = getGraph().getGrid().snap(globalBounds);
         return snappedBounds;
     }
 
@@ -111,10 +121,11 @@ public class ClassNode extends RectangularNode
         g2.translate(g2Location.getX(), g2Location.getY());
         // Perform drawing
         super.draw(g2);
-        Rectangle2D currentBounds = getBounds();
+        // Each compartment is located under the previous one so they are computed only once
         Rectangle2D topBounds = getTopRectangleBounds();
-        Rectangle2D midBounds = getMiddleRectangleBounds(); 
-        Rectangle2D bottomBounds = getBottomRectangleBounds();
+        Rectangle2D midBounds = getMiddleRectangleBounds(topBounds);
+        Rectangle2D bottomBounds = getBottomRectangleBounds(midBounds);
+        Rectangle2D currentBounds = getBounds(topBounds, midBounds, bottomBounds);
         g2.setColor(getBackgroundColor());
         g2.fill(currentBounds);
         g2.setColor(getBorderColor());
@@ -276,7 +276,7 @@ public class ActivationBarNode extends RectangularNode
     private boolean isCallingNode()
     {
         LifelineNode currentLifelineNode = getImplicitParameter();
-        for (IEdge edge : getGraph().getAllEdges())
+        for (IEdge edge : getGraph().getOutgoingEdges(this))
         {
             if (edge.getStart() != this)
             {
@@ -307,7 +307,7 @@ public class ActivationBarNode extends RectangularNode
     private boolean isCalledNode()
     {
         LifelineNode currentLifelineNode = getImplicitParameter();
-        for (IEdge edge : getGraph().getAllEdges())
+        for (IEdge edge : getGraph().getIncomingEdges(this))
         {
             if (edge.getEnd() != this)
             {
@@ -367,7 +367,7 @@ public class ActivationBarNode extends RectangularNode
     private double getHeightWhenLinked()
     {
     	double height = 0;
-    	for (IEdge edge : getGraph().getAllEdges())
+    	for (IEdge edge : getGraph().getOutgoingEdges(this))
         {
             if (!edge.getClass().isAssignableFrom(CallEdge.class))
             {
@@ -682,7 +682,7 @@ public class ActivationBarNode extends RectangularNode
      */
     private IEdge findEdge(INode start, INode end)
     {
-        for (IEdge e : getGraph().getAllEdges())
+        for (IEdge e : getGraph().getOutgoingEdges(start))
         {
             if (e.getStart() == start && e.getEnd() == end) return e;
         }
@@ -61,7 +61,7 @@ public class CallEdge extends SegmentedLineEdge
     public void setSignal(boolean newValue)
     {
         signal = newValue;
-
+        invalidateGeometry();
     }
 
     @Override
@@ -157,7 +157,7 @@ public class LifelineNode extends RectangularNode
         {
             return new Point2D.Double(0, 0);
         }
-        Collection<IEdge> edges = currentGraph.getAllEdges();
+        Collection<IEdge> edges = currentGraph.getIncomingEdges(this);
         for (IEdge edge : edges)
         {
             if (edge instanceof CallEdge)
@@ -52,6 +52,16 @@ public class SequenceDiagramGraph extends AbstractGraph
         return super.addNode(newNode, p);
     }
 
+    /**
+     * Lifelines are stretched down to the lowest activation bar of the diagram and activation bar heights follow call chains, so
+     * moving a node can change the bounds of nodes which aren't connected to it.
+     */
+    @Override
+    public boolean isGeometryLocal()
+    {
+        return false;
+    }
+
 
     
     public List<INode> getNodePrototypes()
@@ -50,6 +50,7 @@ public class StateTransitionEdge extends ShapeEdge
     public void setLabel(String newValue)
     {
         labelText = newValue;
+        invalidateGeometry();
     }
 
     /**